@@ -3,10 +3,19 @@
  */
 package drivers;
 
+import mdp.CompiledPolicy;
+import mdp.Hyperparameters;
+import mdp.PolicySubscriber;
 import mdp.QLearning;
+import mdp.QTableRepository;
 import mdp.SteerControl;
 import torcs.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+
+import static drivers.DriverLog.Level.*;
 import static torcs.Constants.SEPARATOR;
 
 /**
@@ -15,47 +24,57 @@ import static torcs.Constants.SEPARATOR;
  */
 public class DirectionDriver extends Controller {
 
+    private static final DriverLog LOG = DriverLog.getInstance();
+    private static final String TICK_MESSAGE = "Tics: {}\nLaps: {}/1\nEpochs: {}/" + Constants.MAX_EPOCHS
+            + "\nComplete Laps: {}/" + Constants.MAX_EPOCHS + "\n";
+
+    static {
+        LOG.rateLimit(TICK_MESSAGE, 1000);
+    }
+
     // QLearning to Steer Control Variables
     private QLearning steerControlSystem;
-    private SteerControl.States currentSteerState;
-    private SteerControl.Actions actionSteer;
+    private final QTableRepository steerRepository;
+    private CompiledPolicy steerPolicy;
+    private CompiledPolicy repositoryPolicy;
+    private PolicySubscriber policySubscriber;
+    private double[] publishedQValues;
 
     // Time, Laps and Statistics Variables
     private int tics;
     private int epochs;
-    private int laps;
-    private double previosDistanceFromStartLine;
-    private double currentDistanceFromStartLine;
     private int completeLaps;
     private double distanceRaced;
-    private SensorModel previousSensors;
-    private SensorModel currentSensors;
 
-    // Cache variables
-    private int stuck;
-    private double clutch;
-    private boolean completeLap;
-    private boolean offTrack;
+    // Control stages, from the checks that end the trial to the commands
+    private final ControlPipeline pipeline;
+    private final LapStage lapStage;
+    private final OffTrackStage offTrackStage;
 
     /**
      * Constructs an instance of the DirectionDriver class.
      */
     public DirectionDriver() {
-        steerControlSystem = new QLearning(Constants.ControlSystems.STEERING_CONTROL_SYSTEM);
-        currentSteerState = SteerControl.States.STATE_9;
-        actionSteer = SteerControl.Actions.TURN_C;
+        steerRepository = new QTableRepository(Hyperparameters.greedy(), Constants.Q_TABLE_CACHE_SIZE, false);
+        steerControlSystem = steerRepository.getLearner(Constants.ControlSystems.STEERING_CONTROL_SYSTEM, null);
+        repositoryPolicy = steerRepository.getSteerPolicy(null);
+        steerPolicy = repositoryPolicy;
 
         tics = 0;
         epochs = 0;
-        laps = -1;
-        completeLaps = 0;
         completeLaps = 0;
         distanceRaced = 0;
 
-        stuck = 0;
-        clutch = 0;
-        completeLap = false;
-        offTrack = false;
+        lapStage = new LapStage(1);
+        offTrackStage = new OffTrackStage(1.0, null);
+        pipeline = new ControlPipeline()
+                .add("observe", this::observe)
+                .add("laps", lapStage)
+                .add("offTrack", offTrackStage)
+                .add("stuck", new StuckStage(new ClutchStage(this)))
+                .add("gear", new GearStage(1))
+                .add("steer", this::steer)
+                .add("limiter", new SpeedLimiterStage(50.0));
     }
 
     /**
@@ -66,131 +85,50 @@ public class DirectionDriver extends Controller {
      */
     @Override
     public Action control(SensorModel sensors) {
-        if (this.tics == 0) {
-            this.previosDistanceFromStartLine = sensors.getDistanceFromStartLine();
-            this.currentDistanceFromStartLine = this.previosDistanceFromStartLine;
-
-            this.previousSensors = sensors;
-            this.currentSensors = this.previousSensors;
-
-            this.tics++;
-        } else {
-            this.previosDistanceFromStartLine = this.currentDistanceFromStartLine;
-            this.currentDistanceFromStartLine = sensors.getDistanceFromStartLine();
-
-            this.previousSensors = this.currentSensors;
-            this.currentSensors = sensors;
-
-            this.tics++;
-
-            System.out.println("Tics: " + this.tics);
-            System.out.println("Laps: " + this.laps + "/1");
-            System.out.println("Epochs: " + this.epochs + "/" + Constants.MAX_EPOCHS);
-            System.out.println("Complete Laps: " + this.completeLaps + "/" + Constants.MAX_EPOCHS);
-            System.out.println();
-        }
-
-        // Update raced distance
-        this.distanceRaced = this.currentSensors.getDistanceRaced();
-
-        // Update complete laps
-        if (this.previosDistanceFromStartLine > 1 && this.currentDistanceFromStartLine < 1) {
-            this.laps++;
-
-            // Car start back the goal, so ignore first update
-            // If the car complete the number of laps, restart the race
-            if (this.laps >= 1) {
-                this.completeLap = true;
-
-                Action action = new Action();
-                action.restartRace = true;
-                return action;
-
-
-            }
-        }
-
-        // If the car is off track, restart the race
-        if (Math.abs(this.currentSensors.getTrackPosition()) >= 1) {
-            this.offTrack = true;
-
-            Action action = new Action();
-            action.restartRace = true;
-            return action;
-        }
+        return this.pipeline.run(sensors);
+    }
 
-        // check if car is currently stuck
-        if (Math.abs(this.currentSensors.getAngleToTrackAxis()) > DrivingInstructor.stuckAngle) {
-            this.stuck++;
-        } else {
-            this.stuck = 0;
+    /**
+     * Updates the tick counter and the statistics of the trial.
+     *
+     * @param sensors the sensor data received from the car
+     * @param action  the action being built
+     * @return false, the following stages always run
+     */
+    private boolean observe(SensorModel sensors, Action action) {
+        if (this.tics > 0 && LOG.isEnabled(DEBUG)) {
+            LOG.log(DEBUG, TICK_MESSAGE, this.tics + 1, this.lapStage.getLaps(), this.epochs, this.completeLaps);
         }
-
-        // After car is stuck for a while apply recovering policy
-        if (this.stuck > DrivingInstructor.stuckTime) {
-            // Set gear and steering command assuming car is pointing in a direction out of track
-
-            // To bring car parallel to track axis
-            float steer = (float) (-this.currentSensors.getAngleToTrackAxis() / DrivingInstructor.steerLock);
-            int gear = -1; // gear R
-
-            // If car is pointing in the correct direction revert gear and steer
-            if (this.currentSensors.getAngleToTrackAxis() * this.currentSensors.getTrackPosition() > 0) {
-                gear = 1;
-                steer = -steer;
-            }
-
-            this.clutch = DrivingInstructor.clutching(this.currentSensors, (float) this.clutch, getStage());
-
-            // Build a CarControl variable and return it
-            Action action = new Action();
-            action.gear = gear;
-            action.steering = steer;
-            action.accelerate = 1.0;
-            action.brake = 0;
-            action.clutch = clutch;
-
-            return action;
+        if (this.tics == 0) {
+            this.selectPolicy();
         }
+        this.tics++;
 
-        // If the car is not stuck
-        Action action = new Action();
-
-        // Calculate gear value
-//        action.gear = DrivingInstructor.getGear(this.currentSensors);
-        action.gear = 1;
-
-
-        // Calculate steer value
-        this.currentSteerState = SteerControl.evaluateSteerState(this.currentSensors);
-        this.actionSteer = (SteerControl.Actions) this.steerControlSystem.nextOnlyBestAction(this.currentSteerState);
-        double steer = SteerControl.steerAction2Double(this.actionSteer);
-        action.steering = steer;
-
-        // Calculate accel/brake
-        float accel_and_brake = DrivingInstructor.getAccel(this.currentSensors);
-
-        // Set accel and brake from the joint accel/brake command
-        float accel, brake;
-        if (accel_and_brake > 0) {
-            accel = accel_and_brake;
-            brake = 0;
-        } else {
-            accel = 0;
-            // apply ABS to brake
-            brake = DrivingInstructor.filterABS(this.currentSensors, -accel_and_brake);
-        }
-//        action.accelerate = accel;
-//        action.brake = brake;
-        if (sensors.getSpeed() < 50) {
-            action.accelerate = 1;
-        }
+        // Update raced distance
+        this.distanceRaced = sensors.getDistanceRaced();
+        return false;
+    }
 
-        // Calculate clutch
-//        this.clutch = DrivingInstructor.clutching(this.currentSensors, (float) this.clutch, getStage());
-//        action.clutch = this.clutch;
+    /**
+     * Sets the steering command from the best action of the policy.
+     *
+     * @param sensors the sensor data received from the car
+     * @param action  the action being built
+     * @return false, the following stages always run
+     */
+    private boolean steer(SensorModel sensors, Action action) {
+        action.steering = this.steerPolicy.getValue(SteerControl.evaluateSteerOrdinal(sensors));
+        return false;
+    }
 
-        return action;
+    /**
+     * Retrieves the control stage that completed the action of the last tick.
+     *
+     * @return The stage, or null if every stage ran.
+     */
+    @Override
+    public ControlStage getStoppingStage() {
+        return this.pipeline.getStoppingStage();
     }
 
     /**
@@ -198,15 +136,12 @@ public class DirectionDriver extends Controller {
      */
     @Override
     public void reset() {
-        currentSteerState = SteerControl.States.STATE_9;
-        actionSteer = SteerControl.Actions.TURN_C;
-
-        if (this.completeLap) {
+        if (this.lapStage.isCompleteLap()) {
             this.completeLaps++;
-            System.out.println("Complete lap!");
+            LOG.log(INFO, "Complete lap!");
         }
-        if (this.offTrack) {
-            System.out.println("Out of track!");
+        if (this.offTrackStage.isOffTrack()) {
+            LOG.log(INFO, "Out of track!");
         }
 
         String newResults = this.generateStatistics();
@@ -214,18 +149,57 @@ public class DirectionDriver extends Controller {
 
         tics = 0;
         epochs++;
-        laps = -1;
         completeLaps = 0;
         distanceRaced = 0;
+        pipeline.reset();
 
-        stuck = 0;
-        clutch = 0;
-        completeLap = false;
-        offTrack = false;
+        LOG.log(INFO, "\n*** Restarting the race ***\n");
+    }
 
-        System.out.println();
-        System.out.println("*** Restarting the race ***");
-        System.out.println();
+    /**
+     * Selects the steering policy of the episode, the one that changed last. The repository is asked for the policy
+     * of the track every episode, so a policy file rewritten since is loaded again; if it returns another policy,
+     * because the track changed or the file was rewritten, that policy is driven. A table published since by a
+     * trainer on the same track replaces it in turn, as trainers publish a table after saving it.
+     */
+    private void selectPolicy() {
+        String trackName = getTrackName();
+        CompiledPolicy policy = this.steerRepository.getSteerPolicy(trackName);
+        if (policy != this.repositoryPolicy) {
+            this.repositoryPolicy = policy;
+            this.steerPolicy = policy;
+            LOG.log(INFO, "Driving with the policy of track {}", trackName);
+        }
+        this.refreshPolicy(trackName);
+    }
+
+    /**
+     * Recompiles the steering policy from the newest Q-table published by a trainer, if there is one and it was
+     * trained on the track.
+     *
+     * @param trackName The name of the track, or null if it is unknown.
+     */
+    private void refreshPolicy(String trackName) {
+        if (this.policySubscriber == null) {
+            if (!new File(Constants.STEER_POLICY_PATH).exists())
+                return;
+            try {
+                this.policySubscriber = new PolicySubscriber(Constants.STEER_POLICY_PATH);
+                this.publishedQValues = new double[this.policySubscriber.getStates() * this.policySubscriber.getActions()];
+            } catch (IOException e) {
+                LOG.log(ERROR, "Could not map the shared policy file...", e);
+                return;
+            }
+        }
+        if (this.policySubscriber.poll(this.publishedQValues)) {
+            if (!Objects.equals(trackName, this.policySubscriber.getTrackName())) {
+                LOG.log(INFO, "Ignored policy version {} of track {}", this.policySubscriber.getVersion(),
+                        this.policySubscriber.getTrackName());
+                return;
+            }
+            this.steerPolicy = CompiledPolicy.compileSteer(this.publishedQValues);
+            LOG.log(INFO, "Loaded policy version {}", this.policySubscriber.getVersion());
+        }
     }
 
     /**
@@ -233,9 +207,15 @@ public class DirectionDriver extends Controller {
      */
     @Override
     public void shutdown() {
-        System.out.println();
-        System.out.println("*** Finish the test ***");
-        System.out.println();
+        if (this.policySubscriber != null) {
+            try {
+                this.policySubscriber.close();
+            } catch (IOException e) {
+                LOG.log(ERROR, "Could not close the shared policy file...", e);
+            }
+        }
+        LOG.log(INFO, "\n*** Finish the test ***\n{}", this.pipeline.report());
+        LOG.flush();
     }
 
     /**
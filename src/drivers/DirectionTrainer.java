@@ -1,63 +1,168 @@
 package drivers;
 
+import mdp.AsyncQLearning;
+import mdp.PolicyPublisher;
 import mdp.QLearning;
+import mdp.ReplayBuffer;
 import mdp.SteerControl;
+import mdp.TileCodingQLearning;
+import mdp.TrainingSnapshot;
 import torcs.*;
 
+import java.io.IOException;
+import java.util.Random;
+
+import static drivers.DriverLog.Level.*;
 import static torcs.Constants.SEPARATOR;
 
 /**
  * A driver that uses Q-learning to control the steering direction of the car.
  */
 public class DirectionTrainer extends Controller {
-    private final double LIMITER_SPEED = 30.0;
-    private final double TRACK_LIMIT = 0.85;
+    private static final DriverLog LOG = DriverLog.getInstance();
+    private static final String DECISION_MESSAGE = "\nEpochs: {}\tTics: {}\tState: {}\tAction: {}\tReward: {}\n";
+
+    static {
+        LOG.rateLimit(DECISION_MESSAGE, 1000);
+    }
+
+    private final double RISK_LIMIT = 0.7;
     // QLearning to Steer Control Variables
-    private QLearning steerControlSystem;
+    private AsyncQLearning steerControlSystem;
     private SteerControl.States previousSteerState;
     private SteerControl.States currentSteerState;
     private SteerControl.Actions actionSteer;
     private double steerReward;
+    private double steering;
+    private ReplayBuffer replayBuffer;
+    private PolicyPublisher policyPublisher;
+    private final String snapshotPath;
+    // Tile coding alternative to the steering Q-table
+    private TileCodingQLearning steerApproximator;
+    private SensorModel steerSensors;
     // Time, Laps and Statistics Variables
     private int tics;
     private int epochs;
-    private int laps;
-    private double previosDistanceFromStartLine;
-    private double currentDistanceFromStartLine;
     private int completeLaps;
     private double distanceRaced;
     private double highSpeed;
     private SensorModel previousSensors;
     private SensorModel currentSensors;
-    // Cache variables
-    private int stuck;
-    private double clutch;
-    private boolean completeLap;
-    private boolean offTrack;
-    private boolean timeOut;
+    // Control stages, from the checks that end the trial to the commands
+    private final ControlPipeline pipeline;
+    private final TimeoutStage timeoutStage;
+    private final LapStage lapStage;
+    private final OffTrackStage offTrackStage;
 
     /**
      * Initializes a new instance of the DirectionTrainer class.
      */
     public DirectionTrainer() {
-        steerControlSystem = new QLearning(Constants.ControlSystems.STEERING_CONTROL_SYSTEM, Constants.MAX_EPOCHS, Constants.RANGE_EPOCHS_END);
+        this(Constants.USE_TILE_CODING ? null : new QLearning(Constants.ControlSystems.STEERING_CONTROL_SYSTEM,
+                        Constants.MAX_EPOCHS, Constants.RANGE_EPOCHS_END),
+                Constants.USE_TILE_CODING ? null : openPolicyPublisher(),
+                Constants.USE_TILE_CODING ? null : Constants.TRAINING_SNAPSHOT_PATH,
+                Constants.USE_TILE_CODING ? new TileCodingQLearning() : null);
+    }
+
+    /**
+     * Initializes a new instance of the DirectionTrainer class that trains the given learner.
+     *
+     * @param steerLearner    The steering learner.
+     * @param policyPublisher The publisher of every new version of the policy, or null.
+     */
+    public DirectionTrainer(QLearning steerLearner, PolicyPublisher policyPublisher) {
+        this(steerLearner, policyPublisher, null);
+    }
+
+    /**
+     * Initializes a new instance of the DirectionTrainer class that trains the given learner, resuming the run saved
+     * in a training snapshot if there is one, and saving a new snapshot after every episode.
+     *
+     * @param steerLearner    The steering learner.
+     * @param policyPublisher The publisher of every new version of the policy, or null.
+     * @param snapshotPath    The training snapshot file, or null to neither resume nor save snapshots.
+     */
+    public DirectionTrainer(QLearning steerLearner, PolicyPublisher policyPublisher, String snapshotPath) {
+        this(steerLearner, policyPublisher, snapshotPath, null);
+    }
+
+    /**
+     * Initializes a new instance of the DirectionTrainer class that trains either the given learner or, when there
+     * is one, the given tile coding approximator. The learner thread, the snapshots and the publisher are only
+     * used with the Q-table.
+     *
+     * @param steerLearner      The steering learner, or null when training the approximator.
+     * @param policyPublisher   The publisher of every new version of the policy, or null.
+     * @param snapshotPath      The training snapshot file, or null to neither resume nor save snapshots.
+     * @param steerApproximator The tile coding approximator, or null to train the Q-table.
+     */
+    private DirectionTrainer(QLearning steerLearner, PolicyPublisher policyPublisher, String snapshotPath,
+                             TileCodingQLearning steerApproximator) {
+        this.steerApproximator = steerApproximator;
         previousSteerState = SteerControl.States.STATE_9;
         currentSteerState = SteerControl.States.STATE_9;
         actionSteer = SteerControl.Actions.TURN_C;
         steerReward = 0;
+        this.policyPublisher = policyPublisher;
+        this.snapshotPath = steerApproximator == null ? snapshotPath : null;
+        TrainingSnapshot snapshot = null;
+        if (steerApproximator == null) {
+            snapshot = this.initSteerControlSystem(steerLearner);
+        }
 
         tics = 0;
-        epochs = 0;
-        laps = -1;
-        completeLaps = 0;
+        epochs = snapshot != null ? snapshot.getCounter(0) : 0;
+        completeLaps = snapshot != null ? snapshot.getCounter(1) : 0;
+        if (snapshot != null) {
+            LOG.log(INFO, "Resumed training at epoch {} with epsilon {}", this.epochs, steerLearner.getEpsilon());
+        }
         distanceRaced = 0;
         highSpeed = 0;
 
-        stuck = 0;
-        clutch = 0;
-        completeLap = false;
-        offTrack = false;
-        timeOut = false;
+        timeoutStage = new TimeoutStage(240.0);
+        lapStage = new LapStage(1);
+        offTrackStage = new OffTrackStage(Constants.TRACK_LIMIT, this::punishOffTrack);
+        pipeline = new ControlPipeline()
+                .add("observe", this::observe)
+                .add("timeout", timeoutStage)
+                .add("laps", lapStage)
+                .add("offTrack", offTrackStage)
+                .add("stuck", new StuckStage(new ClutchStage(this)))
+                .add("gear", new GearStage(1))
+                .add("steer", this::steer)
+                .add("limiter", new SpeedLimiterStage(Constants.LIMITER_SPEED));
+    }
+
+    /**
+     * Configures the steering learner, resumes the saved run if there is one, and starts the learner thread that
+     * applies its updates.
+     *
+     * @param steerLearner The steering learner.
+     * @return The snapshot the training resumes from, or null.
+     */
+    private TrainingSnapshot initSteerControlSystem(QLearning steerLearner) {
+        if (Constants.USE_ELIGIBILITY_TRACES) {
+            steerLearner.enableEligibilityTraces(Constants.LAMBDA);
+        }
+        if (Constants.USE_COUNT_EXPLORATION) {
+            steerLearner.enableCountExploration(Constants.EXPLORATION_BONUS);
+        }
+        if (Constants.USE_UPDATE_JOURNAL) {
+            steerLearner.enableJournal(Constants.JOURNAL_GROUP_RECORDS, Constants.JOURNAL_COMMIT_MILLIS,
+                    Constants.JOURNAL_COMPACT_RECORDS);
+        }
+        replayBuffer = new ReplayBuffer(Constants.REPLAY_CAPACITY);
+        TrainingSnapshot snapshot = this.snapshotPath == null ? null
+                : TrainingSnapshot.resume(this.snapshotPath, steerLearner, replayBuffer);
+        // Updates are applied by a learner thread, off the control path
+        steerControlSystem = new AsyncQLearning(steerLearner, replayBuffer,
+                snapshot != null ? snapshot.getActorRandom() : new Random(System.currentTimeMillis()));
+        if (Constants.USE_DYNA_PLANNING) {
+            steerControlSystem.enablePlanning(Constants.PLANNING_STEPS, Constants.PLANNING_THRESHOLD,
+                    Constants.PLANNING_BUDGET_NANOS);
+        }
+        return snapshot;
     }
 
     /**
@@ -68,32 +173,20 @@ public class DirectionTrainer extends Controller {
      */
     @Override
     public Action control(SensorModel sensors) {
-        if (this.tics == 0) {
-            this.previosDistanceFromStartLine = sensors.getDistanceFromStartLine();
-            this.currentDistanceFromStartLine = this.previosDistanceFromStartLine;
-
-            this.previousSensors = sensors;
-            this.currentSensors = this.previousSensors;
-
-            this.tics++;
-        } else {
-            this.previosDistanceFromStartLine = this.currentDistanceFromStartLine;
-            this.currentDistanceFromStartLine = sensors.getDistanceFromStartLine();
-
-            this.previousSensors = this.currentSensors;
-            this.currentSensors = sensors;
-
-            this.tics++;
-        }
-
-        // Check if time-out
-        if (this.currentSensors.getLastLapTime() > 240.0) {
-            this.timeOut = true;
+        return this.pipeline.run(sensors);
+    }
 
-            Action action = new Action();
-            action.restartRace = true;
-            return action;
-        }
+    /**
+     * Updates the tick counter, the last two readings and the statistics of the trial.
+     *
+     * @param sensors the sensor inputs received from the car
+     * @param action  the action being built
+     * @return false, the following stages always run
+     */
+    private boolean observe(SensorModel sensors, Action action) {
+        this.previousSensors = this.tics == 0 ? sensors : this.currentSensors;
+        this.currentSensors = sensors;
+        this.tics++;
 
         // Update raced distance
         this.distanceRaced = this.currentSensors.getDistanceRaced();
@@ -102,129 +195,90 @@ public class DirectionTrainer extends Controller {
         if (this.currentSensors.getSpeed() > this.highSpeed) {
             this.highSpeed = this.currentSensors.getSpeed();
         }
+        return false;
+    }
 
-        // Update complete laps
-        if (this.previosDistanceFromStartLine > 1 && this.currentDistanceFromStartLine < 1) {
-            this.laps++;
-
-            // Car start back the goal, so ignore first update
-            // If the car complete the number of laps, restart the race
-            if (this.laps >= 1) {
-                this.completeLap = true;
-
-                Action action = new Action();
-                action.restartRace = true;
-                return action;
-            }
-        }
-
-        // If the car is off track, restart the race
-        if (Math.abs(this.currentSensors.getTrackPosition()) >= TRACK_LIMIT) {
-            this.offTrack = true;
-
-            this.steerControlSystem.lastUpdate(this.actionSteer, (-10.0));
-
-            Action action = new Action();
-            action.restartRace = true;
-            return action;
-        }
-
-        // check if car is currently stuck
-        if (Math.abs(this.currentSensors.getAngleToTrackAxis()) > DrivingInstructor.stuckAngle) {
-            this.stuck++;
+    /**
+     * Gives the learner the last reward of the trial when the car leaves the track.
+     */
+    private void punishOffTrack() {
+        if (this.steerApproximator != null) {
+            this.steerApproximator.lastUpdate(this.actionSteer, Constants.OFF_TRACK_REWARD);
         } else {
-            this.stuck = 0;
-        }
-
-        // After car is stuck for a while apply recovering policy
-        if (this.stuck > DrivingInstructor.stuckTime) {
-            // Set gear and steering command assuming car is pointing in a direction out of track
-
-            // To bring car parallel to track axis
-            float steer = (float) (-this.currentSensors.getAngleToTrackAxis() / DrivingInstructor.steerLock);
-            int gear = -1; // gear R
-
-            // If car is pointing in the correct direction revert gear and steer
-            if (this.currentSensors.getAngleToTrackAxis() * this.currentSensors.getTrackPosition() > 0) {
-                gear = 1;
-                steer = -steer;
-            }
-
-            this.clutch = (double) DrivingInstructor.clutching(this.currentSensors, (float) this.clutch, getStage());
-
-            // Build a CarControl variable and return it
-            Action action = new Action();
-            action.gear = gear;
-            action.steering = steer;
-            action.accelerate = 1.0;
-            action.brake = 0;
-            action.clutch = clutch;
-
-            return action;
+            this.steerControlSystem.lastUpdate(this.tics >= 700 ? this.currentSteerState : null,
+                    this.actionSteer, Constants.OFF_TRACK_REWARD);
         }
+    }
 
-
-        // If the car is not stuck
-        Action action = new Action();
-
-        // Calculate gear value
-//        action.gear = DrivingInstructor.getGear(this.currentSensors);
-        action.gear = 1;
-
-        // Calculate steer value
-        double steer = 0.0;
+    /**
+     * Sets the steering command, from the driving instructor at the beginning of the trial and from the learner
+     * afterwards.
+     *
+     * @param sensors the sensor inputs received from the car
+     * @param action  the action being built
+     * @return false, the following stages always run
+     */
+    private boolean steer(SensorModel sensors, Action action) {
         if (this.tics < 700) {
-            steer = DrivingInstructor.getSteer(sensors);
-        } else {
-            if (this.tics % 5 == 0) {
-                this.previousSteerState = this.currentSteerState;
-                this.currentSteerState = SteerControl.evaluateSteerState(this.currentSensors);
-                this.steerReward = SteerControl.calculateReward(this.previousSensors, this.currentSensors);
-                this.actionSteer = (SteerControl.Actions) this.steerControlSystem.update(
-                        this.previousSteerState,
-                        this.currentSteerState,
-                        this.actionSteer,
-                        this.steerReward
-                );
-                steer = SteerControl.steerAction2Double(this.actionSteer);
-                System.out.println();
-                System.out.println("Epochs: " + this.epochs + "\t"
-                        + "Tics: " + this.tics + "\t"
-                        + "State: " + this.currentSteerState + "\t"
-                        + "Action: " + this.actionSteer + "\t"
-                        + "Reward: " + this.steerReward
-                );
-                System.out.println();
-            } else {
-                steer = SteerControl.steerAction2Double(this.actionSteer);
-            }
+            action.steering = DrivingInstructor.getSteer(sensors);
+            return false;
         }
-        action.steering = steer;
-
-        // Calculate accel/brake
-        float accel_and_brake = DrivingInstructor.getAccel(this.currentSensors);
-
-        // Set accel and brake from the joint accel/brake command
-        float accel, brake;
-        if (accel_and_brake > 0) {
-            accel = accel_and_brake;
-            brake = 0;
+        // Decide again as soon as the car nears the edge or starts to turn across the track
+        boolean critical = Math.abs(sensors.getTrackPosition()) >= RISK_LIMIT
+                || Math.abs(sensors.getAngleToTrackAxis()) > DrivingInstructor.stuckAngle;
+        DecisionScheduler scheduler = this.getDecisionScheduler();
+        if (!scheduler.isDue(this.tics, critical)) {
+            action.steering = this.steering;
+            return false;
+        }
+        SteerControl.States state = SteerControl.evaluateSteerState(this.currentSensors);
+        boolean held = scheduler.isUnchanged(state.ordinal());
+        this.previousSteerState = this.currentSteerState;
+        this.currentSteerState = state;
+        this.steerReward = SteerControl.calculateReward(this.previousSensors, this.currentSensors);
+        if (this.steerApproximator != null) {
+            // The approximator learns and chooses in one call, a held decision ignores the choice
+            SteerControl.Actions next = (SteerControl.Actions) this.steerApproximator.update(
+                    this.steerSensors,
+                    this.currentSensors,
+                    this.actionSteer,
+                    this.steerReward
+            );
+            this.steerSensors = this.currentSensors;
+            if (!held)
+                this.actionSteer = next;
+        } else if (held) {
+            // The action is kept, its transition is still learned
+            this.steerControlSystem.observe(this.previousSteerState, this.currentSteerState, this.actionSteer,
+                    this.steerReward);
         } else {
-            accel = 0;
-            // apply ABS to brake
-            brake = DrivingInstructor.filterABS(this.currentSensors, -accel_and_brake);
+            // The first decision has no previous state to learn from
+            this.actionSteer = (SteerControl.Actions) this.steerControlSystem.update(
+                    this.tics > 700 ? this.previousSteerState : null,
+                    this.currentSteerState,
+                    this.actionSteer,
+                    this.steerReward
+            );
         }
-//        action.accelerate = accel;
-//        action.brake = brake;
-        if (sensors.getSpeed() < LIMITER_SPEED) {
-            action.accelerate = 1;
+        if (!held) {
+            if (LOG.isEnabled(DEBUG)) {
+                LOG.log(DEBUG, DECISION_MESSAGE,
+                        this.epochs, this.tics, this.currentSteerState, this.actionSteer, this.steerReward);
+            }
+            this.steering = SteerControl.steerAction2Double(this.actionSteer);
         }
+        action.steering = this.steering;
+        return false;
+    }
 
-        // Calculate clutch
-//        this.clutch = DrivingInstructor.clutching(this.currentSensors, (float) this.clutch, getStage());
-//        action.clutch = this.clutch;
-
-        return action;
+    /**
+     * Retrieves the control stage that completed the action of the last tick.
+     *
+     * @return The stage, or null if every stage ran.
+     */
+    @Override
+    public ControlStage getStoppingStage() {
+        return this.pipeline.getStoppingStage();
     }
 
     /**
@@ -236,38 +290,54 @@ public class DirectionTrainer extends Controller {
         currentSteerState = SteerControl.States.STATE_9;
         actionSteer = SteerControl.Actions.TURN_C;
         steerReward = 0;
+        this.getDecisionScheduler().reset();
 
-        if (this.timeOut) {
-            System.out.println("Time out!!!");
+        if (this.timeoutStage.isTimedOut()) {
+            LOG.log(INFO, "Time out!!!");
         }
 
-        if (this.completeLap) {
+        if (this.lapStage.isCompleteLap()) {
             this.completeLaps++;
-            System.out.println("Complete lap!");
+            LOG.log(INFO, "Complete lap!");
         }
-        if (this.offTrack) {
-            System.out.println("Out of track!");
+        if (this.offTrackStage.isOffTrack()) {
+            LOG.log(INFO, "Out of track!");
         }
 
         String newResults = this.generateStatistics();
-        this.steerControlSystem.saveQTableAndStatistics(newResults);
-        this.steerControlSystem.updateParams();
+        if (this.steerApproximator != null) {
+            this.steerApproximator.saveQTableAndStatistics(newResults);
+            this.steerApproximator.updateParams();
+            this.steerSensors = null;
+        } else {
+            // The actor keeps exploring while the learner thread saves, so its generator is captured now
+            byte[] actorRandom = this.snapshotPath == null ? null
+                    : TrainingSnapshot.stateOf(this.steerControlSystem.getRandom());
+            int[] counters = {this.epochs + 1, this.completeLaps};
+            String trackName = getTrackName();
+            // Runs on the learner thread once every transition of the episode is applied
+            this.steerControlSystem.endEpisode(learner -> {
+                // Squeeze more learning out of the episode before saving the table
+                learner.replay(this.replayBuffer, Constants.REPLAY_BATCH_SIZE);
+
+                learner.saveQTableAndStatistics(newResults);
+                learner.updateParams();
+                if (this.snapshotPath != null) {
+                    TrainingSnapshot.save(this.snapshotPath, learner, this.replayBuffer, actorRandom, counters);
+                }
+                if (this.policyPublisher != null) {
+                    this.policyPublisher.publish(trackName, learner.getQValues());
+                }
+            });
+        }
 
         tics = 0;
         epochs++;
-        laps = -1;
         distanceRaced = 0;
         highSpeed = 0;
+        pipeline.reset();
 
-        stuck = 0;
-        clutch = 0;
-        completeLap = false;
-        offTrack = false;
-        timeOut = false;
-
-        System.out.println();
-        System.out.println("*** Restarting the race ***");
-        System.out.println();
+        LOG.log(INFO, "\n*** Restarting the race ***\n");
     }
 
     /**
@@ -275,9 +345,64 @@ public class DirectionTrainer extends Controller {
      */
     @Override
     public void shutdown() {
-        System.out.println();
-        System.out.println("*** Finish the test ***");
-        System.out.println();
+        if (this.steerControlSystem != null) {
+            this.shutdownSteerControlSystem();
+        }
+        LOG.log(INFO, "Consulted the learner on {} of {} decisions",
+                this.getDecisionScheduler().getConsultations(), this.getDecisionScheduler().getDecisions());
+        LOG.log(INFO, "\n*** Finish the test ***\n{}", this.pipeline.report());
+        LOG.flush();
+    }
+
+    /**
+     * Stops the learner thread once it has applied every queued update, leaving the whole table on disk, for the
+     * drivers that load it, and a snapshot at least as recent.
+     */
+    private void shutdownSteerControlSystem() {
+        byte[] actorRandom = this.snapshotPath == null ? null
+                : TrainingSnapshot.stateOf(this.steerControlSystem.getRandom());
+        int[] counters = {this.epochs, this.completeLaps};
+        this.steerControlSystem.endEpisode(learner -> {
+            learner.closeJournal();
+            if (this.snapshotPath != null) {
+                TrainingSnapshot.save(this.snapshotPath, learner, this.replayBuffer, actorRandom, counters);
+            }
+        });
+        this.steerControlSystem.close();
+        if (this.steerControlSystem.getPlanner() != null) {
+            LOG.log(INFO, "Planned {} simulated backups", this.steerControlSystem.getPlanner().getBackups());
+        }
+        if (this.policyPublisher != null) {
+            try {
+                this.policyPublisher.close();
+            } catch (IOException e) {
+                LOG.log(ERROR, "Could not close the shared policy file...", e);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of episodes that ended with a complete lap.
+     *
+     * @return The number of complete laps.
+     */
+    public int getCompleteLaps() {
+        return this.completeLaps;
+    }
+
+    /**
+     * Maps the shared file where every new version of the steering policy is published.
+     *
+     * @return The publisher, or null if the file cannot be mapped.
+     */
+    private static PolicyPublisher openPolicyPublisher() {
+        try {
+            return new PolicyPublisher(Constants.STEER_POLICY_PATH,
+                    SteerControl.States.values().length, SteerControl.Actions.values().length);
+        } catch (IOException e) {
+            LOG.log(ERROR, "Could not map the shared policy file...", e);
+            return null;
+        }
     }
 
     /**
@@ -0,0 +1,405 @@
+package drivers;
+
+import torcs.Constants;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The DriverLog class is the logging facility of the drivers. Messages are queued in a preallocated ring together with
+ * their arguments and formatted and written by a background thread, so logging on the control thread costs a few
+ * stores: it never formats, never writes and never blocks. When the ring is full the message is dropped and counted.
+ * <p>
+ * Messages are templates where every {@code {}} is replaced by the next argument. Errors and warnings are written
+ * with the {@code ERROR!!! -> } and {@code WARNING!!! -> } prefixes used across the project. Messages below the
+ * configured level are discarded before they are queued, and a template can be rate limited or sampled, so per-tick
+ * messages stay cheap even when they are enabled. Arguments are boxed by the caller before the level is checked, so
+ * per-tick messages with primitive arguments are guarded with {@link #isEnabled}.
+ * <p>
+ * Lines are written to {@code System.out}, the stream the rest of the project writes to, and an exception passed as
+ * the last argument, without a placeholder of its own, is written with its stack trace after the message, so errors
+ * and their stack traces come out together and in order.
+ */
+public class DriverLog {
+
+    /**
+     * The severity of a message.
+     */
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final int MAX_ARGUMENTS = 5;
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+    private static final DriverLog INSTANCE = new DriverLog(Constants.LOG_CAPACITY, Level.valueOf(Constants.LOG_LEVEL));
+
+    private final Level[] levels;
+    private final String[] messages;
+    private final Object[][] arguments;
+    private final int[] argumentCounts;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail;
+    private final AtomicLong dropped;
+    private final ConcurrentHashMap<String, Limit> limits;
+    private final PrintStream out;
+    private final Thread drainer;
+    private volatile Level level;
+    private volatile long head;
+
+    /**
+     * Constructs a logger and starts its drain thread.
+     *
+     * @param capacity The number of messages the ring holds, rounded up to a power of two.
+     * @param level    The minimum level of the messages to write.
+     */
+    public DriverLog(int capacity, Level level) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.levels = new Level[size];
+        this.messages = new String[size];
+        this.arguments = new Object[size][MAX_ARGUMENTS];
+        this.argumentCounts = new int[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.limits = new ConcurrentHashMap<>();
+        this.out = System.out;
+        this.level = level;
+
+        this.drainer = new Thread(this::drain, "driver-log");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    /**
+     * Retrieves the logger shared by every driver.
+     *
+     * @return The shared logger.
+     */
+    public static DriverLog getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets the minimum level of the messages to write.
+     *
+     * @param level The minimum level.
+     */
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    /**
+     * Checks if messages of a level are written.
+     *
+     * @param level The level of the messages.
+     * @return True if the messages are written.
+     */
+    public boolean isEnabled(Level level) {
+        return level.compareTo(this.level) >= 0;
+    }
+
+    /**
+     * Writes a message at most once every interval. The number of suppressed messages is appended to the next one.
+     *
+     * @param message        The message template, as passed to the log methods.
+     * @param intervalMillis The minimum interval between two messages in milliseconds.
+     */
+    public void rateLimit(String message, long intervalMillis) {
+        this.limits.put(message, new Limit(intervalMillis * 1_000_000L, 1));
+    }
+
+    /**
+     * Writes only one message of every n. The number of suppressed messages is appended to the next one.
+     *
+     * @param message The message template, as passed to the log methods.
+     * @param n       The sampling period.
+     */
+    public void sample(String message, int n) {
+        this.limits.put(message, new Limit(0, n));
+    }
+
+    /**
+     * Queues a message.
+     *
+     * @param level   The level of the message.
+     * @param message The message.
+     */
+    public void log(Level level, String message) {
+        this.enqueue(level, message, 0, null, null, null, null, null);
+    }
+
+    /**
+     * Queues a message with one argument.
+     *
+     * @param level   The level of the message.
+     * @param message The message template.
+     * @param a       The first argument.
+     */
+    public void log(Level level, String message, Object a) {
+        this.enqueue(level, message, 1, a, null, null, null, null);
+    }
+
+    /**
+     * Queues a message with two arguments.
+     *
+     * @param level   The level of the message.
+     * @param message The message template.
+     * @param a       The first argument.
+     * @param b       The second argument.
+     */
+    public void log(Level level, String message, Object a, Object b) {
+        this.enqueue(level, message, 2, a, b, null, null, null);
+    }
+
+    /**
+     * Queues a message with three arguments.
+     *
+     * @param level   The level of the message.
+     * @param message The message template.
+     * @param a       The first argument.
+     * @param b       The second argument.
+     * @param c       The third argument.
+     */
+    public void log(Level level, String message, Object a, Object b, Object c) {
+        this.enqueue(level, message, 3, a, b, c, null, null);
+    }
+
+    /**
+     * Queues a message with four arguments.
+     *
+     * @param level   The level of the message.
+     * @param message The message template.
+     * @param a       The first argument.
+     * @param b       The second argument.
+     * @param c       The third argument.
+     * @param d       The fourth argument.
+     */
+    public void log(Level level, String message, Object a, Object b, Object c, Object d) {
+        this.enqueue(level, message, 4, a, b, c, d, null);
+    }
+
+    /**
+     * Queues a message with five arguments.
+     *
+     * @param level   The level of the message.
+     * @param message The message template.
+     * @param a       The first argument.
+     * @param b       The second argument.
+     * @param c       The third argument.
+     * @param d       The fourth argument.
+     * @param e       The fifth argument.
+     */
+    public void log(Level level, String message, Object a, Object b, Object c, Object d, Object e) {
+        this.enqueue(level, message, 5, a, b, c, d, e);
+    }
+
+    /**
+     * Waits until every queued message is written.
+     */
+    public void flush() {
+        long target = this.tail.get();
+        while (this.head < target && this.drainer.isAlive()) {
+            LockSupport.unpark(this.drainer);
+            Thread.onSpinWait();
+        }
+        synchronized (this.out) {
+            this.out.flush();
+        }
+    }
+
+    /**
+     * Retrieves the number of messages dropped because the ring was full.
+     *
+     * @return The number of dropped messages.
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Filters a message and claims a slot of the ring for it.
+     *
+     * @param level   The level of the message.
+     * @param message The message template.
+     * @param count   The number of arguments.
+     * @param a       The first argument.
+     * @param b       The second argument.
+     * @param c       The third argument.
+     * @param d       The fourth argument.
+     * @param e       The fifth argument.
+     */
+    private void enqueue(Level level, String message, int count, Object a, Object b, Object c, Object d, Object e) {
+        if (!this.isEnabled(level))
+            return;
+        Limit limit = this.limits.get(message);
+        if (limit != null && !limit.allow())
+            return;
+
+        long position;
+        int slot;
+        do {
+            position = this.tail.get();
+            slot = (int) position & this.mask;
+            if (this.sequences.get(slot) != position) {
+                // The slot has not been drained yet, so the ring is full
+                this.dropped.incrementAndGet();
+                return;
+            }
+        } while (!this.tail.compareAndSet(position, position + 1));
+
+        this.levels[slot] = level;
+        this.messages[slot] = message;
+        this.argumentCounts[slot] = count;
+        Object[] slotArguments = this.arguments[slot];
+        slotArguments[0] = a;
+        slotArguments[1] = b;
+        slotArguments[2] = c;
+        slotArguments[3] = d;
+        slotArguments[4] = e;
+        this.sequences.lazySet(slot, position + 1);
+    }
+
+    /**
+     * Writes the queued messages until the end of the program, parking while the ring is empty.
+     */
+    private void drain() {
+        StringBuilder line = new StringBuilder(256);
+        long reportedDrops = 0;
+        while (true) {
+            int slot = (int) this.head & this.mask;
+            if (this.sequences.get(slot) != this.head + 1) {
+                long drops = this.dropped.get();
+                synchronized (this.out) {
+                    if (drops != reportedDrops) {
+                        this.out.println("WARNING!!! -> " + (drops - reportedDrops) + " log messages dropped");
+                        reportedDrops = drops;
+                    }
+                    this.out.flush();
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+
+            line.setLength(0);
+            if (this.levels[slot] == Level.ERROR)
+                line.append("ERROR!!! -> ");
+            else if (this.levels[slot] == Level.WARN)
+                line.append("WARNING!!! -> ");
+            Object[] slotArguments = this.arguments[slot];
+            int count = this.argumentCounts[slot];
+            int used = this.format(line, this.messages[slot], slotArguments, count);
+            Limit limit = this.limits.get(this.messages[slot]);
+            if (limit != null)
+                limit.appendSuppressed(line);
+            if (used < count && slotArguments[count - 1] instanceof Throwable)
+                appendStackTrace(line, (Throwable) slotArguments[count - 1]);
+            for (int i = 0; i < MAX_ARGUMENTS; i++) {
+                slotArguments[i] = null;
+            }
+            this.messages[slot] = null;
+            this.sequences.lazySet(slot, this.head + this.mask + 1);
+            this.head++;
+            synchronized (this.out) {
+                this.out.println(line);
+            }
+        }
+    }
+
+    /**
+     * Replaces every {@code {}} of a template with the next argument.
+     *
+     * @param line      The output line.
+     * @param message   The message template.
+     * @param arguments The arguments.
+     * @param count     The number of arguments.
+     * @return The number of arguments written.
+     */
+    private int format(StringBuilder line, String message, Object[] arguments, int count) {
+        int argument = 0;
+        int start = 0;
+        int placeholder;
+        while (argument < count && (placeholder = message.indexOf("{}", start)) >= 0) {
+            line.append(message, start, placeholder).append(arguments[argument++]);
+            start = placeholder + 2;
+        }
+        line.append(message, start, message.length());
+        return argument;
+    }
+
+    /**
+     * Appends the stack trace of an exception on the lines after a message.
+     *
+     * @param line   The output line.
+     * @param thrown The exception.
+     */
+    private static void appendStackTrace(StringBuilder line, Throwable thrown) {
+        StringWriter trace = new StringWriter();
+        thrown.printStackTrace(new PrintWriter(trace));
+        line.append(System.lineSeparator()).append(trace.toString().stripTrailing());
+    }
+
+    /**
+     * The Limit class rate limits or samples the messages of one template.
+     */
+    private static class Limit {
+
+        private final long intervalNanos;
+        private final int period;
+        private final AtomicLong next;
+        private final AtomicLong calls;
+        private final AtomicLong suppressed;
+
+        /**
+         * Constructs a limit.
+         *
+         * @param intervalNanos The minimum interval between two messages in nanoseconds, 0 for none.
+         * @param period        The sampling period, 1 to keep every message.
+         */
+        private Limit(long intervalNanos, int period) {
+            this.intervalNanos = intervalNanos;
+            this.period = period;
+            this.next = new AtomicLong(Long.MIN_VALUE);
+            this.calls = new AtomicLong();
+            this.suppressed = new AtomicLong();
+        }
+
+        /**
+         * Decides if a message goes through, counting it as suppressed otherwise.
+         *
+         * @return True if the message must be queued.
+         */
+        private boolean allow() {
+            boolean allowed = this.calls.getAndIncrement() % this.period == 0;
+            if (allowed && this.intervalNanos > 0) {
+                long now = System.nanoTime();
+                long next = this.next.get();
+                allowed = now - next >= 0 || next == Long.MIN_VALUE;
+                allowed = allowed && this.next.compareAndSet(next, now + this.intervalNanos);
+            }
+            if (!allowed)
+                this.suppressed.incrementAndGet();
+            return allowed;
+        }
+
+        /**
+         * Appends the number of messages suppressed since the last one written, if any.
+         *
+         * @param line The output line.
+         */
+        private void appendSuppressed(StringBuilder line) {
+            long count = this.suppressed.getAndSet(0);
+            if (count > 0)
+                line.append(" (").append(count).append(" suppressed)");
+        }
+    }
+}
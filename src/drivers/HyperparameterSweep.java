@@ -0,0 +1,315 @@
+package drivers;
+
+import mdp.Hyperparameters;
+import mdp.QLearning;
+import torcs.*;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static torcs.Constants.SEPARATOR;
+
+/**
+ * The HyperparameterSweep class trains the steering learner with many hyperparameter configurations in parallel and
+ * ranks them. Every run uses its own in-memory Q-table and {@link DirectionTrainer}, driven against one of the
+ * available environments, so runs are independent and never touch the saved tables.
+ * <p>
+ * Usage: {@code java drivers.HyperparameterSweep [epsilon:0.5,0.7] [learningRate:...] [discount:...] [maxEpochs:...]
+ * [rangeInitial:...] [rangeEnd:...] [samples:N] [seed:S] [host:localhost] [ports:3001,3002] [simulators:N]
+ * [layout:S300,L90@60,...] [width:W] [maxSteps:N]}
+ * <p>
+ * Without {@code samples} the full grid of the listed values is run; with it, N configurations are drawn uniformly
+ * between the minimum and maximum listed values. Parameters not listed keep the values of {@link Constants}. Runs are
+ * ranked by the episode of the first complete lap, then by the distance raced in the final episode.
+ * <p>
+ * Runs are driven against the TORCS servers listed in {@code ports}, against {@code simulators} instances of
+ * {@link KinematicSimulator}, or both. Without either option, one simulator per available core is used.
+ */
+public class HyperparameterSweep {
+
+    private static final String[] PARAMETERS = {
+            "epsilon", "learningRate", "discount", "maxEpochs", "rangeInitial", "rangeEnd"
+    };
+
+    /**
+     * The main entry point of the sweep.
+     *
+     * @param args The command-line arguments.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            StringTokenizer st = new StringTokenizer(arg, ":");
+            options.put(st.nextToken(), st.nextToken());
+        }
+
+        List<Hyperparameters> configurations = configurations(options);
+        List<Environment> environments = environments(options);
+        if (environments.isEmpty()) {
+            System.out.println("No environment available to run the sweep");
+            return;
+        }
+        int maxSteps = Integer.parseInt(options.getOrDefault("maxSteps", "0"));
+
+        List<Result> results = run(configurations, environments, maxSteps);
+        for (Environment environment : environments) {
+            environment.close();
+        }
+        report(results);
+    }
+
+    /**
+     * Runs every configuration, in parallel over the available environments.
+     *
+     * @param configurations The configurations to run.
+     * @param environments   The environments, each used by one run at a time.
+     * @param maxSteps       The maximum number of steps per episode, 0 for no limit.
+     * @return The results, ranked from best to worst.
+     */
+    public static List<Result> run(List<Hyperparameters> configurations, List<Environment> environments, int maxSteps)
+            throws InterruptedException {
+        BlockingQueue<Environment> pool = new LinkedBlockingQueue<>(environments);
+        ExecutorService executor = Executors.newFixedThreadPool(environments.size());
+        List<Future<Result>> futures = new ArrayList<>();
+        for (Hyperparameters hyperparameters : configurations) {
+            futures.add(executor.submit(() -> {
+                Environment environment = pool.take();
+                try {
+                    return train(hyperparameters, environment, maxSteps);
+                } finally {
+                    pool.put(environment);
+                }
+            }));
+        }
+        executor.shutdown();
+
+        List<Result> results = new ArrayList<>();
+        for (Future<Result> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                System.out.println("ERROR!!! -> A sweep run failed...");
+                e.getCause().printStackTrace();
+            }
+        }
+        results.sort(Comparator
+                .comparingInt((Result result) -> result.firstLapEpisode < 0 ? Integer.MAX_VALUE : result.firstLapEpisode)
+                .thenComparingDouble(result -> -result.finalDistance));
+        return results;
+    }
+
+    /**
+     * Trains a fresh steering learner with the specified hyperparameters.
+     *
+     * @param hyperparameters The hyperparameters of the run.
+     * @param environment     The environment to train against.
+     * @param maxSteps        The maximum number of steps per episode, 0 for no limit.
+     * @return The result of the run.
+     */
+    private static Result train(Hyperparameters hyperparameters, Environment environment, int maxSteps) {
+        QLearning learner = new QLearning(Constants.ControlSystems.STEERING_CONTROL_SYSTEM, hyperparameters, null);
+        DirectionTrainer trainer = new DirectionTrainer(learner, null);
+        trainer.setStage(Controller.Stage.UNKNOWN);
+        trainer.setTrackName("sweep");
+
+        int firstLapEpisode = -1;
+        double finalDistance = 0;
+        for (int episode = 0; episode < hyperparameters.maxEpochs; episode++) {
+            SensorModel sensors = environment.reset();
+            if (sensors == null)
+                break;
+            double distance = 0;
+            long steps = 0;
+            while (sensors != null) {
+                distance = Math.max(distance, sensors.getDistanceRaced());
+                Action action = new Action();
+                if (steps < maxSteps || maxSteps == 0)
+                    action = trainer.control(sensors);
+                else
+                    action.restartRace = true;
+                steps++;
+                sensors = environment.step(action);
+            }
+            int completeLaps = trainer.getCompleteLaps();
+            trainer.reset();
+            if (firstLapEpisode < 0 && trainer.getCompleteLaps() > completeLaps) {
+                firstLapEpisode = episode;
+            }
+            finalDistance = distance;
+        }
+        trainer.shutdown();
+        return new Result(hyperparameters, firstLapEpisode, finalDistance);
+    }
+
+    /**
+     * Builds the configurations to run from the command-line options.
+     *
+     * @param options The command-line options.
+     * @return The configurations.
+     */
+    private static List<Hyperparameters> configurations(Map<String, String> options) {
+        Hyperparameters defaults = Hyperparameters.defaults();
+        double[][] values = {
+                parse(options.get("epsilon"), defaults.initialEpsilon),
+                parse(options.get("learningRate"), defaults.initialLearningRate),
+                parse(options.get("discount"), defaults.discountFactor),
+                parse(options.get("maxEpochs"), defaults.maxEpochs),
+                parse(options.get("rangeInitial"), defaults.rangeEpochsInitial),
+                parse(options.get("rangeEnd"), defaults.rangeEpochsEnd),
+        };
+
+        List<Hyperparameters> configurations = new ArrayList<>();
+        double[] current = new double[PARAMETERS.length];
+        if (options.containsKey("samples")) {
+            int samples = Integer.parseInt(options.get("samples"));
+            Random random = new Random(Long.parseLong(options.getOrDefault("seed", "0")));
+            for (int i = 0; i < samples; i++) {
+                for (int p = 0; p < PARAMETERS.length; p++) {
+                    double min = Arrays.stream(values[p]).min().getAsDouble();
+                    double max = Arrays.stream(values[p]).max().getAsDouble();
+                    current[p] = min + random.nextDouble() * (max - min);
+                }
+                configurations.add(toHyperparameters(current));
+            }
+        } else {
+            grid(values, 0, current, configurations);
+        }
+        return configurations;
+    }
+
+    /**
+     * Adds every combination of the listed values to the configurations.
+     *
+     * @param values         The listed values of each parameter.
+     * @param parameter      The parameter being combined.
+     * @param current        The values chosen for the previous parameters.
+     * @param configurations The output configurations.
+     */
+    private static void grid(double[][] values, int parameter, double[] current, List<Hyperparameters> configurations) {
+        if (parameter == values.length) {
+            configurations.add(toHyperparameters(current));
+            return;
+        }
+        for (double value : values[parameter]) {
+            current[parameter] = value;
+            grid(values, parameter + 1, current, configurations);
+        }
+    }
+
+    /**
+     * Converts the parameter values to hyperparameters.
+     *
+     * @param values The values, in the order of {@link #PARAMETERS}.
+     * @return The hyperparameters.
+     */
+    private static Hyperparameters toHyperparameters(double[] values) {
+        int maxEpochs = (int) Math.round(values[3]);
+        int rangeInitial = (int) Math.round(values[4]);
+        int rangeEnd = Math.max(rangeInitial + 1, (int) Math.round(values[5]));
+        return new Hyperparameters(values[0], values[1], values[2], maxEpochs, rangeInitial, rangeEnd);
+    }
+
+    /**
+     * Parses a comma-separated list of values.
+     *
+     * @param list         The list, or null.
+     * @param defaultValue The value used when the list is null.
+     * @return The values.
+     */
+    private static double[] parse(String list, double defaultValue) {
+        if (list == null)
+            return new double[]{defaultValue};
+        String[] tokens = list.split(SEPARATOR);
+        double[] values = new double[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            values[i] = Double.parseDouble(tokens[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Creates the environments listed in the command-line options.
+     *
+     * @param options The command-line options.
+     * @return The environments.
+     */
+    private static List<Environment> environments(Map<String, String> options) {
+        List<Environment> environments = new ArrayList<>();
+        String host = options.getOrDefault("host", "localhost");
+        // DirectionTrainer keeps the default sensor layout of Controller
+        float[] angles = new DeadSimpleSoloController().initAngles();
+        if (options.containsKey("ports")) {
+            for (String port : options.get("ports").split(SEPARATOR)) {
+                environments.add(new UdpEnvironment(host, Integer.parseInt(port), "championship2011", angles));
+            }
+        }
+        int simulators = environments.isEmpty() ? Runtime.getRuntime().availableProcessors() : 0;
+        simulators = Integer.parseInt(options.getOrDefault("simulators", String.valueOf(simulators)));
+        if (simulators > 0) {
+            // Tracks are immutable, so every simulator shares the same one
+            double width = Double.parseDouble(options.getOrDefault("width", String.valueOf(Track.DEFAULT_WIDTH)));
+            Track track = new Track("sim", width, options.getOrDefault("layout", Track.DEFAULT_LAYOUT));
+            for (int i = 0; i < simulators; i++) {
+                environments.add(new KinematicSimulator(track, angles));
+            }
+        }
+        return environments;
+    }
+
+    /**
+     * Prints the ranked results and saves them to a file.
+     *
+     * @param results The ranked results.
+     */
+    private static void report(List<Result> results) {
+        String header = "rank" + SEPARATOR + "epsilon" + SEPARATOR + "learningRate" + SEPARATOR + "discount"
+                + SEPARATOR + "maxEpochs" + SEPARATOR + "rangeInitial" + SEPARATOR + "rangeEnd"
+                + SEPARATOR + "firstLapEpisode" + SEPARATOR + "finalDistance";
+        try (PrintWriter file = new PrintWriter(Constants.SWEEP_REPORT_PATH)) {
+            System.out.println(header);
+            file.write(header + "\n");
+            for (int i = 0; i < results.size(); i++) {
+                String line = (i + 1) + SEPARATOR + results.get(i);
+                System.out.println(line);
+                file.write(line + "\n");
+            }
+        } catch (FileNotFoundException e) {
+            System.out.println("ERROR!!! -> Could not save sweep report in .csv file...");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The Result class holds the outcome of one run of the sweep.
+     */
+    public static class Result {
+
+        public final Hyperparameters hyperparameters;
+        public final int firstLapEpisode;
+        public final double finalDistance;
+
+        /**
+         * Constructs the result of a run.
+         *
+         * @param hyperparameters The hyperparameters of the run.
+         * @param firstLapEpisode The first episode with a complete lap, or -1 if there was none.
+         * @param finalDistance   The distance raced in the final episode.
+         */
+        public Result(Hyperparameters hyperparameters, int firstLapEpisode, double finalDistance) {
+            this.hyperparameters = hyperparameters;
+            this.firstLapEpisode = firstLapEpisode;
+            this.finalDistance = finalDistance;
+        }
+
+        /**
+         * Returns the string representation of the result, as comma-separated values.
+         *
+         * @return The string representation of the result.
+         */
+        public String toString() {
+            return this.hyperparameters + SEPARATOR + this.firstLapEpisode + SEPARATOR + (int) this.finalDistance;
+        }
+    }
+}
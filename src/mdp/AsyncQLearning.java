@@ -0,0 +1,328 @@
+package mdp;
+
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * The AsyncQLearning class splits a {@link QLearning} learner into an actor and a learner thread.
+ * <p>
+ * The actor (the thread that answers TORCS) only pushes transitions onto a {@link TransitionRing} and chooses its
+ * actions epsilon-greedily from the last policy snapshot published by the learner, so its cost per tick does not depend
+ * on the cost of learning. A dedicated learner thread owns the {@link QLearning} object: it consumes the ring, applies
+ * the updates, runs the end-of-episode work and publishes a new snapshot after every batch.
+ * <p>
+ * With planning enabled, the learner thread spends the time between ticks, when the ring is empty, on the simulated
+ * backups of a {@link DynaPlanner}, in slices of a time budget, and yields as soon as the actor queues a record.
+ */
+public class AsyncQLearning implements AutoCloseable {
+
+    private static final int RING_CAPACITY = 4096;
+    private static final long IDLE_PARK_NANOS = 200_000;
+
+    private final QLearning learner;
+    private final ReplayBuffer replayBuffer;
+    private final TransitionRing ring;
+    private final Queue<Consumer<QLearning>> episodeTasks;
+    private final Object[] possibleStates;
+    private final Object[] possibleActions;
+    private final int[] candidates;
+    private final VisitCounts visits;
+    private volatile VisitCounts publishedVisits;
+    private final Random random;
+    private final Thread learnerThread;
+    private final BooleanSupplier recordQueued;
+    private volatile DynaPlanner planner;
+    private long planningBudgetNanos;
+    private volatile double[] policy;
+    private volatile double epsilon;
+    private volatile boolean running;
+
+    /**
+     * Starts a learner thread that trains the specified learner.
+     *
+     * @param learner      The learner, owned by the learner thread from now on.
+     * @param replayBuffer The buffer where the learner thread records every applied transition, or null.
+     */
+    public AsyncQLearning(QLearning learner, ReplayBuffer replayBuffer) {
+        this(learner, replayBuffer, new Random(System.currentTimeMillis()));
+    }
+
+    /**
+     * Starts a learner thread that trains the specified learner, exploring with the specified random generator.
+     *
+     * @param learner      The learner, owned by the learner thread from now on.
+     * @param replayBuffer The buffer where the learner thread records every applied transition, or null.
+     * @param random       The random generator of the actor, such as the one of a resumed run.
+     */
+    public AsyncQLearning(QLearning learner, ReplayBuffer replayBuffer, Random random) {
+        this.learner = learner;
+        this.replayBuffer = replayBuffer;
+        this.ring = new TransitionRing(RING_CAPACITY);
+        this.episodeTasks = new ConcurrentLinkedQueue<>();
+        this.possibleStates = learner.getPossibleStates();
+        this.possibleActions = learner.getPossibleActions();
+        this.candidates = new int[this.possibleActions.length];
+        this.visits = learner.getVisitCounts();
+        this.random = random;
+        this.policy = learner.getQValues();
+        this.publishedVisits = this.visits.copy();
+        this.epsilon = learner.getEpsilon();
+        this.recordQueued = () -> !this.ring.isEmpty();
+        this.running = true;
+        this.learnerThread = new Thread(this::learn, "q-learner");
+        this.learnerThread.setDaemon(true);
+        this.learnerThread.start();
+    }
+
+    /**
+     * Enables Dyna-Q planning on the learner thread. Must be called before the first record is queued. Planning
+     * follows the idle time of the learner thread, so training is no longer reproducible from a seed.
+     *
+     * @param stepsPerUpdate The number of simulated backups earned by every real transition.
+     * @param threshold      The smallest change of a Q-value worth a backup.
+     * @param budgetNanos    The longest time the learner thread plans before checking the ring again.
+     */
+    public void enablePlanning(int stepsPerUpdate, double threshold, long budgetNanos) {
+        this.planningBudgetNanos = budgetNanos;
+        this.planner = new DynaPlanner(this.learner, stepsPerUpdate, threshold);
+    }
+
+    /**
+     * Retrieves the planner of the learner thread. Its counters are only exact once the learner thread has stopped.
+     *
+     * @return The planner, or null if planning is not enabled.
+     */
+    public DynaPlanner getPlanner() {
+        return this.planner;
+    }
+
+    /**
+     * Queues a transition for the learner and returns the next action from the current policy. Never blocks.
+     *
+     * @param lastState       The last state, or null if there is none.
+     * @param currentState    The current state.
+     * @param actionPerformed The action performed.
+     * @param reward          The reward received.
+     * @return The next action to take.
+     */
+    public Object update(Object lastState, Object currentState, Object actionPerformed, double reward) {
+        this.observe(lastState, currentState, actionPerformed, reward);
+        return this.nextAction(currentState);
+    }
+
+    /**
+     * Queues a transition for the learner without choosing the next action, such as when a decision keeps the last
+     * one. Never blocks.
+     *
+     * @param lastState       The last state, or null if there is none.
+     * @param currentState    The current state.
+     * @param actionPerformed The action performed.
+     * @param reward          The reward received.
+     */
+    public void observe(Object lastState, Object currentState, Object actionPerformed, double reward) {
+        this.ring.offer(TransitionRing.UPDATE, ordinal(lastState), ordinal(actionPerformed), reward,
+                ordinal(currentState));
+    }
+
+    /**
+     * Queues the transition that ended the episode. Never blocks.
+     *
+     * @param lastState  The state where the last action was chosen, or null to skip recording it for replay.
+     * @param lastAction The last action.
+     * @param reward     The reward received.
+     */
+    public void lastUpdate(Object lastState, Object lastAction, double reward) {
+        this.ring.offer(TransitionRing.LAST_UPDATE, ordinal(lastState), ordinal(lastAction), reward, -1);
+    }
+
+    /**
+     * Queues the end of the episode, with the work the learner thread runs once every earlier transition is applied.
+     * If the learner thread has stopped, the work runs on the calling thread instead, so the episode still ends.
+     *
+     * @param task The end-of-episode work, such as saving the table.
+     */
+    public void endEpisode(Consumer<QLearning> task) {
+        this.episodeTasks.add(task);
+        // Waits for room instead of offering again, so the wait is not counted as dropped records
+        while (this.ring.isFull()) {
+            if (!this.learnerThread.isAlive()) {
+                System.out.println("ERROR!!! -> Learner thread stopped, the queued records are lost and the end of"
+                        + " the episode runs on the caller thread...");
+                if (this.episodeTasks.remove(task))
+                    task.accept(this.learner);
+                return;
+            }
+            Thread.onSpinWait();
+        }
+        this.ring.offer(TransitionRing.EPISODE_END, -1, -1, 0.0, -1);
+    }
+
+    /**
+     * Returns the next action with an epsilon-greedy policy over the last published snapshot, or with the UCB selector
+     * over the visit counts published with it if it is enabled.
+     *
+     * @param state The current state.
+     * @return The next action.
+     */
+    public Object nextAction(Object state) {
+        VisitCounts visits = this.publishedVisits;
+        if (visits.isExploring()) {
+            int action = visits.select(ordinal(state), this.policy, this.random, this.candidates);
+            return this.possibleActions[action];
+        }
+        if (this.random.nextDouble() < this.epsilon) {
+            return this.possibleActions[this.random.nextInt(this.possibleActions.length)];
+        }
+        double[] values = this.policy;
+        int row = ordinal(state) * this.possibleActions.length;
+        double maxValue = -Double.MAX_VALUE;
+        int count = 0;
+        for (int action = 0; action < this.possibleActions.length; action++) {
+            double value = values[row + action];
+            if (maxValue < value) {
+                maxValue = value;
+                count = 0;
+                this.candidates[count++] = action;
+            } else if (maxValue == value) {
+                this.candidates[count++] = action;
+            }
+        }
+        return this.possibleActions[this.candidates[this.random.nextInt(count)]];
+    }
+
+    /**
+     * Retrieves the random generator of the actor. It belongs to the actor thread.
+     *
+     * @return The random generator.
+     */
+    public Random getRandom() {
+        return this.random;
+    }
+
+    /**
+     * Retrieves the number of transitions dropped because the learner fell behind.
+     *
+     * @return The number of dropped transitions.
+     */
+    public long getDropped() {
+        return this.ring.getDropped();
+    }
+
+    /**
+     * Stops the learner thread once every queued record has been applied.
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        LockSupport.unpark(this.learnerThread);
+        try {
+            this.learnerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The body of the learner thread.
+     */
+    private void learn() {
+        while (this.running || !this.ring.isEmpty()) {
+            if (this.drain() > 0) {
+                this.policy = this.learner.getQValues();
+                if (this.visits.isExploring()) {
+                    // The actor never reads the counts the learner thread is writing
+                    this.publishedVisits = this.visits.copy();
+                }
+                this.epsilon = this.learner.getEpsilon();
+            } else if (this.planner != null && this.planner.hasWork()) {
+                // Idle until the next tick, so the slack goes to simulated backups
+                try {
+                    if (this.planner.plan(this.planningBudgetNanos, this.recordQueued) > 0) {
+                        this.policy = this.learner.getQValues();
+                    }
+                } catch (RuntimeException e) {
+                    System.out.println("ERROR!!! -> Could not plan simulated backups, planning is disabled...");
+                    e.printStackTrace();
+                    this.planner = null;
+                }
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Applies every queued record. A record that fails is reported and skipped, so the learner thread keeps
+     * consuming the ring.
+     *
+     * @return The number of records applied.
+     */
+    private int drain() {
+        int applied = 0;
+        int slot;
+        while ((slot = this.ring.peek()) >= 0) {
+            try {
+                this.apply(slot);
+            } catch (RuntimeException e) {
+                System.out.println("ERROR!!! -> Learner thread could not apply a queued record...");
+                e.printStackTrace();
+            }
+            this.ring.advance();
+            applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * Applies a queued record.
+     *
+     * @param slot The slot of the record in the ring.
+     */
+    private void apply(int slot) {
+        int state = this.ring.getState(slot);
+        int action = this.ring.getAction(slot);
+        double reward = this.ring.getReward(slot);
+        int nextState = this.ring.getNextState(slot);
+        switch (this.ring.getKind(slot)) {
+            case TransitionRing.UPDATE:
+                if (state >= 0 && this.replayBuffer != null) {
+                    this.replayBuffer.add(state, action, reward, nextState, false);
+                }
+                this.learner.update(state >= 0 ? this.possibleStates[state] : null,
+                        this.possibleStates[nextState], this.possibleActions[action], reward);
+                if (state >= 0 && this.planner != null) {
+                    this.planner.observe(state, action, reward, nextState, false);
+                }
+                break;
+            case TransitionRing.LAST_UPDATE:
+                if (state >= 0 && this.replayBuffer != null) {
+                    this.replayBuffer.add(state, action, reward, state, true);
+                }
+                this.learner.lastUpdate(this.possibleActions[action], reward);
+                if (state >= 0 && this.planner != null) {
+                    this.planner.observe(state, action, reward, -1, true);
+                }
+                break;
+            case TransitionRing.EPISODE_END:
+                Consumer<QLearning> task = this.episodeTasks.poll();
+                if (task != null) {
+                    task.accept(this.learner);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Returns the ordinal of a state or action.
+     *
+     * @param value The state or action.
+     * @return The ordinal, or -1 if the value is null.
+     */
+    private static int ordinal(Object value) {
+        return value == null ? -1 : ((Enum<?>) value).ordinal();
+    }
+}
@@ -0,0 +1,112 @@
+package mdp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The AtomicQTable class is a Q-table that can be shared by several training threads without locks.
+ * Values are stored as raw double bits in an {@link AtomicLongArray}, so reads and writes never tear. Writes are
+ * relaxed (Hogwild style): concurrent updates of the same pair may overwrite each other, which Q-learning tolerates.
+ */
+public class AtomicQTable implements QTable {
+
+    private final AtomicLongArray values;
+    private final int states;
+    private final int actions;
+
+    /**
+     * Constructs a zero-initialized shared Q-table.
+     *
+     * @param states  The number of states.
+     * @param actions The number of actions.
+     */
+    public AtomicQTable(int states, int actions) {
+        this.values = new AtomicLongArray(states * actions);
+        this.states = states;
+        this.actions = actions;
+    }
+
+    /**
+     * Constructs a shared Q-table initialized from a row-major array of Q-values.
+     *
+     * @param states  The number of states.
+     * @param actions The number of actions.
+     * @param initial The initial Q-values, indexed by {@code state * actions + action}.
+     */
+    public AtomicQTable(int states, int actions, double[] initial) {
+        this(states, actions);
+        for (int i = 0; i < initial.length; i++) {
+            this.values.setOpaque(i, Double.doubleToRawLongBits(initial[i]));
+        }
+    }
+
+    /**
+     * Retrieves the number of states of the table.
+     *
+     * @return The number of states.
+     */
+    @Override
+    public int stateCount() {
+        return this.states;
+    }
+
+    /**
+     * Retrieves the number of actions of the table.
+     *
+     * @return The number of actions.
+     */
+    @Override
+    public int actionCount() {
+        return this.actions;
+    }
+
+    /**
+     * Retrieves the Q-value of a state-action pair.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @return The Q-value.
+     */
+    @Override
+    public double get(int state, int action) {
+        return Double.longBitsToDouble(this.values.getOpaque(state * this.actions + action));
+    }
+
+    /**
+     * Sets the Q-value of a state-action pair with a relaxed write.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @param value  The new Q-value.
+     */
+    @Override
+    public void set(int state, int action, double value) {
+        this.values.setOpaque(state * this.actions + action, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Atomically replaces a Q-value if it still holds the expected value.
+     *
+     * @param state    The state ordinal.
+     * @param action   The action ordinal.
+     * @param expected The expected current Q-value.
+     * @param value    The new Q-value.
+     * @return True if the value was replaced, false otherwise.
+     */
+    public boolean compareAndSet(int state, int action, double expected, double value) {
+        return this.values.compareAndSet(state * this.actions + action,
+                Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Copies the current Q-values into a row-major array.
+     *
+     * @return The Q-values, indexed by {@code state * actions + action}.
+     */
+    public double[] toArray() {
+        double[] copy = new double[this.values.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = Double.longBitsToDouble(this.values.getOpaque(i));
+        }
+        return copy;
+    }
+}
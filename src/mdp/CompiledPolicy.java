@@ -0,0 +1,196 @@
+package mdp;
+
+import torcs.Constants;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The CompiledPolicy class is the frozen greedy policy of a trained Q-table: for every state it holds the best action
+ * and the actuator value of that action, so inference at race time is a single array read, with no map lookups, no
+ * action names to parse and no random placeholder.
+ * <p>
+ * The policy is saved as a binary file: a header with a magic number, the number of states and the number of
+ * actions, followed by the best action ordinal of every state and the actuator value of every state as big-endian
+ * doubles.
+ */
+public class CompiledPolicy {
+
+    private static final int MAGIC = 0x504F4C31; // POL1
+
+    private final int actions;
+    private final int[] bestActions;
+    private final double[] values;
+
+    /**
+     * Constructs a policy from its arrays.
+     *
+     * @param actions     The number of actions.
+     * @param bestActions The best action ordinal of every state.
+     * @param values      The actuator value of every state.
+     */
+    private CompiledPolicy(int actions, int[] bestActions, double[] values) {
+        this.actions = actions;
+        this.bestActions = bestActions;
+        this.values = values;
+    }
+
+    /**
+     * Compiles the greedy policy of a Q-table. Ties go to the action with the lowest ordinal, as in
+     * {@link QLearning#nextOnlyBestAction}.
+     *
+     * @param qValues        The Q-values, indexed by {@code state * actions + action}.
+     * @param actuatorValues The actuator value of every action, in ordinal order.
+     * @return The compiled policy.
+     */
+    public static CompiledPolicy compile(double[] qValues, double[] actuatorValues) {
+        int actions = actuatorValues.length;
+        int states = qValues.length / actions;
+        int[] bestActions = new int[states];
+        double[] values = new double[states];
+        for (int state = 0; state < states; state++) {
+            int row = state * actions;
+            int best = 0;
+            for (int action = 1; action < actions; action++) {
+                if (qValues[row + best] < qValues[row + action])
+                    best = action;
+            }
+            bestActions[state] = best;
+            values[state] = actuatorValues[best];
+        }
+        return new CompiledPolicy(actions, bestActions, values);
+    }
+
+    /**
+     * Compiles the greedy steering policy of a Q-table.
+     *
+     * @param qValues The steering Q-values, indexed by {@code state.ordinal() * actions + action.ordinal()}.
+     * @return The compiled policy.
+     */
+    public static CompiledPolicy compileSteer(double[] qValues) {
+        return compile(qValues, steerValues());
+    }
+
+    /**
+     * Loads a policy saved in a file.
+     *
+     * @param filePath The file path.
+     * @return The policy, or null if there is none or the file is not a policy.
+     */
+    public static CompiledPolicy load(String filePath) {
+        File file = new File(filePath);
+        if (!file.exists())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                System.out.println("ERROR!!! -> " + filePath + " is not a compiled policy...");
+                return null;
+            }
+            int states = in.readInt();
+            int actions = in.readInt();
+            byte[] bytes = new byte[states * (Integer.BYTES + Double.BYTES)];
+            in.readFully(bytes);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int[] bestActions = new int[states];
+            double[] values = new double[states];
+            buffer.asIntBuffer().get(bestActions);
+            buffer.position(states * Integer.BYTES);
+            buffer.asDoubleBuffer().get(values);
+            return new CompiledPolicy(actions, bestActions, values);
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not load compiled policy from .policy file...");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Saves the policy to a file, writing it aside and moving it into place so drivers never load a partial policy.
+     *
+     * @param filePath The file path.
+     */
+    public void save(String filePath) {
+        File path = new File(filePath);
+        File tmp = new File(filePath + ".tmp" + Thread.currentThread().getId());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(this.bestActions.length);
+                out.writeInt(this.actions);
+                ByteBuffer bytes = ByteBuffer.allocate(this.bestActions.length * (Integer.BYTES + Double.BYTES));
+                bytes.asIntBuffer().put(this.bestActions);
+                bytes.position(this.bestActions.length * Integer.BYTES);
+                bytes.asDoubleBuffer().put(this.values);
+                out.write(bytes.array());
+            }
+            Files.move(tmp.toPath(), path.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not save compiled policy in .policy file...");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Retrieves the number of states of the policy.
+     *
+     * @return The number of states.
+     */
+    public int getStates() {
+        return this.bestActions.length;
+    }
+
+    /**
+     * Retrieves the best action of a state.
+     *
+     * @param state The state ordinal.
+     * @return The action ordinal.
+     */
+    public int getAction(int state) {
+        return this.bestActions[state];
+    }
+
+    /**
+     * Retrieves the actuator value of the best action of a state.
+     *
+     * @param state The state ordinal.
+     * @return The actuator value.
+     */
+    public double getValue(int state) {
+        return this.values[state];
+    }
+
+    /**
+     * Computes the steering value of every steering action once.
+     *
+     * @return The steering values, in action ordinal order.
+     */
+    private static double[] steerValues() {
+        SteerControl.Actions[] actions = SteerControl.Actions.values();
+        double[] values = new double[actions.length];
+        for (int i = 0; i < actions.length; i++) {
+            values[i] = SteerControl.steerAction2Double(actions[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Compiles the steering Q-table saved by the trainer into the policy loaded by the drivers.
+     *
+     * @param args Unused.
+     */
+    public static void main(String[] args) {
+        QLearning learner = new QLearning(Constants.ControlSystems.STEERING_CONTROL_SYSTEM);
+        CompiledPolicy policy = compileSteer(learner.getQValues());
+        policy.save(Constants.STEER_COMPILED_POLICY_PATH);
+        System.out.println("Compiled " + policy.getStates() + " states into " + Constants.STEER_COMPILED_POLICY_PATH);
+    }
+}
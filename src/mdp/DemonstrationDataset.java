@@ -0,0 +1,413 @@
+package mdp;
+
+import torcs.Action;
+import torcs.ArrayBasedSensorModel;
+import torcs.Constants;
+import torcs.DrivingInstructor;
+import torcs.GearStage;
+import torcs.KinematicSimulator;
+import torcs.SensorModel;
+import torcs.SpeedLimiterStage;
+import torcs.TraceIndex;
+import torcs.TraceReader;
+import torcs.TraceWriter;
+import torcs.Track;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.StringTokenizer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
+
+/**
+ * The DemonstrationDataset class collects steering transitions demonstrated by the {@link DrivingInstructor}, so the
+ * steering Q-table starts training from a competent policy instead of all zeros. Transitions are kept in growable
+ * parallel primitive arrays, with the same fields as a {@link ReplayBuffer}: state, action, reward, next state and
+ * whether the transition ended the episode.
+ * <p>
+ * Demonstrations come from two sources, both generated episode by episode in parallel on a fork/join pool:
+ * <ul>
+ * <li>Simulated episodes, driven in a {@link KinematicSimulator} as the trainer drives: the instructor's steering is
+ * mapped to the nearest action and held for {@link Constants#DECISION_TICKS} ticks. With a small probability a
+ * random action is taken instead, so the episodes also visit the states around the instructor's line; those decisions
+ * are driven but not kept, so every action in the dataset is the instructor's.</li>
+ * <li>Recorded traces, where the instructor labels every decision of the recording. Only the decisions where the
+ * recorded steering matches the instructor's action are kept, because the reward that follows belongs to the recorded
+ * action.</li>
+ * </ul>
+ * The table is initialized by replaying the dataset through {@link QLearning#replay}.
+ * <p>
+ * Usage: {@code java mdp.DemonstrationDataset [episodes:N] [traces:<file or directory>]... [noise:P] [maxTicks:N]
+ * [sweeps:N] [layout:L] [width:W] [seed:S] [threads:N] [table:<path>]}
+ */
+public class DemonstrationDataset {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long DEFAULT_SEED = 17;
+
+    private int[] states;
+    private int[] actions;
+    private double[] rewards;
+    private int[] nextStates;
+    private boolean[] terminals;
+    private int size;
+
+    /**
+     * Constructs an empty dataset.
+     */
+    public DemonstrationDataset() {
+        this.states = new int[INITIAL_CAPACITY];
+        this.actions = new int[INITIAL_CAPACITY];
+        this.rewards = new double[INITIAL_CAPACITY];
+        this.nextStates = new int[INITIAL_CAPACITY];
+        this.terminals = new boolean[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds a transition.
+     *
+     * @param state     The ordinal of the state where the action was performed.
+     * @param action    The ordinal of the action performed.
+     * @param reward    The reward received.
+     * @param nextState The ordinal of the state reached.
+     * @param terminal  True if the transition ended the episode.
+     */
+    public void add(int state, int action, double reward, int nextState, boolean terminal) {
+        if (this.size == this.states.length)
+            this.grow(this.size << 1);
+        this.states[this.size] = state;
+        this.actions[this.size] = action;
+        this.rewards[this.size] = reward;
+        this.nextStates[this.size] = nextState;
+        this.terminals[this.size] = terminal;
+        this.size++;
+    }
+
+    /**
+     * Appends every transition of another dataset.
+     *
+     * @param other The other dataset.
+     * @return This dataset.
+     */
+    public DemonstrationDataset addAll(DemonstrationDataset other) {
+        if (this.size + other.size > this.states.length)
+            this.grow(Math.max(this.size + other.size, this.size << 1));
+        System.arraycopy(other.states, 0, this.states, this.size, other.size);
+        System.arraycopy(other.actions, 0, this.actions, this.size, other.size);
+        System.arraycopy(other.rewards, 0, this.rewards, this.size, other.size);
+        System.arraycopy(other.nextStates, 0, this.nextStates, this.size, other.size);
+        System.arraycopy(other.terminals, 0, this.terminals, this.size, other.size);
+        this.size += other.size;
+        return this;
+    }
+
+    /**
+     * Retrieves the number of transitions.
+     *
+     * @return The number of transitions.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Copies the dataset into a replay buffer that holds it whole.
+     *
+     * @return The replay buffer.
+     */
+    public ReplayBuffer toReplayBuffer() {
+        ReplayBuffer buffer = new ReplayBuffer(Math.max(1, this.size));
+        for (int i = 0; i < this.size; i++) {
+            buffer.add(this.states[i], this.actions[i], this.rewards[i], this.nextStates[i], this.terminals[i]);
+        }
+        return buffer;
+    }
+
+    /**
+     * Initializes a learner with the dataset, replaying every transition a number of times on average.
+     *
+     * @param learner The steering learner.
+     * @param sweeps  The number of updates per transition.
+     */
+    public void initialize(QLearning learner, int sweeps) {
+        if (this.size > 0)
+            learner.replay(this.toReplayBuffer(), this.size * sweeps);
+    }
+
+    /**
+     * Counts the transitions of every action in every state.
+     *
+     * @param states  The number of states.
+     * @param actions The number of actions.
+     * @return The counts, indexed by {@code state * actions + action}.
+     */
+    public int[] countPairs(int states, int actions) {
+        int[] counts = new int[states * actions];
+        for (int i = 0; i < this.size; i++) {
+            counts[this.states[i] * actions + this.actions[i]]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Generates demonstrations from simulated episodes.
+     *
+     * @param track    The track to drive on.
+     * @param episodes The number of episodes.
+     * @param maxTicks The maximum number of ticks of an episode.
+     * @param noise    The probability of a random action instead of the instructor's at every decision, to visit
+     *                 more states.
+     * @param seed     The seed of the random actions, so the dataset does not depend on the number of threads.
+     * @param pool     The pool that runs the episodes.
+     * @return The dataset, with the episodes in order.
+     */
+    public static DemonstrationDataset simulate(Track track, int episodes, int maxTicks, double noise, long seed,
+                                                ForkJoinPool pool) {
+        return pool.invoke(new GenerationTask(episode ->
+                simulateEpisode(track, maxTicks, noise, new Random(seed + 31L * episode)), 0, episodes));
+    }
+
+    /**
+     * Generates demonstrations from the recorded episodes of some traces.
+     *
+     * @param tracePaths The paths of the trace files.
+     * @param pool       The pool that runs the episodes.
+     * @return The dataset, with the episodes in order.
+     */
+    public static DemonstrationDataset fromTraces(List<String> tracePaths, ForkJoinPool pool) {
+        List<PolicyEvaluator.Episode> episodes = PolicyEvaluator.findEpisodes(tracePaths);
+        return pool.invoke(new GenerationTask(episode -> labelEpisode(episodes.get(episode)), 0, episodes.size()));
+    }
+
+    /**
+     * Drives an episode in the simulator with the instructor's steering.
+     *
+     * @param track    The track to drive on.
+     * @param maxTicks The maximum number of ticks of the episode.
+     * @param noise    The probability of a random action, not kept, at every decision.
+     * @param random   The random generator of the episode.
+     * @return The transitions of the episode.
+     */
+    private static DemonstrationDataset simulateEpisode(Track track, int maxTicks, double noise, Random random) {
+        DemonstrationDataset dataset = new DemonstrationDataset();
+        KinematicSimulator simulator = new KinematicSimulator(track, sensorAngles());
+        GearStage gearStage = new GearStage(1);
+        SpeedLimiterStage limiterStage = new SpeedLimiterStage(Constants.LIMITER_SPEED);
+        int actionCount = SteerControl.Actions.values().length;
+        SteerControl.Actions[] steerActions = SteerControl.Actions.values();
+
+        SensorModel previous = simulator.reset();
+        SensorModel sensors = previous;
+        int state = -1;
+        int action = SteerControl.Actions.TURN_C.ordinal();
+        boolean demonstrated = false;
+        for (int tick = 0; tick < maxTicks && sensors != null; tick++) {
+            if (Math.abs(sensors.getTrackPosition()) >= Constants.TRACK_LIMIT) {
+                if (demonstrated)
+                    dataset.add(state, action, Constants.OFF_TRACK_REWARD, state, true);
+                break;
+            }
+            if (tick % Constants.DECISION_TICKS == 0) {
+                int nextState = SteerControl.evaluateSteerOrdinal(sensors);
+                if (demonstrated)
+                    dataset.add(state, action, SteerControl.calculateReward(previous, sensors), nextState, false);
+                state = nextState;
+                demonstrated = random.nextDouble() >= noise;
+                action = demonstrated ? SteerControl.nearestAction(DrivingInstructor.getSteer(sensors))
+                        : random.nextInt(actionCount);
+            }
+
+            Action command = new Action();
+            gearStage.apply(sensors, command);
+            command.steering = SteerControl.steerAction2Double(steerActions[action]);
+            limiterStage.apply(sensors, command);
+            previous = sensors;
+            sensors = simulator.step(command);
+        }
+        return dataset;
+    }
+
+    /**
+     * Labels the decisions of a recorded episode with the instructor's action, keeping the ones that match the
+     * recording.
+     *
+     * @param episode The episode.
+     * @return The transitions of the episode.
+     */
+    private static DemonstrationDataset labelEpisode(PolicyEvaluator.Episode episode) {
+        DemonstrationDataset dataset = new DemonstrationDataset();
+        double[] frame = new double[TraceWriter.FRAME];
+        ArrayBasedSensorModel previous = new ArrayBasedSensorModel();
+        ArrayBasedSensorModel current = new ArrayBasedSensorModel();
+        int state = -1;
+        int action = -1;
+        boolean demonstrated = false;
+        try (TraceReader reader = new TraceReader(episode.tracePath)) {
+            reader.seek(episode.span);
+            for (int tick = 0; tick < episode.span.ticks && reader.next(frame); tick++) {
+                if (tick % Constants.DECISION_TICKS != 0)
+                    continue;
+                current.load(frame);
+                int nextState = SteerControl.evaluateSteerOrdinal(current);
+                if (demonstrated)
+                    dataset.add(state, action, SteerControl.calculateReward(previous, current), nextState, false);
+                state = nextState;
+                action = SteerControl.nearestAction(frame[TraceWriter.STEERING]);
+                demonstrated = action == SteerControl.nearestAction(DrivingInstructor.getSteer(current));
+                ArrayBasedSensorModel swap = previous;
+                previous = current;
+                current = swap;
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not read trace " + episode.tracePath + "...");
+            e.printStackTrace();
+        }
+        if (demonstrated && episode.termination == TraceIndex.Termination.OFF_TRACK)
+            dataset.add(state, action, Constants.OFF_TRACK_REWARD, state, true);
+        return dataset;
+    }
+
+    /**
+     * Builds the angles of the track edge sensors, as {@link torcs.Controller#initAngles} does.
+     *
+     * @return The angles, in degrees.
+     */
+    private static float[] sensorAngles() {
+        float[] angles = new float[19];
+        for (int i = 0; i < 19; ++i)
+            angles[i] = -90 + i * 10;
+        return angles;
+    }
+
+    /**
+     * Reallocates the arrays.
+     *
+     * @param capacity The new number of transitions they hold.
+     */
+    private void grow(int capacity) {
+        this.states = Arrays.copyOf(this.states, capacity);
+        this.actions = Arrays.copyOf(this.actions, capacity);
+        this.rewards = Arrays.copyOf(this.rewards, capacity);
+        this.nextStates = Arrays.copyOf(this.nextStates, capacity);
+        this.terminals = Arrays.copyOf(this.terminals, capacity);
+    }
+
+    /**
+     * The GenerationTask class generates the demonstrations of a range of episodes, splitting it in halves until it
+     * is a single episode.
+     */
+    private static class GenerationTask extends RecursiveTask<DemonstrationDataset> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final IntFunction<DemonstrationDataset> generator;
+        private final int from;
+        private final int to;
+
+        /**
+         * Constructs a task.
+         *
+         * @param generator The generator of the demonstrations of an episode.
+         * @param from      The first episode of the range.
+         * @param to        The episode after the range.
+         */
+        GenerationTask(IntFunction<DemonstrationDataset> generator, int from, int to) {
+            this.generator = generator;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Generates the range.
+         *
+         * @return The demonstrations of the range, in episode order.
+         */
+        @Override
+        protected DemonstrationDataset compute() {
+            if (this.to - this.from == 0)
+                return new DemonstrationDataset();
+            if (this.to - this.from == 1)
+                return this.generator.apply(this.from);
+            int middle = (this.from + this.to) >>> 1;
+            GenerationTask right = new GenerationTask(this.generator, middle, this.to);
+            right.fork();
+            DemonstrationDataset left = new GenerationTask(this.generator, this.from, middle).compute();
+            return left.addAll(right.join());
+        }
+    }
+
+    /**
+     * Generates demonstrations and initializes the steering Q-table with them.
+     *
+     * @param args The command-line arguments.
+     */
+    public static void main(String[] args) {
+        int episodes = 64;
+        int maxTicks = 3000;
+        double noise = 0.1;
+        int sweeps = 4;
+        long seed = DEFAULT_SEED;
+        int threads = Runtime.getRuntime().availableProcessors();
+        double width = Track.DEFAULT_WIDTH;
+        String layout = Track.DEFAULT_LAYOUT;
+        String tablePath = Constants.STEER_Q_TABLE_PATH;
+        List<String> tracePaths = new ArrayList<>();
+        for (String arg : args) {
+            StringTokenizer st = new StringTokenizer(arg, ":");
+            String entity = st.nextToken();
+            String value = st.nextToken();
+            if (entity.equals("episodes"))
+                episodes = Integer.parseInt(value);
+            if (entity.equals("maxTicks"))
+                maxTicks = Integer.parseInt(value);
+            if (entity.equals("noise"))
+                noise = Double.parseDouble(value);
+            if (entity.equals("sweeps"))
+                sweeps = Integer.parseInt(value);
+            if (entity.equals("seed"))
+                seed = Long.parseLong(value);
+            if (entity.equals("threads"))
+                threads = Integer.parseInt(value);
+            if (entity.equals("width"))
+                width = Double.parseDouble(value);
+            if (entity.equals("layout"))
+                layout = value;
+            if (entity.equals("table"))
+                tablePath = value;
+            if (entity.equals("traces"))
+                PolicyEvaluator.addTraces(value, tracePaths);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.currentTimeMillis();
+        DemonstrationDataset dataset = simulate(new Track("sim", width, layout), episodes, maxTicks, noise, seed,
+                pool);
+        int simulated = dataset.size();
+        dataset.addAll(fromTraces(tracePaths, pool));
+        pool.shutdown();
+        System.out.println("Demonstrations: " + dataset.size() + " (" + simulated + " simulated, "
+                + (dataset.size() - simulated) + " recorded) in " + (System.currentTimeMillis() - start) + " ms");
+
+        QLearning learner = new QLearning(Constants.ControlSystems.STEERING_CONTROL_SYSTEM,
+                Hyperparameters.defaults(), tablePath);
+        dataset.initialize(learner, sweeps);
+        learner.saveTable();
+        CompiledPolicy policy = CompiledPolicy.compileSteer(learner.getQValues());
+        SteerControl.States[] states = SteerControl.States.values();
+        SteerControl.Actions[] actions = SteerControl.Actions.values();
+        int[] pairs = dataset.countPairs(states.length, actions.length);
+        for (int state = 0; state < states.length; state++) {
+            int demonstrations = 0;
+            for (int action = 0; action < actions.length; action++) {
+                demonstrations += pairs[state * actions.length + action];
+            }
+            if (demonstrations > 0)
+                System.out.println(states[state] + "\t" + demonstrations + "\t" + actions[policy.getAction(state)]);
+        }
+        System.out.println("Initialized " + tablePath);
+    }
+}
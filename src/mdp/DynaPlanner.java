@@ -0,0 +1,223 @@
+package mdp;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The DynaPlanner class adds Dyna-Q planning with prioritized sweeping to a {@link QLearning} learner. Every real
+ * transition updates a {@link TransitionModel}, and the state-action pairs whose simulated backup would change their
+ * Q-value by more than a threshold are queued by that change. When the learner is idle, {@link #plan} applies the
+ * queued backups, largest change first, and queues the predecessors of every state whose value changed, so what the
+ * last transitions taught spreads backwards through the table between ticks instead of over later episodes.
+ * <p>
+ * Planning is paid for by real transitions: each one earns a number of backups, with a cap, so the planner never runs
+ * far ahead of the experience the model is built from. The queue is an indexed binary heap over primitive arrays, so
+ * neither observing nor planning allocates memory. Must only be used from the thread that owns the learner.
+ * <p>
+ * How many backups are applied depends on the time the learner is idle, so two runs from the same seed diverge once
+ * planning is enabled. The model and the queue are not part of a {@link TrainingSnapshot}: a resumed run starts them
+ * empty and plans again from its next transitions.
+ */
+public class DynaPlanner {
+
+    private static final int MAX_CREDIT_UPDATES = 100;
+
+    private final QLearning learner;
+    private final TransitionModel model;
+    private final int states;
+    private final int actions;
+    private final int stepsPerUpdate;
+    private final double threshold;
+    private final int[] heap;
+    private final int[] positions;
+    private final double[] priorities;
+    private int size;
+    private int credits;
+    private long backups;
+
+    /**
+     * Constructs a planner with an empty model.
+     *
+     * @param learner        The learner whose table is planned on.
+     * @param stepsPerUpdate The number of simulated backups earned by every real transition.
+     * @param threshold      The smallest change of a Q-value worth a backup.
+     */
+    public DynaPlanner(QLearning learner, int stepsPerUpdate, double threshold) {
+        this.learner = learner;
+        this.states = learner.getPossibleStates().length;
+        this.actions = learner.getPossibleActions().length;
+        this.model = new TransitionModel(this.states, this.actions);
+        this.stepsPerUpdate = stepsPerUpdate;
+        this.threshold = threshold;
+        this.heap = new int[this.states * this.actions];
+        this.positions = new int[this.states * this.actions];
+        this.priorities = new double[this.states * this.actions];
+        Arrays.fill(this.positions, -1);
+    }
+
+    /**
+     * Records a real transition, already applied to the learner, and queues its pair if a backup would change it.
+     *
+     * @param state     The state ordinal.
+     * @param action    The action ordinal.
+     * @param reward    The reward received.
+     * @param nextState The next state ordinal, ignored if the transition ended the episode.
+     * @param terminal  True if the transition ended the episode.
+     */
+    public void observe(int state, int action, double reward, int nextState, boolean terminal) {
+        this.model.observe(state, action, reward, nextState, terminal);
+        this.credits = Math.min(this.credits + this.stepsPerUpdate, this.stepsPerUpdate * MAX_CREDIT_UPDATES);
+        this.prioritize(state, action);
+    }
+
+    /**
+     * Checks whether there are backups worth planning and earned.
+     *
+     * @return True if {@link #plan} would apply a backup.
+     */
+    public boolean hasWork() {
+        return this.size > 0 && this.credits > 0;
+    }
+
+    /**
+     * Applies queued backups, largest change first, until the queue or the earned backups run out, the time budget
+     * is spent, or the learner is needed for real transitions.
+     *
+     * @param budgetNanos The longest time to plan.
+     * @param interrupted Returns true when planning must yield, checked before every backup.
+     * @return The number of backups applied.
+     */
+    public int plan(long budgetNanos, BooleanSupplier interrupted) {
+        long deadline = System.nanoTime() + budgetNanos;
+        int applied = 0;
+        while (this.hasWork() && !interrupted.getAsBoolean() && System.nanoTime() < deadline) {
+            int pair = this.poll();
+            int state = pair / this.actions;
+            int action = pair % this.actions;
+            this.learner.setQValue(state, action, this.learner.plannedQValue(state, action, this.model));
+            this.credits--;
+            applied++;
+
+            // The pairs leading to the state see its new value
+            for (int previous = 0; previous < this.states; previous++) {
+                for (int previousAction = 0; previousAction < this.actions; previousAction++) {
+                    if (this.model.getNextCount(previous, previousAction, state) > 0) {
+                        this.prioritize(previous, previousAction);
+                    }
+                }
+            }
+        }
+        this.backups += applied;
+        return applied;
+    }
+
+    /**
+     * Retrieves the model learned from the real transitions.
+     *
+     * @return The model.
+     */
+    public TransitionModel getModel() {
+        return this.model;
+    }
+
+    /**
+     * Retrieves the number of pairs waiting for a backup.
+     *
+     * @return The size of the queue.
+     */
+    public int getQueued() {
+        return this.size;
+    }
+
+    /**
+     * Retrieves the number of simulated backups applied so far.
+     *
+     * @return The number of backups.
+     */
+    public long getBackups() {
+        return this.backups;
+    }
+
+    /**
+     * Queues a pair by the change a backup would make, or raises its priority if it is already queued.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     */
+    private void prioritize(int state, int action) {
+        double priority = Math.abs(this.learner.plannedQValue(state, action, this.model)
+                - this.learner.getQValue(state, action));
+        if (priority <= this.threshold)
+            return;
+        int pair = state * this.actions + action;
+        int position = this.positions[pair];
+        if (position < 0) {
+            position = this.size++;
+            this.heap[position] = pair;
+            this.positions[pair] = position;
+        } else if (priority <= this.priorities[pair]) {
+            return;
+        }
+        this.priorities[pair] = priority;
+        this.siftUp(position);
+    }
+
+    /**
+     * Removes the pair with the highest priority.
+     *
+     * @return The pair, as {@code state * actions + action}.
+     */
+    private int poll() {
+        int pair = this.heap[0];
+        this.positions[pair] = -1;
+        int last = this.heap[--this.size];
+        if (this.size > 0) {
+            this.heap[0] = last;
+            this.positions[last] = 0;
+            this.siftDown(0);
+        }
+        return pair;
+    }
+
+    /**
+     * Moves the pair at a heap position up to where its priority belongs.
+     *
+     * @param position The heap position.
+     */
+    private void siftUp(int position) {
+        int pair = this.heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (this.priorities[this.heap[parent]] >= this.priorities[pair])
+                break;
+            this.heap[position] = this.heap[parent];
+            this.positions[this.heap[position]] = position;
+            position = parent;
+        }
+        this.heap[position] = pair;
+        this.positions[pair] = position;
+    }
+
+    /**
+     * Moves the pair at a heap position down to where its priority belongs.
+     *
+     * @param position The heap position.
+     */
+    private void siftDown(int position) {
+        int pair = this.heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= this.size)
+                break;
+            if (child + 1 < this.size && this.priorities[this.heap[child + 1]] > this.priorities[this.heap[child]])
+                child++;
+            if (this.priorities[this.heap[child]] <= this.priorities[pair])
+                break;
+            this.heap[position] = this.heap[child];
+            this.positions[this.heap[position]] = position;
+            position = child;
+        }
+        this.heap[position] = pair;
+        this.positions[pair] = position;
+    }
+}
@@ -0,0 +1,102 @@
+package mdp;
+
+/**
+ * The EligibilityTraces class keeps the eligibility of the recently visited state-action pairs for Q(lambda).
+ * Only the pairs whose trace is above a threshold are stored, as packed {@code state * actions + action} keys in
+ * small primitive arrays, so every operation costs O(active traces) instead of O(table).
+ */
+public class EligibilityTraces {
+
+    private final int[] keys;
+    private final double[] values;
+    private int size;
+
+    /**
+     * Constructs an empty set of traces.
+     *
+     * @param capacity The maximum number of active traces. When full, the oldest trace is dropped.
+     */
+    public EligibilityTraces(int capacity) {
+        this.keys = new int[capacity];
+        this.values = new double[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Sets the trace of a pair to 1 (replacing traces), activating it if needed.
+     *
+     * @param key The packed state-action key.
+     */
+    public void replace(int key) {
+        for (int i = 0; i < this.size; i++) {
+            if (this.keys[i] == key) {
+                this.values[i] = 1.0;
+                return;
+            }
+        }
+        if (this.size == this.keys.length) {
+            // Traces are kept in activation order, so the first one is the oldest
+            System.arraycopy(this.keys, 1, this.keys, 0, this.size - 1);
+            System.arraycopy(this.values, 1, this.values, 0, this.size - 1);
+            this.size--;
+        }
+        this.keys[this.size] = key;
+        this.values[this.size] = 1.0;
+        this.size++;
+    }
+
+    /**
+     * Multiplies every trace by a factor and drops the ones that fall below a threshold.
+     *
+     * @param factor    The decay factor (gamma * lambda).
+     * @param threshold The minimum trace kept active.
+     */
+    public void decay(double factor, double threshold) {
+        int kept = 0;
+        for (int i = 0; i < this.size; i++) {
+            double value = this.values[i] * factor;
+            if (value >= threshold) {
+                this.keys[kept] = this.keys[i];
+                this.values[kept] = value;
+                kept++;
+            }
+        }
+        this.size = kept;
+    }
+
+    /**
+     * Retrieves the packed state-action key of an active trace.
+     *
+     * @param index The position of the trace.
+     * @return The packed key.
+     */
+    public int getKey(int index) {
+        return this.keys[index];
+    }
+
+    /**
+     * Retrieves the value of an active trace.
+     *
+     * @param index The position of the trace.
+     * @return The trace value.
+     */
+    public double getValue(int index) {
+        return this.values[index];
+    }
+
+    /**
+     * Retrieves the number of active traces.
+     *
+     * @return The number of active traces.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Removes all the traces.
+     */
+    public void clear() {
+        this.size = 0;
+    }
+}
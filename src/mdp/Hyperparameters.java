@@ -0,0 +1,112 @@
+package mdp;
+
+import torcs.Constants;
+
+import static torcs.Constants.SEPARATOR;
+
+/**
+ * The Hyperparameters class groups the values that drive a Q-learning training run: exploration and learning rate
+ * schedules, discount factor and number of epochs. {@link #defaults()} returns the values defined in {@link Constants}.
+ */
+public class Hyperparameters {
+
+    public final double initialEpsilon;
+    public final double initialLearningRate;
+    public final double discountFactor;
+    public final int maxEpochs;
+    public final int rangeEpochsInitial;
+    public final int rangeEpochsEnd;
+
+    /**
+     * Constructs a set of hyperparameters.
+     *
+     * @param initialEpsilon      The exploration rate of the first epochs.
+     * @param initialLearningRate The learning rate.
+     * @param discountFactor      The discount factor.
+     * @param maxEpochs           The number of training epochs.
+     * @param rangeEpochsInitial  The epoch where epsilon starts to decay.
+     * @param rangeEpochsEnd      The epoch where epsilon reaches zero.
+     */
+    public Hyperparameters(double initialEpsilon, double initialLearningRate, double discountFactor, int maxEpochs,
+                           int rangeEpochsInitial, int rangeEpochsEnd) {
+        this.initialEpsilon = initialEpsilon;
+        this.initialLearningRate = initialLearningRate;
+        this.discountFactor = discountFactor;
+        this.maxEpochs = maxEpochs;
+        this.rangeEpochsInitial = rangeEpochsInitial;
+        this.rangeEpochsEnd = rangeEpochsEnd;
+    }
+
+    /**
+     * Returns the hyperparameters defined in {@link Constants}.
+     *
+     * @return The default hyperparameters.
+     */
+    public static Hyperparameters defaults() {
+        return new Hyperparameters(Constants.INITIAL_EPSILON, Constants.INITIAL_LEARNING_RATE,
+                Constants.DISCOUNT_FACTOR, Constants.MAX_EPOCHS, Constants.RANGE_EPOCHS_INITIAL,
+                Constants.RANGE_EPOCHS_END);
+    }
+
+    /**
+     * Returns the hyperparameters of a learner that only drives its table, neither exploring nor learning, as the
+     * statistics of {@link QLearning#QLearning(torcs.Constants.ControlSystems)} report them.
+     *
+     * @return The hyperparameters, with no exploration and no learning rate.
+     */
+    public static Hyperparameters greedy() {
+        return new Hyperparameters(0.0, 0.0, Constants.DISCOUNT_FACTOR, Constants.MAX_EPOCHS,
+                Constants.RANGE_EPOCHS_INITIAL, Constants.RANGE_EPOCHS_END);
+    }
+
+    /**
+     * Returns the amount epsilon decreases every epoch of the decay range.
+     *
+     * @return The epsilon decay.
+     */
+    public double epsilonDecay() {
+        return this.initialEpsilon / (double) (this.rangeEpochsEnd - this.rangeEpochsInitial);
+    }
+
+    /**
+     * Computes the Q-value written by {@link QLearning#update(Object, Object, Object, double)}.
+     *
+     * @param qValue       The current Q-value of the state-action pair.
+     * @param maxQValue    The maximum Q-value used as bootstrap.
+     * @param reward       The reward received.
+     * @param learningRate The learning rate.
+     * @return The new Q-value.
+     */
+    public double updatedQValue(double qValue, double maxQValue, double reward, double learningRate) {
+        double newQValue = qValue + learningRate * (reward + this.discountFactor * maxQValue);
+        return Constants.round(newQValue, 8) / this.maxEpochs;
+    }
+
+    /**
+     * Computes the Q-value written by {@link QLearning#lastUpdate(Object, double)}.
+     *
+     * @param qValue       The current Q-value of the state-action pair.
+     * @param maxQValue    The maximum Q-value used as bootstrap.
+     * @param reward       The reward received.
+     * @param learningRate The learning rate.
+     * @return The new Q-value.
+     */
+    public double lastUpdatedQValue(double qValue, double maxQValue, double reward, double learningRate) {
+        double newQValue = (1 - learningRate) * qValue + learningRate * (reward + this.discountFactor * maxQValue);
+        return Constants.round(newQValue, 8) / this.maxEpochs;
+    }
+
+    /**
+     * Returns the string representation of the hyperparameters, as comma-separated values.
+     *
+     * @return The string representation of the hyperparameters.
+     */
+    public String toString() {
+        return this.initialEpsilon + SEPARATOR
+                + this.initialLearningRate + SEPARATOR
+                + this.discountFactor + SEPARATOR
+                + this.maxEpochs + SEPARATOR
+                + this.rangeEpochsInitial + SEPARATOR
+                + this.rangeEpochsEnd;
+    }
+}
@@ -0,0 +1,193 @@
+package mdp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The OffHeapQTable class is a Q-table whose values live outside the Java heap, so tables of millions of entries
+ * cost neither heap space nor garbage collection time. Values are native-order doubles laid out row-major, in chunks
+ * of at most {@link #CHUNK_VALUES} values because a buffer is indexed by an int.
+ * <p>
+ * The table is either anonymous, in direct buffers, or backed by a memory-mapped file, in which case the operating
+ * system pages the table in on demand, so it may be larger than the memory, and the values survive the program. A
+ * file-backed table starts with a header of {@link #HEADER_SIZE} bytes (number of states and number of actions); a
+ * file of another shape is discarded and the table starts from zero.
+ * <p>
+ * Accesses are plain reads and writes, so the table belongs to a single learner thread; {@link AtomicQTable} is the
+ * table shared by several threads.
+ */
+public class OffHeapQTable implements QTable, AutoCloseable {
+
+    static final int STATES_OFFSET = 0;
+    static final int ACTIONS_OFFSET = 4;
+    static final int HEADER_SIZE = 16;
+    private static final int CHUNK_SHIFT = 27;
+    static final long CHUNK_VALUES = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_MASK = CHUNK_VALUES - 1;
+
+    private final int states;
+    private final int actions;
+    private final ByteBuffer[] chunks;
+    private final FileChannel channel;
+
+    /**
+     * Constructs a zero-initialized table in direct buffers.
+     *
+     * @param states  The number of states.
+     * @param actions The number of actions.
+     */
+    public OffHeapQTable(int states, int actions) {
+        this.states = states;
+        this.actions = actions;
+        this.channel = null;
+        long values = (long) states * actions;
+        this.chunks = new ByteBuffer[chunkCount(values)];
+        for (int i = 0; i < this.chunks.length; i++) {
+            long chunkValues = Math.min(CHUNK_VALUES, values - i * CHUNK_VALUES);
+            this.chunks[i] = ByteBuffer.allocateDirect((int) chunkValues * Double.BYTES).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Opens a table backed by a file, keeping its values if it already holds a table of the same shape.
+     *
+     * @param states   The number of states.
+     * @param actions  The number of actions.
+     * @param filePath The path of the backing file.
+     * @throws IOException If the file cannot be mapped.
+     */
+    public OffHeapQTable(int states, int actions, String filePath) throws IOException {
+        this.states = states;
+        this.actions = actions;
+        long values = (long) states * actions;
+        long size = HEADER_SIZE + values * Double.BYTES;
+        this.channel = FileChannel.open(Path.of(filePath), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        MappedByteBuffer header = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.nativeOrder());
+        boolean sameShape = this.channel.size() == size
+                && header.getInt(STATES_OFFSET) == states
+                && header.getInt(ACTIONS_OFFSET) == actions;
+        if (!sameShape) {
+            // Drop the old values, the file grows back sparse and reads as zeros
+            this.channel.truncate(HEADER_SIZE);
+            header.putInt(STATES_OFFSET, states);
+            header.putInt(ACTIONS_OFFSET, actions);
+        }
+
+        this.chunks = new ByteBuffer[chunkCount(values)];
+        for (int i = 0; i < this.chunks.length; i++) {
+            long chunkValues = Math.min(CHUNK_VALUES, values - i * CHUNK_VALUES);
+            long position = HEADER_SIZE + i * CHUNK_VALUES * Double.BYTES;
+            this.chunks[i] = this.channel.map(FileChannel.MapMode.READ_WRITE, position, chunkValues * Double.BYTES)
+                    .order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Retrieves the number of states of the table.
+     *
+     * @return The number of states.
+     */
+    @Override
+    public int stateCount() {
+        return this.states;
+    }
+
+    /**
+     * Retrieves the number of actions of the table.
+     *
+     * @return The number of actions.
+     */
+    @Override
+    public int actionCount() {
+        return this.actions;
+    }
+
+    /**
+     * Retrieves the Q-value of a state-action pair.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @return The Q-value.
+     */
+    @Override
+    public double get(int state, int action) {
+        long index = (long) state * this.actions + action;
+        return this.chunks[(int) (index >>> CHUNK_SHIFT)].getDouble((int) (index & CHUNK_MASK) << 3);
+    }
+
+    /**
+     * Sets the Q-value of a state-action pair.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @param value  The new Q-value.
+     */
+    @Override
+    public void set(int state, int action, double value) {
+        long index = (long) state * this.actions + action;
+        this.chunks[(int) (index >>> CHUNK_SHIFT)].putDouble((int) (index & CHUNK_MASK) << 3, value);
+    }
+
+    /**
+     * Copies the Q-values of a state into an array.
+     *
+     * @param state The state ordinal.
+     * @param row   The array that receives one Q-value per action.
+     */
+    public void getRow(int state, double[] row) {
+        for (int action = 0; action < this.actions; action++) {
+            row[action] = this.get(state, action);
+        }
+    }
+
+    /**
+     * Checks if the table is backed by a file.
+     *
+     * @return True if the values survive the program.
+     */
+    public boolean isFileBacked() {
+        return this.channel != null;
+    }
+
+    /**
+     * Writes the modified pages of a file-backed table to the file.
+     */
+    public void force() {
+        if (this.channel == null)
+            return;
+        for (ByteBuffer chunk : this.chunks) {
+            ((MappedByteBuffer) chunk).force();
+        }
+    }
+
+    /**
+     * Writes a file-backed table to its file and closes it. The buffers are released once unreachable.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.channel == null)
+            return;
+        this.force();
+        this.channel.close();
+    }
+
+    /**
+     * Computes the number of chunks that hold a number of values.
+     *
+     * @param values The number of values.
+     * @return The number of chunks.
+     */
+    private static int chunkCount(long values) {
+        return (int) ((values + CHUNK_VALUES - 1) >>> CHUNK_SHIFT);
+    }
+}
@@ -0,0 +1,552 @@
+package mdp;
+
+import torcs.ArrayBasedSensorModel;
+import torcs.Constants;
+import torcs.TraceIndex;
+import torcs.TraceReader;
+import torcs.TraceWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The PolicyEvaluator class scores a frozen steering policy offline, against episodes recorded by {@link TraceWriter},
+ * instead of watching it drive. Every {@link Constants#DECISION_TICKS} ticks of an episode, the default action repeat
+ * of {@link torcs.DecisionScheduler} without the decisions it adds on critical events, it finds the state of the car,
+ * the action the policy would take and the recorded steering, mapped to the nearest action. It reports per episode and per {@link SteerControl.States} how often the policy agrees with the recording,
+ * the distribution of the recorded actions, the discounted return observed from every decision, computed with
+ * {@link SteerControl#calculateReward}, and the return the Q-table expects from that state.
+ * <p>
+ * Episodes are located through the {@link TraceIndex} of every trace and scored in parallel on a fork/join pool: the
+ * list of episodes is split in halves down to a few episodes, each leaf seeks its own reader to its episodes and
+ * decodes them into reused sensor models, and the partial results are merged on the way up.
+ * <p>
+ * Usage: {@code java mdp.PolicyEvaluator traces:<file or directory> [policy:<.csv or .policy>]... [threads:N]
+ * [episodes:true]}. Several policies are scored against the same episodes, so two versions of a table can be compared.
+ */
+public class PolicyEvaluator {
+
+    private static final int EPISODES_PER_TASK = 4;
+
+    private final String name;
+    private final CompiledPolicy policy;
+    private final double[] qValues;
+    private final double discountFactor;
+    private final int actions;
+
+    /**
+     * Constructs an evaluator of a compiled policy.
+     *
+     * @param name           The name of the policy in the reports.
+     * @param policy         The policy.
+     * @param qValues        The Q-values the policy was compiled from, or null if they are unknown.
+     * @param discountFactor The discount factor of the returns.
+     */
+    public PolicyEvaluator(String name, CompiledPolicy policy, double[] qValues, double discountFactor) {
+        this.name = name;
+        this.policy = policy;
+        this.qValues = qValues;
+        this.discountFactor = discountFactor;
+        this.actions = SteerControl.Actions.values().length;
+    }
+
+    /**
+     * Loads the policy to evaluate from a steering Q-table, or from a compiled policy, which holds no Q-values.
+     *
+     * @param filePath The path of the .csv Q-table or of the .policy file.
+     * @return The evaluator, or null if the file does not exist or is not a policy.
+     */
+    public static PolicyEvaluator load(String filePath) {
+        if (!new File(filePath).exists()) {
+            System.out.println("ERROR!!! -> " + filePath + " does not exist...");
+            return null;
+        }
+        if (filePath.endsWith(".policy")) {
+            CompiledPolicy policy = CompiledPolicy.load(filePath);
+            return policy == null ? null : new PolicyEvaluator(filePath, policy, null, Constants.DISCOUNT_FACTOR);
+        }
+        Hyperparameters hyperparameters = Hyperparameters.defaults();
+        QLearning learner = new QLearning(Constants.ControlSystems.STEERING_CONTROL_SYSTEM, hyperparameters, filePath);
+        double[] qValues = learner.getQValues();
+        return new PolicyEvaluator(filePath, CompiledPolicy.compileSteer(qValues), qValues,
+                hyperparameters.discountFactor);
+    }
+
+    /**
+     * Finds the complete episodes of some traces, in order.
+     *
+     * @param tracePaths The paths of the trace files.
+     * @return The episodes.
+     */
+    public static List<Episode> findEpisodes(List<String> tracePaths) {
+        List<Episode> episodes = new ArrayList<>();
+        for (String tracePath : tracePaths) {
+            try (TraceIndex index = new TraceIndex(tracePath)) {
+                int count = index.getEpisodes();
+                for (int episode = 0; episode < count; episode++) {
+                    TraceIndex.Span span = index.findEpisode(episode);
+                    if (span != null)
+                        episodes.add(new Episode(tracePath, episode, index.getTermination(episode), span));
+                }
+            } catch (IOException e) {
+                System.out.println("ERROR!!! -> Could not read the index of " + tracePath + "...");
+                e.printStackTrace();
+            }
+        }
+        return episodes;
+    }
+
+    /**
+     * Scores the policy on some episodes.
+     *
+     * @param episodes The episodes.
+     * @param pool     The pool that runs the evaluation.
+     * @return The merged result, with the episodes in the same order.
+     */
+    public Result evaluate(List<Episode> episodes, ForkJoinPool pool) {
+        return pool.invoke(new EvaluationTask(episodes, 0, episodes.size()));
+    }
+
+    /**
+     * Retrieves the name of the policy.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Retrieves the policy being evaluated.
+     *
+     * @return The policy.
+     */
+    public CompiledPolicy getPolicy() {
+        return this.policy;
+    }
+
+    /**
+     * Scores the policy on an episode, adding its decisions to a result.
+     *
+     * @param reader  The reader of the trace of the episode.
+     * @param episode The episode.
+     * @param frame   The array that receives the decoded ticks.
+     * @param models  Two sensor models to decode the previous and the current decisions into.
+     * @param result  The result.
+     * @throws IOException If the trace cannot be read.
+     */
+    private void score(TraceReader reader, Episode episode, double[] frame, ArrayBasedSensorModel[] models,
+                       Result result) throws IOException {
+        reader.seek(episode.span);
+        int capacity = episode.span.ticks / Constants.DECISION_TICKS + 1;
+        int[] states = new int[capacity];
+        double[] rewards = new double[capacity];
+        int decisions = 0;
+        int agreements = 0;
+        ArrayBasedSensorModel previous = models[0];
+        ArrayBasedSensorModel current = models[1];
+
+        for (int tick = 0; tick < episode.span.ticks && reader.next(frame); tick++) {
+            if (tick % Constants.DECISION_TICKS != 0)
+                continue;
+            current.load(frame);
+            int state = SteerControl.evaluateSteerOrdinal(current);
+            int recorded = SteerControl.nearestAction(frame[TraceWriter.STEERING]);
+            if (decisions > 0)
+                rewards[decisions - 1] = SteerControl.calculateReward(previous, current);
+            states[decisions] = state;
+            result.visits[state]++;
+            result.recordedActions[state][recorded]++;
+            if (this.policy.getAction(state) == recorded) {
+                result.agreements[state]++;
+                agreements++;
+            }
+            decisions++;
+            ArrayBasedSensorModel swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        // The last decision sees no reward, the episode ends before the next one
+        double expected = 0;
+        double discounted = 0;
+        for (int decision = decisions - 1; decision >= 0; decision--) {
+            discounted = rewards[decision] + this.discountFactor * discounted;
+            int state = states[decision];
+            result.returns[state] += discounted;
+            if (this.qValues != null) {
+                double value = this.qValues[state * this.actions + this.policy.getAction(state)];
+                result.expectedReturns[state] += value;
+                expected += value;
+            }
+        }
+        result.scores.add(new Score(episode, decisions, agreements, discounted,
+                decisions == 0 || this.qValues == null ? Double.NaN : expected / decisions));
+    }
+
+    /**
+     * The EvaluationTask class scores a range of episodes, splitting it in halves until it is small enough.
+     */
+    private class EvaluationTask extends RecursiveTask<Result> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Episode> episodes;
+        private final int from;
+        private final int to;
+
+        /**
+         * Constructs a task.
+         *
+         * @param episodes The episodes.
+         * @param from     The first episode of the range.
+         * @param to       The episode after the range.
+         */
+        EvaluationTask(List<Episode> episodes, int from, int to) {
+            this.episodes = episodes;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Scores the range.
+         *
+         * @return The result of the range.
+         */
+        @Override
+        protected Result compute() {
+            if (this.to - this.from > EPISODES_PER_TASK) {
+                int middle = (this.from + this.to) >>> 1;
+                EvaluationTask right = new EvaluationTask(this.episodes, middle, this.to);
+                right.fork();
+                Result left = new EvaluationTask(this.episodes, this.from, middle).compute();
+                return left.merge(right.join());
+            }
+
+            Result result = new Result(PolicyEvaluator.this.policy.getStates(), PolicyEvaluator.this.actions);
+            double[] frame = new double[TraceWriter.FRAME];
+            ArrayBasedSensorModel[] models = {new ArrayBasedSensorModel(), new ArrayBasedSensorModel()};
+            TraceReader reader = null;
+            String readerPath = null;
+            try {
+                for (int i = this.from; i < this.to; i++) {
+                    Episode episode = this.episodes.get(i);
+                    if (!episode.tracePath.equals(readerPath)) {
+                        if (reader != null)
+                            reader.close();
+                        reader = new TraceReader(episode.tracePath);
+                        readerPath = episode.tracePath;
+                    }
+                    score(reader, episode, frame, models, result);
+                }
+                if (reader != null)
+                    reader.close();
+            } catch (IOException e) {
+                System.out.println("ERROR!!! -> Could not read trace " + readerPath + "...");
+                e.printStackTrace();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The Episode class locates a recorded episode.
+     */
+    public static class Episode {
+
+        public final String tracePath;
+        public final int episode;
+        public final TraceIndex.Termination termination;
+        public final TraceIndex.Span span;
+
+        /**
+         * Constructs an episode.
+         *
+         * @param tracePath   The path of the trace file.
+         * @param episode     The episode number in the trace.
+         * @param termination Why the episode ended.
+         * @param span        The ticks of the episode.
+         */
+        public Episode(String tracePath, int episode, TraceIndex.Termination termination, TraceIndex.Span span) {
+            this.tracePath = tracePath;
+            this.episode = episode;
+            this.termination = termination;
+            this.span = span;
+        }
+    }
+
+    /**
+     * The Score class holds the evaluation of an episode.
+     */
+    public static class Score {
+
+        public final Episode episode;
+        public final int decisions;
+        public final int agreements;
+        public final double discountedReturn;
+        public final double expectedReturn;
+
+        /**
+         * Constructs a score.
+         *
+         * @param episode          The episode.
+         * @param decisions        The number of decisions.
+         * @param agreements       The number of decisions where the policy takes the recorded action.
+         * @param discountedReturn The discounted return observed from the first decision.
+         * @param expectedReturn   The mean Q-value of the policy over the decisions, or NaN without Q-values.
+         */
+        public Score(Episode episode, int decisions, int agreements, double discountedReturn, double expectedReturn) {
+            this.episode = episode;
+            this.decisions = decisions;
+            this.agreements = agreements;
+            this.discountedReturn = discountedReturn;
+            this.expectedReturn = expectedReturn;
+        }
+    }
+
+    /**
+     * The Result class accumulates the scores of episodes and the statistics of every state.
+     */
+    public static class Result {
+
+        public final List<Score> scores;
+        public final long[] visits;
+        public final long[] agreements;
+        public final long[][] recordedActions;
+        public final double[] returns;
+        public final double[] expectedReturns;
+
+        /**
+         * Constructs an empty result.
+         *
+         * @param states  The number of states.
+         * @param actions The number of actions.
+         */
+        public Result(int states, int actions) {
+            this.scores = new ArrayList<>();
+            this.visits = new long[states];
+            this.agreements = new long[states];
+            this.recordedActions = new long[states][actions];
+            this.returns = new double[states];
+            this.expectedReturns = new double[states];
+        }
+
+        /**
+         * Adds the scores and statistics of another result, whose episodes come after the ones of this result.
+         *
+         * @param other The other result.
+         * @return This result.
+         */
+        public Result merge(Result other) {
+            this.scores.addAll(other.scores);
+            for (int state = 0; state < this.visits.length; state++) {
+                this.visits[state] += other.visits[state];
+                this.agreements[state] += other.agreements[state];
+                this.returns[state] += other.returns[state];
+                this.expectedReturns[state] += other.expectedReturns[state];
+                for (int action = 0; action < this.recordedActions[state].length; action++) {
+                    this.recordedActions[state][action] += other.recordedActions[state][action];
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Retrieves the number of decisions.
+         *
+         * @return The number of decisions over every episode.
+         */
+        public long getDecisions() {
+            return Arrays.stream(this.visits).sum();
+        }
+
+        /**
+         * Retrieves the fraction of decisions where the policy takes the recorded action.
+         *
+         * @return The agreement, or NaN without decisions.
+         */
+        public double getAgreement() {
+            long decisions = this.getDecisions();
+            return decisions == 0 ? Double.NaN : (double) Arrays.stream(this.agreements).sum() / decisions;
+        }
+    }
+
+    /**
+     * Rounds a value of the report, which is NaN when there is nothing to average or no Q-values to read.
+     *
+     * @param value  The value.
+     * @param places The number of decimal places.
+     * @return The rounded value, or NaN.
+     */
+    private static double round(double value, int places) {
+        return Double.isNaN(value) ? Double.NaN : Constants.round(value, places);
+    }
+
+    /**
+     * Prints the evaluation of a policy: a summary, the agreement per reason of termination and a table per state.
+     *
+     * @param evaluator The evaluator of the policy.
+     * @param result    The result.
+     * @param millis    The duration of the evaluation in milliseconds.
+     * @param episodes  True to print a line per episode.
+     */
+    private static void report(PolicyEvaluator evaluator, Result result, long millis, boolean episodes) {
+        System.out.println("Policy: " + evaluator.name);
+        System.out.println("Episodes: " + result.scores.size() + "\t"
+                + "Decisions: " + result.getDecisions() + "\t"
+                + "Agreement: " + round(100 * result.getAgreement(), 2) + "%\t"
+                + "Time: " + millis + " ms");
+
+        if (episodes) {
+            System.out.println("Trace\tEpisode\tTermination\tDecisions\tAgreement\tReturn\tExpected");
+            for (Score score : result.scores) {
+                System.out.println(score.episode.tracePath + "\t"
+                        + score.episode.episode + "\t"
+                        + score.episode.termination + "\t"
+                        + score.decisions + "\t"
+                        + Constants.round(100.0 * score.agreements / Math.max(1, score.decisions), 2) + "%\t"
+                        + round(score.discountedReturn, 4) + "\t"
+                        + round(score.expectedReturn, 4));
+            }
+        }
+
+        TraceIndex.Termination[] terminations = TraceIndex.Termination.values();
+        int[] count = new int[terminations.length];
+        long[] decisions = new long[terminations.length];
+        long[] agreements = new long[terminations.length];
+        for (Score score : result.scores) {
+            int termination = score.episode.termination.ordinal();
+            count[termination]++;
+            decisions[termination] += score.decisions;
+            agreements[termination] += score.agreements;
+        }
+        System.out.println("Termination\tEpisodes\tDecisions\tAgreement");
+        for (TraceIndex.Termination termination : terminations) {
+            int t = termination.ordinal();
+            if (count[t] > 0)
+                System.out.println(termination + "\t" + count[t] + "\t" + decisions[t] + "\t"
+                        + Constants.round(100.0 * agreements[t] / Math.max(1, decisions[t]), 2) + "%");
+        }
+
+        SteerControl.States[] states = SteerControl.States.values();
+        SteerControl.Actions[] actions = SteerControl.Actions.values();
+        StringBuilder header = new StringBuilder("State\tVisits\tPolicy\tAgreement\tReturn\tExpected");
+        for (SteerControl.Actions action : actions) {
+            header.append('\t').append(action);
+        }
+        System.out.println(header);
+        for (int state = 0; state < result.visits.length; state++) {
+            long visits = result.visits[state];
+            if (visits == 0)
+                continue;
+            StringBuilder line = new StringBuilder();
+            line.append(states[state]).append('\t')
+                    .append(visits).append('\t')
+                    .append(actions[evaluator.policy.getAction(state)]).append('\t')
+                    .append(Constants.round(100.0 * result.agreements[state] / visits, 2)).append("%\t")
+                    .append(Constants.round(result.returns[state] / visits, 4)).append('\t')
+                    .append(evaluator.qValues == null ? Double.NaN
+                            : round(result.expectedReturns[state] / visits, 4));
+            for (int action = 0; action < actions.length; action++) {
+                line.append('\t').append(Constants.round(100.0 * result.recordedActions[state][action] / visits, 1))
+                        .append('%');
+            }
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Prints how the best actions of two policies differ, weighting the states by how often they were visited.
+     *
+     * @param first  The evaluator of the first policy.
+     * @param second The evaluator of the second policy.
+     * @param result A result of the episodes, for the visits of every state.
+     */
+    private static void compare(PolicyEvaluator first, PolicyEvaluator second, Result result) {
+        int differentStates = 0;
+        long differentVisits = 0;
+        for (int state = 0; state < result.visits.length; state++) {
+            if (first.policy.getAction(state) != second.policy.getAction(state)) {
+                differentStates++;
+                differentVisits += result.visits[state];
+            }
+        }
+        System.out.println(first.name + " vs " + second.name + ": "
+                + differentStates + " states with another action, "
+                + Constants.round(100.0 * differentVisits / Math.max(1, result.getDecisions()), 2)
+                + "% of the decisions");
+    }
+
+    /**
+     * Lists the trace files of a path: the file itself, or the .trace files of a directory.
+     *
+     * @param path       The path.
+     * @param tracePaths The list that receives the trace files.
+     */
+    static void addTraces(String path, List<String> tracePaths) {
+        File file = new File(path);
+        if (!file.isDirectory()) {
+            tracePaths.add(path);
+            return;
+        }
+        File[] files = file.listFiles((dir, fileName) -> fileName.endsWith(".trace"));
+        if (files == null)
+            return;
+        Arrays.sort(files);
+        for (File trace : files) {
+            tracePaths.add(trace.getPath());
+        }
+    }
+
+    /**
+     * The main entry point of the evaluator.
+     *
+     * @param args The command-line arguments.
+     */
+    public static void main(String[] args) {
+        List<String> policyPaths = new ArrayList<>();
+        List<String> tracePaths = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean episodes = false;
+        for (String arg : args) {
+            StringTokenizer st = new StringTokenizer(arg, ":");
+            String entity = st.nextToken();
+            String value = st.nextToken();
+            if (entity.equals("policy"))
+                policyPaths.add(value);
+            if (entity.equals("traces"))
+                addTraces(value, tracePaths);
+            if (entity.equals("threads"))
+                threads = Integer.parseInt(value);
+            if (entity.equals("episodes"))
+                episodes = Boolean.parseBoolean(value);
+        }
+        if (policyPaths.isEmpty())
+            policyPaths.add(Constants.STEER_Q_TABLE_PATH);
+
+        List<Episode> recorded = findEpisodes(tracePaths);
+        List<PolicyEvaluator> evaluators = new ArrayList<>();
+        Result last = null;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        for (String policyPath : policyPaths) {
+            PolicyEvaluator evaluator = load(policyPath);
+            if (evaluator == null)
+                continue;
+            long start = System.currentTimeMillis();
+            Result result = evaluator.evaluate(recorded, pool);
+            report(evaluator, result, System.currentTimeMillis() - start, episodes);
+            evaluators.add(evaluator);
+            last = result;
+        }
+        pool.shutdown();
+        for (int i = 1; i < evaluators.size(); i++) {
+            compare(evaluators.get(i - 1), evaluators.get(i), last);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package mdp;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The PolicyPublisher class publishes the Q-table of a trainer into a memory-mapped file so that running drivers on
+ * the same host can pick up every new version without restarting or parsing.
+ * <p>
+ * The file starts with a header of {@link #HEADER_SIZE} bytes (number of states, number of actions, a sequence
+ * counter and the name of the track the table was trained on) followed by the Q-values as native-order doubles.
+ * Writes are guarded by a seqlock: the sequence is odd while the track and the values are being written and even once
+ * they are complete, so readers detect and retry torn reads. Drivers ignore the tables of other tracks.
+ */
+public class PolicyPublisher implements AutoCloseable {
+
+    static final int STATES_OFFSET = 0;
+    static final int ACTIONS_OFFSET = 4;
+    static final int SEQUENCE_OFFSET = 8;
+    static final int TRACK_OFFSET = 16;
+    static final int TRACK_SIZE = 64;
+    static final int HEADER_SIZE = TRACK_OFFSET + TRACK_SIZE;
+    static final VarHandle LONG_VIEW = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int values;
+    private final byte[] track;
+    private long sequence;
+
+    /**
+     * Creates or reuses the shared file for a table of the specified size.
+     *
+     * @param path    The path of the shared file.
+     * @param states  The number of states.
+     * @param actions The number of actions.
+     * @throws IOException If the file cannot be mapped.
+     */
+    public PolicyPublisher(String path, int states, int actions) throws IOException {
+        this.values = states * actions;
+        this.track = new byte[TRACK_SIZE];
+        long size = HEADER_SIZE + (long) this.values * Double.BYTES;
+        this.channel = FileChannel.open(Path.of(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long existingSize = this.channel.size();
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.buffer.order(ByteOrder.nativeOrder());
+
+        boolean sameShape = existingSize == size
+                && this.buffer.getInt(STATES_OFFSET) == states
+                && this.buffer.getInt(ACTIONS_OFFSET) == actions;
+        if (sameShape) {
+            // Keep counting from the last published version so readers notice the next one
+            this.sequence = ((long) LONG_VIEW.getAcquire(this.buffer, SEQUENCE_OFFSET) + 1) & ~1L;
+        } else {
+            this.sequence = 0;
+            this.buffer.putInt(STATES_OFFSET, states);
+            this.buffer.putInt(ACTIONS_OFFSET, actions);
+            LONG_VIEW.setRelease(this.buffer, SEQUENCE_OFFSET, this.sequence);
+        }
+    }
+
+    /**
+     * Publishes a new version of the Q-table.
+     *
+     * @param trackName The name of the track the table was trained on, or null if it is unknown.
+     * @param qValues   The Q-values, indexed by {@code state * actions + action}.
+     */
+    public void publish(String trackName, double[] qValues) {
+        if (qValues.length != this.values)
+            throw new IllegalArgumentException("Expected " + this.values + " Q-values, got " + qValues.length);
+        encodeTrack(trackName, this.track);
+
+        LONG_VIEW.setOpaque(this.buffer, SEQUENCE_OFFSET, ++this.sequence);
+        VarHandle.storeStoreFence();
+        this.buffer.put(TRACK_OFFSET, this.track);
+        for (int i = 0; i < qValues.length; i++) {
+            this.buffer.putDouble(HEADER_SIZE + i * Double.BYTES, qValues[i]);
+        }
+        LONG_VIEW.setRelease(this.buffer, SEQUENCE_OFFSET, ++this.sequence);
+    }
+
+    /**
+     * Encodes the name of a track as zero-padded UTF-8, cut to the size of the header field.
+     *
+     * @param trackName The name of the track, or null.
+     * @param track     The output field, {@link #TRACK_SIZE} bytes long.
+     */
+    static void encodeTrack(String trackName, byte[] track) {
+        Arrays.fill(track, (byte) 0);
+        if (trackName == null)
+            return;
+        byte[] name = trackName.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(name, 0, track, 0, Math.min(name.length, track.length));
+    }
+
+    /**
+     * Retrieves the version of the last published table.
+     *
+     * @return The version, 0 if nothing was published yet.
+     */
+    public long getVersion() {
+        return this.sequence / 2;
+    }
+
+    /**
+     * Closes the shared file. The last published table stays readable.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        this.buffer.force();
+        this.channel.close();
+    }
+}
@@ -0,0 +1,143 @@
+package mdp;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static mdp.PolicyPublisher.*;
+
+/**
+ * The PolicySubscriber class reads the Q-tables published by a {@link PolicyPublisher}. The shared file is mapped
+ * read-only, so every driver process on the host shares the same physical copy of the table.
+ */
+public class PolicySubscriber implements AutoCloseable {
+
+    private static final int MAX_RETRIES = 1000;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int states;
+    private final int actions;
+    private final byte[] track;
+    private long lastSequence;
+    private String trackName;
+
+    /**
+     * Maps a shared file written by a publisher.
+     *
+     * @param path The path of the shared file.
+     * @throws IOException If the file does not exist, cannot be mapped or is not the size its header announces.
+     */
+    public PolicySubscriber(String path) throws IOException {
+        this.channel = FileChannel.open(Path.of(path), StandardOpenOption.READ);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.channel.size());
+        this.buffer.order(ByteOrder.nativeOrder());
+        this.states = this.channel.size() >= HEADER_SIZE ? this.buffer.getInt(STATES_OFFSET) : 0;
+        this.actions = this.channel.size() >= HEADER_SIZE ? this.buffer.getInt(ACTIONS_OFFSET) : 0;
+        if (this.channel.size() != HEADER_SIZE + (long) this.states * this.actions * Double.BYTES) {
+            this.channel.close();
+            throw new IOException(path + " is not a shared policy file of this version");
+        }
+        this.track = new byte[TRACK_SIZE];
+        this.lastSequence = 0;
+    }
+
+    /**
+     * Copies the published table if a version newer than the last one read is available, along with the name of the
+     * track it was trained on.
+     *
+     * @param qValues The output array, indexed by {@code state * actions + action}.
+     * @return True if a new version was copied, false if there is nothing new or the writer kept it busy.
+     */
+    public boolean poll(double[] qValues) {
+        if (qValues.length != this.states * this.actions)
+            throw new IllegalArgumentException("Expected " + this.states * this.actions + " Q-values, got " + qValues.length);
+
+        for (int retry = 0; retry < MAX_RETRIES; retry++) {
+            long before = (long) LONG_VIEW.getAcquire(this.buffer, SEQUENCE_OFFSET);
+            if (before == this.lastSequence)
+                return false;
+            if ((before & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            this.buffer.get(TRACK_OFFSET, this.track);
+            for (int i = 0; i < qValues.length; i++) {
+                qValues[i] = this.buffer.getDouble(HEADER_SIZE + i * Double.BYTES);
+            }
+            VarHandle.loadLoadFence();
+            long after = (long) LONG_VIEW.getOpaque(this.buffer, SEQUENCE_OFFSET);
+            if (before == after) {
+                this.lastSequence = before;
+                this.trackName = decodeTrack(this.track);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the version of the last table read.
+     *
+     * @return The version, 0 if nothing was read yet.
+     */
+    public long getVersion() {
+        return this.lastSequence / 2;
+    }
+
+    /**
+     * Retrieves the name of the track the last table read was trained on.
+     *
+     * @return The name of the track, or null if it is unknown or nothing was read yet.
+     */
+    public String getTrackName() {
+        return this.trackName;
+    }
+
+    /**
+     * Decodes the name of a track written by {@link PolicyPublisher#encodeTrack}.
+     *
+     * @param track The header field.
+     * @return The name of the track, or null if the field is empty.
+     */
+    private static String decodeTrack(byte[] track) {
+        int length = 0;
+        while (length < track.length && track[length] != 0) {
+            length++;
+        }
+        return length == 0 ? null : new String(track, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Retrieves the number of states of the published table.
+     *
+     * @return The number of states.
+     */
+    public int getStates() {
+        return this.states;
+    }
+
+    /**
+     * Retrieves the number of actions of the published table.
+     *
+     * @return The number of actions.
+     */
+    public int getActions() {
+        return this.actions;
+    }
+
+    /**
+     * Unmaps the shared file.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
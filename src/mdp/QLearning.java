@@ -4,7 +4,10 @@ import torcs.Constants;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 import static torcs.Constants.*;
@@ -18,7 +21,11 @@ public class QLearning {
 
     private final HashMap<String, HashMap<String, Double>> qTable;
     private List<Object> possibleActions = null;
+    private Object[] possibleStates;
     private Object lastState;
+    private Object currentState;
+    private EligibilityTraces traces;
+    private double lambda;
     private double epsilon;
     private double epsilonDecay;
     private double learningRate;
@@ -26,8 +33,13 @@ public class QLearning {
     private int epochs;
     private Random random;
     private ControlSystems system;
+    private Hyperparameters hyperparameters;
     private String qTablePath;
-    private List<Object> stateVisited = null;
+    private VisitCounts visits;
+    private QUpdateJournal journal;
+    private long journalCompactRecords;
+    private int[] candidates;
+    private double[] qScratch;
 
     /**
      * Constructs a QLearning object for the specified control system.
@@ -36,13 +48,13 @@ public class QLearning {
      */
     public QLearning(ControlSystems system) {
         this.qTable = new HashMap<>();
+        this.hyperparameters = Hyperparameters.defaults();
         this.epochs = 0;
 
         this.random = new Random(System.currentTimeMillis());
 
-        this.stateVisited = new ArrayList<>();
-
         this.system = system;
+        this.possibleStates = statesOf(system);
         switch (this.system) {
             case STEERING_CONTROL_SYSTEM:
                 this.possibleActions = Arrays.asList(SteerControl.Actions.values());
@@ -62,48 +74,100 @@ public class QLearning {
             this.createQTable();
         else
             this.loadQTable();
-
+        this.createVisitCounts();
     }
 
     /**
      * Constructs a QLearning object for the specified control system with a maximum number of epochs.
      *
-     * @param system    The control system (Steering, Acceleration, or Gear).
-     * @param maxEpochs The maximum number of epochs.
+     * @param system      The control system (Steering, Acceleration, or Gear).
+     * @param maxEpochs   The maximum number of epochs.
+     * @param rangeEpochs The epoch where epsilon reaches zero.
      */
     public QLearning(ControlSystems system, int maxEpochs, int rangeEpochs) {
+        this(system, new Hyperparameters(INITIAL_EPSILON, INITIAL_LEARNING_RATE, DISCOUNT_FACTOR, maxEpochs,
+                RANGE_EPOCHS_INITIAL, rangeEpochs), tablePathOf(system));
+    }
+
+    /**
+     * Constructs a QLearning object for the specified control system with the given hyperparameters.
+     *
+     * @param system          The control system (Steering, Acceleration, or Gear).
+     * @param hyperparameters The hyperparameters of the training.
+     * @param qTablePath      The file where the Q-table is loaded from and saved to, or null to keep the table and
+     *                        statistics in memory only, starting from an empty table.
+     */
+    public QLearning(ControlSystems system, Hyperparameters hyperparameters, String qTablePath) {
         this.qTable = new HashMap<>();
-        this.epsilon = INITIAL_EPSILON;
+        this.hyperparameters = hyperparameters;
+        this.epsilon = hyperparameters.initialEpsilon;
 //        this.epsilonDecay = Math.pow((FINAL_EPSILON / INITIAL_EPSILON), (1.0 / RANGE_EPOCHS));
-        this.epsilonDecay = INITIAL_EPSILON / (double) (RANGE_EPOCHS_END - RANGE_EPOCHS_INITIAL);
-        this.learningRate = INITIAL_LEARNING_RATE;
-        this.learningRateDecay = Math.pow((FINAL_LEARNING_RATE / INITIAL_LEARNING_RATE), (1.0 / MAX_EPOCHS));
+        this.epsilonDecay = hyperparameters.epsilonDecay();
+        this.learningRate = hyperparameters.initialLearningRate;
+        this.learningRateDecay = Math.pow((FINAL_LEARNING_RATE / hyperparameters.initialLearningRate), (1.0 / hyperparameters.maxEpochs));
 //        this.learningRateDecay = INITIAL_LEARNING_RATE / (double) (MAX_EPOCHS);
         this.epochs = 0;
 
-        this.stateVisited = new ArrayList<>();
-
         this.random = new Random(System.currentTimeMillis());
         this.system = system;
-        switch (this.system) {
+        this.possibleStates = statesOf(system);
+        this.possibleActions = Arrays.asList(actionsOf(system));
+        this.qTablePath = qTablePath;
+        if (this.qTablePath == null || !new File(this.qTablePath).exists())
+            this.createQTable();
+        else
+            this.loadQTable();
+        this.createVisitCounts();
+    }
+
+    /**
+     * Creates the visit counts, loading the ones saved next to the Q-table if there are any.
+     */
+    private void createVisitCounts() {
+        this.visits = new VisitCounts(this.possibleStates.length, this.possibleActions.size());
+        this.candidates = new int[this.possibleActions.size()];
+        this.qScratch = new double[this.possibleStates.length * this.possibleActions.size()];
+        if (this.qTablePath != null) {
+            this.visits.load(visitsPathOf(this.qTablePath));
+        }
+    }
+
+    /**
+     * Returns the file where the visit counts of a Q-table are saved.
+     *
+     * @param qTablePath The path of the Q-table file.
+     * @return The path of the visit counts file.
+     */
+    static String visitsPathOf(String qTablePath) {
+        return qTablePath.replace(".csv", "_Visits.csv");
+    }
+
+    /**
+     * Returns the file where the compiled policy of a Q-table is saved.
+     *
+     * @param qTablePath The path of the Q-table file.
+     * @return The path of the compiled policy file.
+     */
+    static String policyPathOf(String qTablePath) {
+        return qTablePath.replace(".csv", ".policy");
+    }
+
+    /**
+     * Returns the default Q-table file of the specified control system.
+     *
+     * @param system The control system.
+     * @return The path of the Q-table file.
+     */
+    static String tablePathOf(ControlSystems system) {
+        switch (system) {
             case STEERING_CONTROL_SYSTEM:
-                this.possibleActions = Arrays.asList(SteerControl.Actions.values());
-                this.qTablePath = STEER_Q_TABLE_PATH;
-                break;
+                return STEER_Q_TABLE_PATH;
             case ACCELERATION_CONTROL_SYSTEM:
-                this.possibleActions = Arrays.asList(AccelControl.Actions.values());
-                this.qTablePath = ACCEL_Q_TABLE_PATH;
-                break;
+                return ACCEL_Q_TABLE_PATH;
             case GEAR_CONTROL_SYSTEM:
-                this.possibleActions = Arrays.asList(GearControl.Actions.values());
-                this.qTablePath = GEAR_Q_TABLE_PATH;
-                break;
+                return GEAR_Q_TABLE_PATH;
         }
-        File f = new File(this.qTablePath);
-        if (!f.exists())
-            this.createQTable();
-        else
-            this.loadQTable();
+        return null;
     }
 
     public static double inverseSigmoid(double x) {
@@ -191,13 +255,22 @@ public class QLearning {
             System.out.println("ERROR!!! -> Could not load tablaQ from .csv file...");
             e.printStackTrace();
         }
+        // The table file is only saved now and then, the updates since are in its journal
+        QUpdateJournal.replay(QUpdateJournal.pathOf(this.qTablePath), this.possibleStates.length,
+                this.possibleActions.size(),
+                (state, action, value) -> this.setQValue(this.possibleStates[state], this.possibleActions.get(action),
+                        value));
     }
 
     /**
      * Saves the Q-table to a file.
      */
     public void saveTable() {
-        try (PrintWriter file = new PrintWriter(this.qTablePath)) {
+        if (this.qTablePath == null)
+            return;
+        // Written aside then moved into place, so a crash never leaves half a table next to its journal
+        File tmpFile = new File(this.qTablePath + ".tmp" + Thread.currentThread().getId());
+        try (PrintWriter file = new PrintWriter(tmpFile)) {
             file.write(" Q-TABLE ");
             file.write(SEPARATOR);
             switch (this.system) {
@@ -263,6 +336,219 @@ public class QLearning {
             System.out.println("ERROR!!! -> Could not save tableQ in .csv file...");
             e.printStackTrace();
         }
+        try {
+            Files.move(tmpFile.toPath(), new File(this.qTablePath).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            if (this.journal == null) {
+                // A journal left by an earlier run is older than this table
+                Files.deleteIfExists(new File(QUpdateJournal.pathOf(this.qTablePath)).toPath());
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not save tableQ in .csv file...");
+            e.printStackTrace();
+        }
+        this.visits.save(visitsPathOf(this.qTablePath), this.possibleStates, this.getPossibleActions());
+        if (this.system == ControlSystems.STEERING_CONTROL_SYSTEM) {
+            // Drivers load the greedy policy instead of the table
+            CompiledPolicy.compileSteer(this.getQValues()).save(policyPathOf(this.qTablePath));
+        }
+    }
+
+    /**
+     * Retrieves the states of the control system.
+     *
+     * @return The states, in ordinal order.
+     */
+    public Object[] getPossibleStates() {
+        return this.possibleStates.clone();
+    }
+
+    /**
+     * Retrieves the actions of the control system.
+     *
+     * @return The actions, in ordinal order.
+     */
+    public Object[] getPossibleActions() {
+        return this.possibleActions.toArray();
+    }
+
+    /**
+     * Retrieves the visit counts of the states and state-action pairs.
+     *
+     * @return The visit counts.
+     */
+    public VisitCounts getVisitCounts() {
+        return this.visits;
+    }
+
+    /**
+     * Replaces epsilon-greedy exploration with the UCB action selector of the visit counts.
+     *
+     * @param explorationBonus The weight of the exploration bonus.
+     */
+    public void enableCountExploration(double explorationBonus) {
+        this.visits.setExplorationBonus(explorationBonus);
+    }
+
+    /**
+     * Enables the journal of Q-updates: every write of the table is logged, and the table file is only saved whole
+     * once the journal holds a given number of records, instead of after every episode, along with its visit counts
+     * and compiled policy. Readers of a table with a journal that is not empty replay it. Does nothing if the table
+     * is kept in memory only.
+     *
+     * @param groupRecords   The number of records committed together at most.
+     * @param commitMillis   The longest time a record waits to be committed.
+     * @param compactRecords The number of records in the journal that triggers saving the whole table.
+     */
+    public void enableJournal(int groupRecords, long commitMillis, long compactRecords) {
+        if (this.qTablePath == null || this.journal != null)
+            return;
+        // The journal only makes sense on top of a table file
+        if (!new File(this.qTablePath).exists())
+            this.saveTable();
+        try {
+            this.journal = new QUpdateJournal(QUpdateJournal.pathOf(this.qTablePath), this.possibleStates.length,
+                    this.possibleActions.size(), groupRecords, commitMillis);
+            this.journalCompactRecords = compactRecords;
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not open Q-update journal...");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Saves the whole table and closes the journal of Q-updates, if it is enabled.
+     */
+    public void closeJournal() {
+        if (this.journal == null)
+            return;
+        this.compact();
+        try {
+            this.journal.close();
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not close Q-update journal...");
+            e.printStackTrace();
+        }
+        this.journal = null;
+    }
+
+    /**
+     * Saves the whole table, then empties the journal whose records it now holds.
+     */
+    private void compact() {
+        this.saveTable();
+        if (this.journal != null)
+            this.journal.reset();
+    }
+
+    /**
+     * Checks whether the writes of the table are logged to a journal, so the table file alone is not up to date.
+     *
+     * @return True if the journal of Q-updates is enabled.
+     */
+    public boolean hasJournal() {
+        return this.journal != null;
+    }
+
+    /**
+     * Retrieves the current exploration rate.
+     *
+     * @return The value of epsilon.
+     */
+    public double getEpsilon() {
+        return this.epsilon;
+    }
+
+    /**
+     * Retrieves the current learning rate.
+     *
+     * @return The learning rate.
+     */
+    public double getLearningRate() {
+        return this.learningRate;
+    }
+
+    /**
+     * Retrieves the number of epochs trained.
+     *
+     * @return The number of epochs.
+     */
+    public int getEpochs() {
+        return this.epochs;
+    }
+
+    /**
+     * Retrieves the control system of the learner.
+     *
+     * @return The control system.
+     */
+    public ControlSystems getSystem() {
+        return this.system;
+    }
+
+    /**
+     * Retrieves the file where the Q-table is loaded from and saved to.
+     *
+     * @return The path of the Q-table file, or null if the table is kept in memory only.
+     */
+    public String getQTablePath() {
+        return this.qTablePath;
+    }
+
+    /**
+     * Retrieves the random generator of the exploration.
+     *
+     * @return The random generator.
+     */
+    Random getRandom() {
+        return this.random;
+    }
+
+    /**
+     * Moves the schedule of the learner back to where a previous run left it.
+     *
+     * @param epochs       The number of epochs trained.
+     * @param epsilon      The exploration rate.
+     * @param learningRate The learning rate.
+     * @param random       The random generator of the exploration.
+     */
+    void restoreSchedule(int epochs, double epsilon, double learningRate, Random random) {
+        this.epochs = epochs;
+        this.epsilon = epsilon;
+        this.learningRate = learningRate;
+        this.random = random;
+    }
+
+    /**
+     * Copies the Q-table into a row-major array.
+     *
+     * @return The Q-values, indexed by {@code state.ordinal() * actions + action.ordinal()}.
+     */
+    public double[] getQValues() {
+        int actions = this.possibleActions.size();
+        double[] values = new double[this.possibleStates.length * actions];
+        for (int state = 0; state < this.possibleStates.length; state++) {
+            for (int action = 0; action < actions; action++) {
+                values[state * actions + action] = this.getQValue(this.possibleStates[state],
+                        this.possibleActions.get(action));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Replaces the Q-table with the values of a row-major array.
+     *
+     * @param values The Q-values, indexed by {@code state.ordinal() * actions + action.ordinal()}.
+     */
+    public void setQValues(double[] values) {
+        int actions = this.possibleActions.size();
+        for (int state = 0; state < this.possibleStates.length; state++) {
+            for (int action = 0; action < actions; action++) {
+                this.setQValue(this.possibleStates[state], this.possibleActions.get(action),
+                        values[state * actions + action]);
+            }
+        }
     }
 
     /**
@@ -275,14 +561,21 @@ public class QLearning {
      * @return The next action to take.
      */
     public Object update(Object lastState, Object currentState, Object actionPerformed, double reward) {
-        if (!this.stateVisited.contains(currentState)) {
-            this.stateVisited.add(currentState);
+        this.visits.visitState(((Enum<?>) currentState).ordinal());
+        if (lastState != null) {
+            this.visits.visitPair(((Enum<?>) lastState).ordinal(), ((Enum<?>) actionPerformed).ordinal());
         }
         this.lastState = lastState;
+        this.currentState = currentState;
         if (lastState != null) {
-            double newQValue = this.getQValue(lastState, actionPerformed) + this.learningRate * (reward + DISCOUNT_FACTOR
-                    * this.getMaxQValue(lastState));
-            this.setQValue(lastState, actionPerformed, (Constants.round(newQValue, 8) / MAX_EPOCHS));
+            if (this.traces != null) {
+                double target = reward + this.hyperparameters.discountFactor * this.getMaxQValue(currentState);
+                this.traceUpdate(lastState, actionPerformed, target);
+            } else {
+                double newQValue = this.hyperparameters.updatedQValue(this.getQValue(lastState, actionPerformed),
+                        this.getMaxQValue(lastState), reward, this.learningRate);
+                this.setQValue(lastState, actionPerformed, newQValue);
+            }
         }
         return nextAction(currentState);
     }
@@ -294,11 +587,177 @@ public class QLearning {
      * @param reward     The reward received.
      */
     public void lastUpdate(Object lastAction, double reward) {
-        if (this.lastState != null) {
-            double newQValue = (1 - this.learningRate) * this.getQValue(this.lastState, lastAction) + this.learningRate
-                    * (reward + DISCOUNT_FACTOR * this.getMaxQValue(this.lastState));
-            this.setQValue(this.lastState, lastAction, (Constants.round(newQValue, 8) / MAX_EPOCHS));
+        if (this.currentState != null) {
+            this.visits.visitPair(((Enum<?>) this.currentState).ordinal(), ((Enum<?>) lastAction).ordinal());
         }
+        if (this.traces != null) {
+            // The last action was chosen in the current state and leads to a terminal state
+            if (this.currentState != null) {
+                this.traceUpdate(this.currentState, lastAction, reward);
+            }
+            this.traces.clear();
+        } else if (this.lastState != null) {
+            double newQValue = this.hyperparameters.lastUpdatedQValue(this.getQValue(this.lastState, lastAction),
+                    this.getMaxQValue(this.lastState), reward, this.learningRate);
+            this.setQValue(this.lastState, lastAction, newQValue);
+        }
+    }
+
+    /**
+     * Switches the learner to Watkins Q(lambda) with sparse replacing eligibility traces.
+     * The one-step update is kept when traces are not enabled.
+     *
+     * @param lambda The trace decay parameter.
+     */
+    public void enableEligibilityTraces(double lambda) {
+        this.traces = new EligibilityTraces(MAX_ACTIVE_TRACES);
+        this.lambda = lambda;
+    }
+
+    /**
+     * Applies a Watkins Q(lambda) backup of the TD error of a state-action pair to every active trace.
+     *
+     * @param stateO  The state where the action was performed.
+     * @param actionO The action performed.
+     * @param target  The TD target of the pair.
+     */
+    private void traceUpdate(Object stateO, Object actionO, double target) {
+        double qValue = this.getQValue(stateO, actionO);
+        // An exploratory action breaks the greedy chain, so older pairs stop being credited
+        if (qValue < this.getMaxQValue(stateO)) {
+            this.traces.clear();
+        }
+        int actions = this.possibleActions.size();
+        this.traces.replace(((Enum<?>) stateO).ordinal() * actions + ((Enum<?>) actionO).ordinal());
+
+        double delta = target - qValue;
+        for (int i = 0; i < this.traces.size(); i++) {
+            int key = this.traces.getKey(i);
+            Object state = this.possibleStates[key / actions];
+            Object action = this.possibleActions.get(key % actions);
+            double newQValue = this.getQValue(state, action) + this.learningRate * delta * this.traces.getValue(i);
+            this.setQValue(state, action, Constants.round(newQValue, 8));
+        }
+        this.traces.decay(this.hyperparameters.discountFactor * this.lambda, TRACE_THRESHOLD);
+    }
+
+    /**
+     * Applies a batch of updates with transitions sampled uniformly from a replay buffer.
+     * Non-terminal transitions bootstrap from the maximum Q-value of their next state.
+     *
+     * @param buffer    The replay buffer.
+     * @param batchSize The number of transitions to replay.
+     */
+    public void replay(ReplayBuffer buffer, int batchSize) {
+        if (buffer.size() == 0)
+            return;
+        for (int i = 0; i < batchSize; i++) {
+            int index = buffer.sample(this.random);
+            Object state = this.possibleStates[buffer.getState(index)];
+            Object action = this.possibleActions.get(buffer.getAction(index));
+            double qValue = this.getQValue(state, action);
+            double newQValue;
+            if (buffer.isTerminal(index)) {
+                newQValue = this.hyperparameters.lastUpdatedQValue(qValue, 0.0, buffer.getReward(index), this.learningRate);
+            } else {
+                double maxQValue = this.getMaxQValue(this.possibleStates[buffer.getNextState(index)]);
+                newQValue = this.hyperparameters.updatedQValue(qValue, maxQValue, buffer.getReward(index), this.learningRate);
+            }
+            this.setQValue(state, action, newQValue);
+        }
+    }
+
+    /**
+     * Computes the Q-value a simulated backup of a state-action pair writes, from the outcomes of the pair in a
+     * learned model weighted by how often they happened, with the rules of {@link #replay}.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @param model  The model of the environment.
+     * @return The new Q-value, or the current one if the pair was never tried.
+     */
+    double plannedQValue(int state, int action, TransitionModel model) {
+        double qValue = this.getQValue(state, action);
+        int count = model.getCount(state, action);
+        if (count == 0)
+            return qValue;
+        int terminalCount = model.getTerminalCount(state, action);
+        double newQValue = 0.0;
+        if (terminalCount > 0) {
+            newQValue += (double) terminalCount / count * this.hyperparameters.lastUpdatedQValue(qValue, 0.0,
+                    model.getTerminalReward(state, action), this.learningRate);
+        }
+        if (terminalCount < count) {
+            double maxQValue = 0.0;
+            for (int next = 0; next < this.possibleStates.length; next++) {
+                int nextCount = model.getNextCount(state, action, next);
+                if (nextCount > 0) {
+                    maxQValue += nextCount * this.getMaxQValue(this.possibleStates[next]);
+                }
+            }
+            maxQValue /= count - terminalCount;
+            newQValue += (double) (count - terminalCount) / count * this.hyperparameters.updatedQValue(qValue,
+                    maxQValue, model.getReward(state, action), this.learningRate);
+        }
+        return newQValue;
+    }
+
+    /**
+     * Returns the Q-value of a state-action pair given by ordinals.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @return The Q-value.
+     */
+    double getQValue(int state, int action) {
+        return this.getQValue(this.possibleStates[state], this.possibleActions.get(action));
+    }
+
+    /**
+     * Sets the Q-value of a state-action pair given by ordinals.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @param value  The Q-value.
+     */
+    void setQValue(int state, int action, double value) {
+        this.setQValue(this.possibleStates[state], this.possibleActions.get(action), value);
+    }
+
+    /**
+     * Returns the actions available to the specified control system.
+     *
+     * @param system The control system.
+     * @return The actions, in ordinal order.
+     */
+    static Object[] actionsOf(ControlSystems system) {
+        switch (system) {
+            case STEERING_CONTROL_SYSTEM:
+                return SteerControl.Actions.values();
+            case ACCELERATION_CONTROL_SYSTEM:
+                return AccelControl.Actions.values();
+            case GEAR_CONTROL_SYSTEM:
+                return GearControl.Actions.values();
+        }
+        return new Object[0];
+    }
+
+    /**
+     * Returns the states of the specified control system.
+     *
+     * @param system The control system.
+     * @return The states, in ordinal order.
+     */
+    static Object[] statesOf(ControlSystems system) {
+        switch (system) {
+            case STEERING_CONTROL_SYSTEM:
+                return SteerControl.States.values();
+            case ACCELERATION_CONTROL_SYSTEM:
+                return AccelControl.States.values();
+            case GEAR_CONTROL_SYSTEM:
+                return GearControl.States.values();
+        }
+        return new Object[0];
     }
 
     /**
@@ -359,6 +818,8 @@ public class QLearning {
                 this.qTable.replace(gearState.name(), gearRow);
                 break;
         }
+        if (this.journal != null)
+            this.journal.append(((Enum<?>) stateO).ordinal(), ((Enum<?>) actionO).ordinal(), value);
     }
 
     /**
@@ -437,6 +898,15 @@ public class QLearning {
      * @return The next action.
      */
     public Object nextAction(Object state) {
+        if (this.visits.isExploring()) {
+            int actions = this.possibleActions.size();
+            int row = ((Enum<?>) state).ordinal() * actions;
+            for (int action = 0; action < actions; action++) {
+                this.qScratch[row + action] = this.getQValue(state, this.possibleActions.get(action));
+            }
+            int action = this.visits.select(((Enum<?>) state).ordinal(), this.qScratch, this.random, this.candidates);
+            return this.possibleActions.get(action);
+        }
         double probability = random.nextDouble();
         if (probability < epsilon) {
             return this.getRandomAction();
@@ -581,8 +1051,10 @@ public class QLearning {
      * @param newResults The new results to be added to the statistics.
      */
     public void saveStatistics(String newResults) {
-        newResults = newResults + SEPARATOR + this.epsilon + SEPARATOR + this.learningRate + SEPARATOR + this.stateVisited.size();
-        this.saveStatistics(STATISTICS_TEST_PATH, newResults);
+        if (this.qTablePath == null)
+            return;
+        newResults = newResults + SEPARATOR + this.epsilon + SEPARATOR + this.learningRate + SEPARATOR + this.visits.getCoverage();
+        saveStatistics(STATISTICS_TEST_PATH, newResults);
     }
 
     /**
@@ -592,9 +1064,14 @@ public class QLearning {
      */
     public void saveQTableAndStatistics(String newResults) {
         this.epochs++;
-        this.saveTable();
-        newResults = newResults + SEPARATOR + this.epsilon + SEPARATOR + this.learningRate + SEPARATOR + this.stateVisited.size();
-        this.saveStatistics(STATISTICS_TRAIN_PATH, newResults);
+        if (this.qTablePath == null)
+            return;
+        if (this.journal != null && this.journal.getRecords() < this.journalCompactRecords)
+            this.journal.commit();
+        else
+            this.compact();
+        newResults = newResults + SEPARATOR + this.epsilon + SEPARATOR + this.learningRate + SEPARATOR + this.visits.getCoverage();
+        saveStatistics(STATISTICS_TRAIN_PATH, newResults);
     }
 
     /**
@@ -603,7 +1080,7 @@ public class QLearning {
      * @param filePath   The file path.
      * @param newResults The new results to be added to the statistics.
      */
-    private void saveStatistics(String filePath, String newResults) {
+    static void saveStatistics(String filePath, String newResults) {
         List<String> content = new ArrayList<>();
         try (Scanner file = new Scanner(new File(filePath))) {
             while (file.hasNextLine()) {
@@ -628,7 +1105,11 @@ public class QLearning {
      * Decreases the value of epsilon.
      */
     public void updateParams() {
-        if (this.epochs > RANGE_EPOCHS_INITIAL && this.epochs < RANGE_EPOCHS_END) {
+        // Traces never survive an episode boundary
+        if (this.traces != null) {
+            this.traces.clear();
+        }
+        if (this.epochs > this.hyperparameters.rangeEpochsInitial && this.epochs < this.hyperparameters.rangeEpochsEnd) {
 //            this.epsilon = getFactorAprendizaje_Exploracion(INITIAL_EPSILON, FINAL_EPSILON, this.epochs, 5, RANGE_EPOCHS_END);
             this.epsilon -= this.epsilonDecay;
         } else {
@@ -0,0 +1,183 @@
+package mdp;
+
+import java.util.Random;
+
+import static torcs.Constants.ControlSystems;
+
+/**
+ * The QLearningWorker class applies the Q-learning rule of {@link QLearning} to a {@link QTable} that may be shared
+ * with other workers. Each worker owns its random generator and its exploration and learning-rate schedule, so
+ * several workers can train the same table from different threads.
+ */
+public class QLearningWorker {
+
+    private final QTable qTable;
+    private final Hyperparameters hyperparameters;
+    private final Object[] possibleActions;
+    private final int[] candidates;
+    private Object lastState;
+    private double epsilon;
+    private double epsilonDecay;
+    private double learningRate;
+    private int epochs;
+    private Random random;
+
+    /**
+     * Constructs a worker for the specified control system that trains the given table.
+     *
+     * @param system The control system (Steering, Acceleration, or Gear).
+     * @param qTable The table to train, possibly shared with other workers.
+     * @param seed   The seed of the worker's random generator.
+     */
+    public QLearningWorker(ControlSystems system, QTable qTable, long seed) {
+        this(system, qTable, Hyperparameters.defaults(), seed);
+    }
+
+    /**
+     * Constructs a worker for the specified control system that trains the given table with the given hyperparameters.
+     *
+     * @param system          The control system (Steering, Acceleration, or Gear).
+     * @param qTable          The table to train, possibly shared with other workers.
+     * @param hyperparameters The hyperparameters of the worker.
+     * @param seed            The seed of the worker's random generator.
+     */
+    public QLearningWorker(ControlSystems system, QTable qTable, Hyperparameters hyperparameters, long seed) {
+        this.qTable = qTable;
+        this.hyperparameters = hyperparameters;
+        this.possibleActions = QLearning.actionsOf(system);
+        this.candidates = new int[this.possibleActions.length];
+        this.epsilon = hyperparameters.initialEpsilon;
+        this.epsilonDecay = hyperparameters.epsilonDecay();
+        this.learningRate = hyperparameters.initialLearningRate;
+        this.epochs = 0;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Updates the Q-value for the specified state-action pair based on the reward received.
+     *
+     * @param lastState       The last state.
+     * @param currentState    The current state.
+     * @param actionPerformed The action performed.
+     * @param reward          The reward received.
+     * @return The next action to take.
+     */
+    public Object update(Object lastState, Object currentState, Object actionPerformed, double reward) {
+        this.lastState = lastState;
+        if (lastState != null) {
+            int state = ((Enum<?>) lastState).ordinal();
+            int action = ((Enum<?>) actionPerformed).ordinal();
+            double newQValue = this.hyperparameters.updatedQValue(this.qTable.get(state, action),
+                    this.getMaxQValue(state), reward, this.learningRate);
+            this.qTable.set(state, action, newQValue);
+        }
+        return nextAction(currentState);
+    }
+
+    /**
+     * Updates the Q-value for the last state-action pair based on the reward received.
+     *
+     * @param lastAction The last action.
+     * @param reward     The reward received.
+     */
+    public void lastUpdate(Object lastAction, double reward) {
+        if (this.lastState != null) {
+            int state = ((Enum<?>) this.lastState).ordinal();
+            int action = ((Enum<?>) lastAction).ordinal();
+            double newQValue = this.hyperparameters.lastUpdatedQValue(this.qTable.get(state, action),
+                    this.getMaxQValue(state), reward, this.learningRate);
+            this.qTable.set(state, action, newQValue);
+        }
+    }
+
+    /**
+     * Returns the next action to take based on the current state.
+     *
+     * @param state The current state.
+     * @return The next action.
+     */
+    public Object nextAction(Object state) {
+        if (this.random.nextDouble() < this.epsilon) {
+            return this.possibleActions[this.random.nextInt(this.possibleActions.length)];
+        } else {
+            return this.possibleActions[this.getBestAction(((Enum<?>) state).ordinal())];
+        }
+    }
+
+    /**
+     * Returns the best action to take based on the current state without any randomness.
+     *
+     * @param state The current state.
+     * @return The best action.
+     */
+    public Object nextOnlyBestAction(Object state) {
+        int stateIndex = ((Enum<?>) state).ordinal();
+        double maxValue = -Double.MAX_VALUE;
+        int theBest = 0;
+        for (int action = 0; action < this.possibleActions.length; action++) {
+            double value = this.qTable.get(stateIndex, action);
+            if (maxValue < value) {
+                maxValue = value;
+                theBest = action;
+            }
+        }
+        return this.possibleActions[theBest];
+    }
+
+    /**
+     * Marks the end of an epoch and decreases the value of epsilon.
+     */
+    public void updateParams() {
+        this.epochs++;
+        if (this.epochs > this.hyperparameters.rangeEpochsInitial && this.epochs < this.hyperparameters.rangeEpochsEnd) {
+            this.epsilon -= this.epsilonDecay;
+        } else {
+            this.epsilon = 0.0;
+        }
+    }
+
+    /**
+     * Retrieves the number of epochs completed by this worker.
+     *
+     * @return The number of epochs.
+     */
+    public int getEpochs() {
+        return this.epochs;
+    }
+
+    /**
+     * Returns the maximum Q-value for the specified state.
+     *
+     * @param state The state ordinal.
+     * @return The maximum Q-value.
+     */
+    private double getMaxQValue(int state) {
+        double maxValue = -Double.MAX_VALUE;
+        for (int action = 0; action < this.possibleActions.length; action++) {
+            maxValue = Math.max(maxValue, this.qTable.get(state, action));
+        }
+        return maxValue;
+    }
+
+    /**
+     * Returns the best action for the specified state, breaking ties at random.
+     *
+     * @param state The state ordinal.
+     * @return The best action ordinal.
+     */
+    private int getBestAction(int state) {
+        double maxValue = -Double.MAX_VALUE;
+        int count = 0;
+        for (int action = 0; action < this.possibleActions.length; action++) {
+            double value = this.qTable.get(state, action);
+            if (maxValue < value) {
+                maxValue = value;
+                count = 0;
+                this.candidates[count++] = action;
+            } else if (maxValue == value) {
+                this.candidates[count++] = action;
+            }
+        }
+        return this.candidates[this.random.nextInt(count)];
+    }
+}
@@ -0,0 +1,40 @@
+package mdp;
+
+/**
+ * The QTable interface abstracts the storage of Q-values indexed by state and action ordinals.
+ * Implementations decide where and how the values live; learners only rely on these accessors.
+ */
+public interface QTable {
+
+    /**
+     * Retrieves the number of states of the table.
+     *
+     * @return The number of states.
+     */
+    public int stateCount();
+
+    /**
+     * Retrieves the number of actions of the table.
+     *
+     * @return The number of actions.
+     */
+    public int actionCount();
+
+    /**
+     * Retrieves the Q-value of a state-action pair.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @return The Q-value.
+     */
+    public double get(int state, int action);
+
+    /**
+     * Sets the Q-value of a state-action pair.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @param value  The new Q-value.
+     */
+    public void set(int state, int action, double value);
+}
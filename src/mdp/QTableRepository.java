@@ -0,0 +1,238 @@
+package mdp;
+
+import torcs.Constants.ControlSystems;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The QTableRepository class keeps the Q-tables of every control system and every track, so a session that drives
+ * several tracks switches tables per episode without parsing them from disk again. Tables are loaded lazily, the
+ * first time a track asks for them, and the most recently used ones are kept in memory, up to a capacity; the least
+ * recently used table is dropped, and saved first if the repository trains them.
+ * <p>
+ * The table of a track is saved next to the shared table of its control system, with the name of the track appended,
+ * such as {@code QTable_Steer_<track>.csv}. A track without a table of its own starts from the shared table, so the
+ * tables trained before tables were kept per track are still used.
+ */
+public class QTableRepository {
+
+    private final Hyperparameters hyperparameters;
+    private final boolean saveEvicted;
+    private final LinkedHashMap<String, Entry> entries;
+    private int loads;
+
+    /**
+     * Constructs a repository.
+     *
+     * @param hyperparameters The hyperparameters of the learners it loads.
+     * @param capacity        The number of tables kept in memory. A track without a table of its own that is trained
+     *                        also keeps the shared one, so with less than 2 switching tracks reads from disk again.
+     * @param saveEvicted     True to save a learner when it is dropped, if it is being trained.
+     */
+    public QTableRepository(Hyperparameters hyperparameters, int capacity, boolean saveEvicted) {
+        this.hyperparameters = hyperparameters;
+        this.saveEvicted = saveEvicted;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= capacity)
+                    return false;
+                evict(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the Q-table file of a control system on a track.
+     *
+     * @param system    The control system.
+     * @param trackName The name of the track, or null for the shared table.
+     * @return The path of the Q-table file.
+     */
+    public static String tablePathOf(ControlSystems system, String trackName) {
+        String path = QLearning.tablePathOf(system);
+        return trackName == null ? path : path.replace(".csv", "_" + trackName + ".csv");
+    }
+
+    /**
+     * Retrieves the learner of a control system on a track, loading its table if it is not in memory.
+     *
+     * @param system    The control system.
+     * @param trackName The name of the track, or null for the shared table.
+     * @return The learner, which saves its table to the file of the track.
+     */
+    public synchronized QLearning getLearner(ControlSystems system, String trackName) {
+        Entry cached = this.entries.get(keyOf(system, trackName));
+        if (cached != null && cached.learner != null)
+            return cached.learner;
+
+        String path = tablePathOf(system, trackName);
+        double[] sharedQValues = null;
+        if (!new File(path).exists() && trackName != null && new File(tablePathOf(system, null)).exists()) {
+            // Read before the entry of the track is created, so caching the shared table never drops it
+            sharedQValues = this.getLearner(system, null).getQValues();
+        }
+        Entry entry = this.entryOf(system, trackName);
+        entry.learner = new QLearning(system, this.hyperparameters, path);
+        this.loads++;
+        if (sharedQValues != null) {
+            entry.learner.setQValues(sharedQValues);
+        }
+        return entry.learner;
+    }
+
+    /**
+     * Retrieves the compiled steering policy of a track: its compiled policy file, or its table compiled, or the
+     * shared policy if the track has none. A trainer with a journal of Q-updates only rewrites the policy file when
+     * it saves the whole table, so while the journal holds updates the policy is compiled from the table and its
+     * journal instead. A policy file or journal written by a trainer is loaded again.
+     *
+     * @param trackName The name of the track, or null for the shared policy.
+     * @return The policy.
+     */
+    public synchronized CompiledPolicy getSteerPolicy(String trackName) {
+        ControlSystems system = ControlSystems.STEERING_CONTROL_SYSTEM;
+        String path = tablePathOf(system, trackName);
+        File policyFile = new File(QLearning.policyPathOf(path));
+        File journalFile = new File(QUpdateJournal.pathOf(path));
+        if (trackName != null && !new File(path).exists() && !policyFile.exists()) {
+            // Tracks without a table follow the shared policy, and its updates. Decided before the entry of the track
+            // is created, so it never takes the place of the shared one
+            Entry cached = this.entries.get(keyOf(system, trackName));
+            if (cached == null || cached.learner == null) {
+                if (cached != null) this.entries.remove(keyOf(system, trackName));
+                return this.getSteerPolicy(null);
+            }
+        }
+        Entry entry = this.entryOf(system, trackName);
+        long modified = Math.max(policyFile.lastModified(), journalFile.lastModified());
+        if (entry.policy != null && modified == entry.policyModified)
+            return entry.policy;
+
+        if (journalFile.length() > QUpdateJournal.HEADER_SIZE && new File(path).exists()) {
+            entry.policyModified = modified;
+            entry.policy = CompiledPolicy.compileSteer(this.replayJournal(entry, system, path).getQValues());
+        } else if (policyFile.exists()) {
+            entry.policyModified = modified;
+            entry.policy = CompiledPolicy.load(policyFile.getPath());
+            this.loads++;
+        }
+        if (entry.policy == null) {
+            CompiledPolicy policy = CompiledPolicy.compileSteer(this.getLearner(system, trackName).getQValues());
+            // Loading the learner may have dropped the entry, so the policy goes to the one in the cache
+            entry = this.entryOf(system, trackName);
+            entry.policy = policy;
+            entry.policyModified = modified;
+        }
+        return entry.policy;
+    }
+
+    /**
+     * Brings up to date the table of a trainer that logs its updates to a journal. The table file is only loaded
+     * again when the trainer saves it whole; otherwise only the records appended to the journal since the last call
+     * are replayed.
+     *
+     * @param entry  The entry of the table.
+     * @param system The control system.
+     * @param path   The path of the Q-table file.
+     * @return The table with every committed update of the journal.
+     */
+    private QLearning replayJournal(Entry entry, ControlSystems system, String path) {
+        long tableModified = new File(path).lastModified();
+        String journalPath = QUpdateJournal.pathOf(path);
+        if (entry.replayed == null || entry.replayedTableModified != tableModified) {
+            // Counted before loading: records appended meanwhile are replayed again, harmlessly, as they are absolute
+            long records = (new File(journalPath).length() - QUpdateJournal.HEADER_SIZE) / QUpdateJournal.RECORD_SIZE;
+            entry.replayed = new QLearning(system, this.hyperparameters, path);
+            entry.replayedTableModified = tableModified;
+            entry.replayedRecords = Math.max(0, records);
+            this.loads++;
+        }
+        QLearning replayed = entry.replayed;
+        entry.replayedRecords += QUpdateJournal.replay(journalPath, replayed.getPossibleStates().length,
+                replayed.getPossibleActions().length, entry.replayedRecords, replayed::setQValue);
+        return replayed;
+    }
+
+    /**
+     * Saves the tables of every learner in memory.
+     */
+    public synchronized void saveAll() {
+        for (Entry entry : this.entries.values()) {
+            if (entry.learner != null)
+                entry.learner.saveTable();
+        }
+    }
+
+    /**
+     * Retrieves the number of tables in memory.
+     *
+     * @return The number of cached entries.
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Retrieves the number of tables and policies read from disk, to check that switching tracks hits the cache.
+     *
+     * @return The number of loads.
+     */
+    public synchronized int getLoads() {
+        return this.loads;
+    }
+
+    /**
+     * Returns the cache key of a control system on a track.
+     *
+     * @param system    The control system.
+     * @param trackName The name of the track, or null for the shared table.
+     * @return The key.
+     */
+    private static String keyOf(ControlSystems system, String trackName) {
+        return system.name() + "/" + trackName;
+    }
+
+    /**
+     * Finds the entry of a control system on a track, creating an empty one if there is none.
+     *
+     * @param system    The control system.
+     * @param trackName The name of the track, or null for the shared table.
+     * @return The entry, now the most recently used.
+     */
+    private Entry entryOf(ControlSystems system, String trackName) {
+        String key = keyOf(system, trackName);
+        Entry entry = this.entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            this.entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Releases an entry dropped from the cache, saving its learner first if the repository trains them.
+     *
+     * @param entry The entry.
+     */
+    private void evict(Entry entry) {
+        if (this.saveEvicted && entry.learner != null)
+            entry.learner.saveTable();
+    }
+
+    /**
+     * The Entry class holds what has been loaded for a control system on a track.
+     */
+    private static class Entry {
+
+        QLearning learner;
+        CompiledPolicy policy;
+        long policyModified;
+        QLearning replayed;
+        long replayedTableModified;
+        long replayedRecords;
+    }
+}
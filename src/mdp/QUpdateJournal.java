@@ -0,0 +1,263 @@
+package mdp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The QUpdateJournal class is a write-ahead log of the Q-values written by a learner, so a checkpoint costs the
+ * updates made since the last one instead of the whole table. Every write is appended as a record of
+ * {@link #RECORD_SIZE} bytes (state, action and new value) to a buffer in memory, and the buffer is written and
+ * forced to disk as a group: when it is full, when a committer thread finds records older than the commit interval,
+ * or when the learner commits explicitly, such as at the end of an episode.
+ * <p>
+ * The journal holds the writes made since the table file was last saved. Once it grows past a threshold the learner
+ * compacts it: it saves the whole table, atomically, and then empties the journal. Recovery is the table file followed
+ * by a replay of the journal. Records hold absolute values, so replaying records already in the table, after a crash
+ * between the save and the reset, is harmless, and a record torn by a crash is dropped.
+ * <p>
+ * The file starts with a header of {@link #HEADER_SIZE} bytes: a magic number, the version, the number of states and
+ * the number of actions. A journal of another shape is discarded.
+ */
+public class QUpdateJournal implements AutoCloseable {
+
+    static final int MAGIC = 0x514A5231; // QJR1
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = Integer.BYTES + Short.BYTES + Double.BYTES;
+
+    private final FileChannel channel;
+    private final ByteBuffer pending;
+    private final long commitNanos;
+    private final Thread committer;
+    private volatile boolean running;
+    private long pendingSince;
+    private long records;
+    private long commits;
+
+    /**
+     * Opens a journal, keeping its records if it already belongs to a table of the same shape.
+     *
+     * @param filePath     The path of the journal file.
+     * @param states       The number of states of the table.
+     * @param actions      The number of actions of the table.
+     * @param groupRecords The number of records committed together at most.
+     * @param commitMillis The longest time a record waits to be committed, or 0 to only commit when the group is full
+     *                     or on request.
+     * @throws IOException If the file cannot be opened.
+     */
+    public QUpdateJournal(String filePath, int states, int actions, int groupRecords, long commitMillis)
+            throws IOException {
+        this.channel = FileChannel.open(Path.of(filePath), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        boolean sameShape = this.channel.size() >= HEADER_SIZE
+                && this.channel.read(header, 0) == HEADER_SIZE
+                && header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+                && header.getInt(8) == states && header.getInt(12) == actions;
+        if (sameShape) {
+            this.records = (this.channel.size() - HEADER_SIZE) / RECORD_SIZE;
+            // Drop a record torn by a crash
+            this.channel.truncate(HEADER_SIZE + this.records * RECORD_SIZE);
+        } else {
+            header.clear();
+            header.putInt(MAGIC).putInt(VERSION).putInt(states).putInt(actions).flip();
+            this.channel.truncate(0);
+            this.channel.write(header, 0);
+            this.channel.force(true);
+        }
+        this.channel.position(this.channel.size());
+
+        this.pending = ByteBuffer.allocate(Math.max(1, groupRecords) * RECORD_SIZE);
+        this.commitNanos = TimeUnit.MILLISECONDS.toNanos(commitMillis);
+        this.running = true;
+        if (commitMillis > 0) {
+            this.committer = new Thread(this::commitPeriodically, "q-journal");
+            this.committer.setDaemon(true);
+            this.committer.start();
+        } else {
+            this.committer = null;
+        }
+    }
+
+    /**
+     * Returns the journal file of a Q-table.
+     *
+     * @param qTablePath The path of the Q-table file.
+     * @return The path of the journal file.
+     */
+    public static String pathOf(String qTablePath) {
+        return qTablePath.replace(".csv", ".journal");
+    }
+
+    /**
+     * Logs a write of the table, committing the group if it is full.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @param value  The new Q-value.
+     */
+    public synchronized void append(int state, int action, double value) {
+        if (this.pending.position() == 0)
+            this.pendingSince = System.nanoTime();
+        this.pending.putInt(state).putShort((short) action).putDouble(value);
+        this.records++;
+        if (!this.pending.hasRemaining())
+            this.commit();
+    }
+
+    /**
+     * Writes the pending records and forces them to disk.
+     */
+    public synchronized void commit() {
+        if (this.pending.position() == 0)
+            return;
+        this.pending.flip();
+        try {
+            while (this.pending.hasRemaining()) {
+                this.channel.write(this.pending);
+            }
+            this.channel.force(false);
+            this.commits++;
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not write Q-update journal...");
+            e.printStackTrace();
+        }
+        this.pending.clear();
+    }
+
+    /**
+     * Empties the journal once the table has been saved whole.
+     */
+    public synchronized void reset() {
+        this.pending.clear();
+        try {
+            this.channel.truncate(HEADER_SIZE);
+            this.channel.position(HEADER_SIZE);
+            this.channel.force(true);
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not reset Q-update journal...");
+            e.printStackTrace();
+        }
+        this.records = 0;
+    }
+
+    /**
+     * Retrieves the number of records logged since the table was last saved whole, including the pending ones.
+     *
+     * @return The number of records.
+     */
+    public synchronized long getRecords() {
+        return this.records;
+    }
+
+    /**
+     * Retrieves the number of group commits.
+     *
+     * @return The number of commits.
+     */
+    public synchronized long getCommits() {
+        return this.commits;
+    }
+
+    /**
+     * Commits the pending records, stops the committer thread and closes the file.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        this.running = false;
+        if (this.committer != null) {
+            LockSupport.unpark(this.committer);
+            try {
+                this.committer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            this.commit();
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Replays the records of a journal.
+     *
+     * @param filePath The path of the journal file.
+     * @param states   The number of states of the table.
+     * @param actions  The number of actions of the table.
+     * @param visitor  The visitor of the records, in the order they were logged.
+     * @return The number of records replayed, 0 if there is no journal or it belongs to a table of another shape.
+     */
+    public static long replay(String filePath, int states, int actions, SparseQTable.PairVisitor visitor) {
+        return replay(filePath, states, actions, 0, visitor);
+    }
+
+    /**
+     * Replays the records of a journal that follow the ones already replayed, such as by a reader that keeps up with
+     * a journal a learner is still writing.
+     *
+     * @param filePath The path of the journal file.
+     * @param states   The number of states of the table.
+     * @param actions  The number of actions of the table.
+     * @param from     The number of records to skip.
+     * @param visitor  The visitor of the records, in the order they were logged.
+     * @return The number of records replayed, 0 if there is no journal or it belongs to a table of another shape.
+     */
+    public static long replay(String filePath, int states, int actions, long from,
+                              SparseQTable.PairVisitor visitor) {
+        if (!new File(filePath).exists())
+            return 0;
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(HEADER_SIZE, Math.min(channel.size(), 1 << 20)));
+            if (channel.read(buffer) < HEADER_SIZE)
+                return 0;
+            buffer.flip();
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getInt() != states || buffer.getInt() != actions)
+                return 0;
+            if (from > 0) {
+                buffer.clear();
+                channel.position(HEADER_SIZE + from * RECORD_SIZE);
+                if (channel.read(buffer) <= 0)
+                    return 0;
+                buffer.flip();
+            }
+            long replayed = 0;
+            do {
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    int state = buffer.getInt();
+                    int action = buffer.getShort();
+                    visitor.visit(state, action, buffer.getDouble());
+                    replayed++;
+                }
+                buffer.compact();
+            } while (channel.read(buffer) > 0 && buffer.flip() != null);
+            return replayed;
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not replay Q-update journal...");
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * The body of the committer thread: commits the records that have waited longer than the commit interval.
+     */
+    private void commitPeriodically() {
+        while (this.running) {
+            LockSupport.parkNanos(this.commitNanos);
+            synchronized (this) {
+                if (this.pending.position() > 0 && System.nanoTime() - this.pendingSince >= this.commitNanos)
+                    this.commit();
+            }
+        }
+    }
+}
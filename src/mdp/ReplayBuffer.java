@@ -0,0 +1,190 @@
+package mdp;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * The ReplayBuffer class stores the most recent transitions experienced by a learner so they can be replayed later.
+ * Transitions are kept in parallel primitive arrays indexed by slot, and once the buffer is full the oldest slot is
+ * overwritten. Neither adding nor sampling allocates memory.
+ */
+public class ReplayBuffer {
+
+    private final int[] states;
+    private final int[] actions;
+    private final double[] rewards;
+    private final int[] nextStates;
+    private final boolean[] terminals;
+    private int size;
+    private int next;
+
+    /**
+     * Constructs an empty replay buffer.
+     *
+     * @param capacity The maximum number of transitions kept.
+     */
+    public ReplayBuffer(int capacity) {
+        this.states = new int[capacity];
+        this.actions = new int[capacity];
+        this.rewards = new double[capacity];
+        this.nextStates = new int[capacity];
+        this.terminals = new boolean[capacity];
+        this.size = 0;
+        this.next = 0;
+    }
+
+    /**
+     * Adds a transition, overwriting the oldest one when the buffer is full.
+     *
+     * @param state     The state where the action was performed.
+     * @param action    The action performed.
+     * @param reward    The reward received.
+     * @param nextState The state reached.
+     * @param terminal  True if the transition ended the episode.
+     */
+    public void add(Object state, Object action, double reward, Object nextState, boolean terminal) {
+        this.add(((Enum<?>) state).ordinal(), ((Enum<?>) action).ordinal(), reward, ((Enum<?>) nextState).ordinal(),
+                terminal);
+    }
+
+    /**
+     * Adds a transition, overwriting the oldest one when the buffer is full.
+     *
+     * @param state     The ordinal of the state where the action was performed.
+     * @param action    The ordinal of the action performed.
+     * @param reward    The reward received.
+     * @param nextState The ordinal of the state reached.
+     * @param terminal  True if the transition ended the episode.
+     */
+    public void add(int state, int action, double reward, int nextState, boolean terminal) {
+        this.states[this.next] = state;
+        this.actions[this.next] = action;
+        this.rewards[this.next] = reward;
+        this.nextStates[this.next] = nextState;
+        this.terminals[this.next] = terminal;
+        this.next = (this.next + 1) % this.states.length;
+        if (this.size < this.states.length) {
+            this.size++;
+        }
+    }
+
+    /**
+     * Samples the slot of a stored transition uniformly at random.
+     *
+     * @param random The random generator to use.
+     * @return The slot of the sampled transition.
+     */
+    public int sample(Random random) {
+        return random.nextInt(this.size);
+    }
+
+    /**
+     * Writes the stored transitions in binary, for a training snapshot.
+     *
+     * @param out The stream.
+     * @throws IOException If the stream cannot be written.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(this.states.length);
+        out.writeInt(this.size);
+        out.writeInt(this.next);
+        for (int i = 0; i < this.size; i++) {
+            out.writeInt(this.states[i]);
+            out.writeInt(this.actions[i]);
+            out.writeDouble(this.rewards[i]);
+            out.writeInt(this.nextStates[i]);
+            out.writeBoolean(this.terminals[i]);
+        }
+    }
+
+    /**
+     * Replaces the stored transitions with the ones written by {@link #writeTo}, if the capacities match.
+     *
+     * @param in The stream.
+     * @return True if the transitions were restored, false if the capacities differ.
+     * @throws IOException If the stream cannot be read.
+     */
+    boolean readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != this.states.length)
+            return false;
+        this.size = in.readInt();
+        this.next = in.readInt();
+        for (int i = 0; i < this.size; i++) {
+            this.states[i] = in.readInt();
+            this.actions[i] = in.readInt();
+            this.rewards[i] = in.readDouble();
+            this.nextStates[i] = in.readInt();
+            this.terminals[i] = in.readBoolean();
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the state ordinal of a stored transition.
+     *
+     * @param index The slot of the transition.
+     * @return The state ordinal.
+     */
+    public int getState(int index) {
+        return this.states[index];
+    }
+
+    /**
+     * Retrieves the action ordinal of a stored transition.
+     *
+     * @param index The slot of the transition.
+     * @return The action ordinal.
+     */
+    public int getAction(int index) {
+        return this.actions[index];
+    }
+
+    /**
+     * Retrieves the reward of a stored transition.
+     *
+     * @param index The slot of the transition.
+     * @return The reward.
+     */
+    public double getReward(int index) {
+        return this.rewards[index];
+    }
+
+    /**
+     * Retrieves the next state ordinal of a stored transition.
+     *
+     * @param index The slot of the transition.
+     * @return The next state ordinal.
+     */
+    public int getNextState(int index) {
+        return this.nextStates[index];
+    }
+
+    /**
+     * Checks whether a stored transition ended the episode.
+     *
+     * @param index The slot of the transition.
+     * @return True if the transition is terminal, false otherwise.
+     */
+    public boolean isTerminal(int index) {
+        return this.terminals[index];
+    }
+
+    /**
+     * Retrieves the number of transitions stored.
+     *
+     * @return The number of transitions.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Removes all the transitions.
+     */
+    public void clear() {
+        this.size = 0;
+        this.next = 0;
+    }
+}
@@ -0,0 +1,104 @@
+package mdp;
+
+import torcs.Constants;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The SharedQTableBenchmark class measures the update throughput of several {@link QLearningWorker} threads training a
+ * single {@link AtomicQTable}. It runs the same synthetic steering workload with 1, 2, 4, ... threads up to the number
+ * of available cores and prints the updates per second and the speedup over one thread.
+ * <p>
+ * Usage: {@code java mdp.SharedQTableBenchmark [durationMillis]}
+ */
+public class SharedQTableBenchmark {
+
+    private static final int DEFAULT_DURATION = 2000;
+
+    /**
+     * The main entry point of the benchmark.
+     *
+     * @param args The command-line arguments.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int duration = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DURATION;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        // Warm up the JIT before the measured runs
+        run(1, duration / 2);
+
+        double baseline = run(1, duration);
+        report(1, baseline, baseline);
+        int threads = 1;
+        while (threads < cores) {
+            threads = Math.min(threads * 2, cores);
+            report(threads, run(threads, duration), baseline);
+        }
+    }
+
+    /**
+     * Prints the result of a run.
+     *
+     * @param threads    The number of worker threads.
+     * @param throughput The measured updates per second.
+     * @param baseline   The updates per second of the single-threaded run.
+     */
+    private static void report(int threads, double throughput, double baseline) {
+        System.out.println("Threads: " + threads + "\t"
+                + "Updates/s: " + (long) throughput + "\t"
+                + "Speedup: " + Constants.round(throughput / baseline, 2));
+    }
+
+    /**
+     * Runs the workload with the specified number of threads sharing one table.
+     *
+     * @param threads  The number of worker threads.
+     * @param duration The duration of the run in milliseconds.
+     * @return The measured updates per second.
+     */
+    private static double run(int threads, int duration) throws InterruptedException {
+        SteerControl.States[] states = SteerControl.States.values();
+        AtomicQTable table = new AtomicQTable(states.length, SteerControl.Actions.values().length);
+        LongAdder updates = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        long[] deadline = new long[1];
+
+        for (int i = 0; i < threads; i++) {
+            long seed = 31L * i + 17;
+            workers[i] = new Thread(() -> {
+                QLearningWorker worker = new QLearningWorker(Constants.ControlSystems.STEERING_CONTROL_SYSTEM, table, seed);
+                Random environment = new Random(seed);
+                SteerControl.States previous = states[environment.nextInt(states.length)];
+                Object action = SteerControl.Actions.TURN_C;
+                long count = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (System.nanoTime() < deadline[0]) {
+                    for (int j = 0; j < 256; j++) {
+                        SteerControl.States current = states[environment.nextInt(states.length)];
+                        action = worker.update(previous, current, action, environment.nextDouble() * 2.0);
+                        previous = current;
+                    }
+                    count += 256;
+                }
+                updates.add(count);
+            });
+            workers[i].start();
+        }
+
+        long begin = System.nanoTime();
+        deadline[0] = begin + duration * 1_000_000L;
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        return updates.sum() / (elapsed / 1e9);
+    }
+}
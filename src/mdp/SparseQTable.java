@@ -0,0 +1,291 @@
+package mdp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * The SparseQTable class is a Q-table that only stores the state-action pairs that have been written, for state spaces
+ * where most states are never visited. Pairs are packed into a {@code long} key and kept in an open-addressing hash
+ * map with linear probing over primitive arrays, so reads and writes never box, and unwritten pairs read as the
+ * default value. Memory is proportional to the number of written pairs.
+ * <p>
+ * The table is saved as a binary file: a header with a magic number, the number of states, the number of actions,
+ * the default value and the number of pairs, followed by the key and the value of every pair.
+ */
+public class SparseQTable implements QTable {
+
+    private static final int MAGIC = 0x53515431; // SQT1
+    private static final long EMPTY = -1L;
+    private static final double MAX_LOAD = 0.6;
+
+    private final int states;
+    private final int actions;
+    private final double defaultValue;
+    private long[] keys;
+    private double[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * Constructs an empty table where every pair reads as zero.
+     *
+     * @param states  The number of states.
+     * @param actions The number of actions.
+     */
+    public SparseQTable(int states, int actions) {
+        this(states, actions, 0.0, 1024);
+    }
+
+    /**
+     * Constructs an empty table.
+     *
+     * @param states        The number of states.
+     * @param actions       The number of actions.
+     * @param defaultValue  The Q-value of the pairs never written.
+     * @param expectedPairs The number of pairs expected to be written, to size the table.
+     */
+    public SparseQTable(int states, int actions, double defaultValue, int expectedPairs) {
+        this.states = states;
+        this.actions = actions;
+        this.defaultValue = defaultValue;
+        this.allocate(Integer.highestOneBit(Math.max(16, (int) (expectedPairs / MAX_LOAD)) - 1) << 1);
+    }
+
+    /**
+     * Retrieves the number of states of the table.
+     *
+     * @return The number of states.
+     */
+    @Override
+    public int stateCount() {
+        return this.states;
+    }
+
+    /**
+     * Retrieves the number of actions of the table.
+     *
+     * @return The number of actions.
+     */
+    @Override
+    public int actionCount() {
+        return this.actions;
+    }
+
+    /**
+     * Retrieves the Q-value of a state-action pair.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @return The Q-value, or the default value if the pair was never written.
+     */
+    @Override
+    public double get(int state, int action) {
+        long key = keyOf(state, action);
+        for (int slot = slotOf(key, this.mask); ; slot = (slot + 1) & this.mask) {
+            long current = this.keys[slot];
+            if (current == key)
+                return this.values[slot];
+            if (current == EMPTY)
+                return this.defaultValue;
+        }
+    }
+
+    /**
+     * Sets the Q-value of a state-action pair.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @param value  The new Q-value.
+     */
+    @Override
+    public void set(int state, int action, double value) {
+        long key = keyOf(state, action);
+        int slot = slotOf(key, this.mask);
+        while (this.keys[slot] != EMPTY && this.keys[slot] != key) {
+            slot = (slot + 1) & this.mask;
+        }
+        this.values[slot] = value;
+        if (this.keys[slot] == EMPTY) {
+            this.keys[slot] = key;
+            if (++this.size > this.resizeThreshold)
+                this.rehash(this.keys.length << 1);
+        }
+    }
+
+    /**
+     * Retrieves the number of pairs written.
+     *
+     * @return The number of stored pairs.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Retrieves the Q-value of the pairs never written.
+     *
+     * @return The default value.
+     */
+    public double getDefaultValue() {
+        return this.defaultValue;
+    }
+
+    /**
+     * Visits every stored pair, in no particular order.
+     *
+     * @param visitor The visitor of the pairs.
+     */
+    public void forEach(PairVisitor visitor) {
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            long key = this.keys[slot];
+            if (key != EMPTY)
+                visitor.visit((int) (key >>> 32), (int) key, this.values[slot]);
+        }
+    }
+
+    /**
+     * Saves the stored pairs to a file, writing it aside and moving it into place so a crash never leaves a partial
+     * table behind.
+     *
+     * @param filePath The file path.
+     */
+    public void save(String filePath) {
+        File path = new File(filePath);
+        File tmp = new File(filePath + ".tmp" + Thread.currentThread().getId());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(this.states);
+                out.writeInt(this.actions);
+                out.writeDouble(this.defaultValue);
+                out.writeInt(this.size);
+                for (int slot = 0; slot < this.keys.length; slot++) {
+                    if (this.keys[slot] != EMPTY) {
+                        out.writeLong(this.keys[slot]);
+                        out.writeDouble(this.values[slot]);
+                    }
+                }
+            }
+            Files.move(tmp.toPath(), path.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not save sparse Q-table in .bin file...");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads a table saved in a file.
+     *
+     * @param filePath The file path.
+     * @return The table, or null if there is none or the file is not a sparse Q-table.
+     */
+    public static SparseQTable load(String filePath) {
+        File file = new File(filePath);
+        if (!file.exists())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                System.out.println("ERROR!!! -> " + filePath + " is not a sparse Q-table...");
+                return null;
+            }
+            int states = in.readInt();
+            int actions = in.readInt();
+            double defaultValue = in.readDouble();
+            int pairs = in.readInt();
+            SparseQTable table = new SparseQTable(states, actions, defaultValue, pairs);
+            for (int i = 0; i < pairs; i++) {
+                long key = in.readLong();
+                table.set((int) (key >>> 32), (int) key, in.readDouble());
+            }
+            return table;
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not load sparse Q-table from .bin file...");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Allocates empty arrays of the specified capacity.
+     *
+     * @param capacity The number of slots, a power of two.
+     */
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        Arrays.fill(this.keys, EMPTY);
+        this.values = new double[capacity];
+        this.mask = capacity - 1;
+        this.resizeThreshold = (int) (capacity * MAX_LOAD);
+    }
+
+    /**
+     * Moves every stored pair into larger arrays.
+     *
+     * @param capacity The new number of slots, a power of two.
+     */
+    private void rehash(int capacity) {
+        long[] oldKeys = this.keys;
+        double[] oldValues = this.values;
+        this.allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key == EMPTY)
+                continue;
+            int slot = slotOf(key, this.mask);
+            while (this.keys[slot] != EMPTY) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.keys[slot] = key;
+            this.values[slot] = oldValues[i];
+        }
+    }
+
+    /**
+     * Packs a state-action pair into a key.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @return The key, never {@link #EMPTY} because ordinals are not negative.
+     */
+    private static long keyOf(int state, int action) {
+        return ((long) state << 32) | (action & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Finds the first slot to probe for a key, scrambling its bits so consecutive states spread over the table.
+     *
+     * @param key  The key.
+     * @param mask The number of slots minus one.
+     * @return The slot index.
+     */
+    private static int slotOf(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * The PairVisitor interface receives the stored pairs of a table.
+     */
+    @FunctionalInterface
+    public interface PairVisitor {
+
+        /**
+         * Visits a stored pair.
+         *
+         * @param state  The state ordinal.
+         * @param action The action ordinal.
+         * @param value  The Q-value.
+         */
+        void visit(int state, int action, double value);
+    }
+}
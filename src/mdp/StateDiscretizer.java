@@ -0,0 +1,317 @@
+package mdp;
+
+import torcs.SensorModel;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.function.ToDoubleFunction;
+
+import static torcs.Constants.SEPARATOR;
+
+/**
+ * The StateDiscretizer class maps sensor readings to a discrete state: every feature, such as the track position or
+ * the index of the longest track edge sensor, is cut into bins by a list of edges, and the bins of the features are
+ * packed into one index in mixed radix, the first feature being the most significant. The features and their edges
+ * are read from a file, so the state space can be changed without recompiling.
+ * <p>
+ * The bin of a value is the number of edges lower than or equal to it. It is found with a table precomputed over a
+ * uniform grid fine enough that every cell holds about one edge, so a lookup is one table read and one or two
+ * comparisons; when the edges are too uneven for a small table, with a branchless binary search. Encoding never
+ * allocates memory.
+ * <p>
+ * The file has one line per feature, the name of the feature followed by its edges in increasing order, separated by
+ * commas. Lines starting with {@code #} are comments. The features are {@code speed}, {@code angle}, {@code trackPos},
+ * {@code lateralSpeed}, {@code rpm}, {@code gear}, {@code longestEdge} (the index of the longest track edge sensor)
+ * and {@code edge<i>} (the track edge sensor {@code i}).
+ */
+public class StateDiscretizer {
+
+    private static final int MAX_TABLE_CELLS = 4096;
+    private static final int TRACK_EDGE_SENSORS = 19;
+
+    private final String[] names;
+    private final ToDoubleFunction<SensorModel>[] features;
+    private final Bins[] bins;
+    private final int[] strides;
+    private final int states;
+
+    /**
+     * Constructs a discretizer.
+     *
+     * @param names The names of the features.
+     * @param edges The edges of every feature, in increasing order.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public StateDiscretizer(String[] names, double[][] edges) {
+        this.names = names.clone();
+        this.features = new ToDoubleFunction[names.length];
+        this.bins = new Bins[names.length];
+        this.strides = new int[names.length];
+        long states = 1;
+        for (int i = names.length - 1; i >= 0; i--) {
+            this.features[i] = featureOf(names[i]);
+            this.bins[i] = new Bins(edges[i]);
+            this.strides[i] = (int) states;
+            states *= this.bins[i].count;
+            if (states > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Too many states");
+        }
+        this.states = (int) states;
+    }
+
+    /**
+     * Returns the discretization of the steering states: one state per track edge sensor, the longest one.
+     *
+     * @return The discretizer.
+     */
+    public static StateDiscretizer steerDefault() {
+        double[] edges = new double[SteerControl.States.values().length - 1];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = i + 0.5;
+        }
+        return new StateDiscretizer(new String[]{"longestEdge"}, new double[][]{edges});
+    }
+
+    /**
+     * Loads a discretizer from a file.
+     *
+     * @param filePath The path of the file.
+     * @param fallback The discretizer returned if the file does not exist or is not valid.
+     * @return The discretizer.
+     */
+    public static StateDiscretizer load(String filePath, StateDiscretizer fallback) {
+        if (!new File(filePath).exists())
+            return fallback;
+        List<String> names = new ArrayList<>();
+        List<double[]> edges = new ArrayList<>();
+        try (Scanner file = new Scanner(new File(filePath))) {
+            while (file.hasNextLine()) {
+                String line = file.nextLine().trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] row = line.split(SEPARATOR);
+                double[] featureEdges = new double[row.length - 1];
+                for (int i = 1; i < row.length; i++) {
+                    featureEdges[i - 1] = Double.parseDouble(row[i].trim());
+                }
+                names.add(row[0].trim());
+                edges.add(featureEdges);
+            }
+            return new StateDiscretizer(names.toArray(new String[0]), edges.toArray(new double[0][]));
+        } catch (FileNotFoundException | IllegalArgumentException e) {
+            System.out.println("ERROR!!! -> Could not load discretizer from " + filePath + "...");
+            e.printStackTrace();
+            return fallback;
+        }
+    }
+
+    /**
+     * Maps sensor readings to a state.
+     *
+     * @param sensors The sensor readings from the car.
+     * @return The state index, between 0 and {@link #getStates()}.
+     */
+    public int encode(SensorModel sensors) {
+        int state = 0;
+        for (int i = 0; i < this.features.length; i++) {
+            state += this.bins[i].of(this.features[i].applyAsDouble(sensors)) * this.strides[i];
+        }
+        return state;
+    }
+
+    /**
+     * Retrieves the bin of a feature in a state.
+     *
+     * @param state   The state index.
+     * @param feature The index of the feature.
+     * @return The bin.
+     */
+    public int binOf(int state, int feature) {
+        return state / this.strides[feature] % this.bins[feature].count;
+    }
+
+    /**
+     * Describes a state by the bin of every feature, such as {@code trackPos=2|longestEdge=9}.
+     *
+     * @param state The state index.
+     * @return The description.
+     */
+    public String describe(int state) {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < this.names.length; i++) {
+            if (i > 0)
+                description.append('|');
+            description.append(this.names[i]).append('=').append(this.binOf(state, i));
+        }
+        return description.toString();
+    }
+
+    /**
+     * Retrieves the number of states.
+     *
+     * @return The product of the number of bins of every feature.
+     */
+    public int getStates() {
+        return this.states;
+    }
+
+    /**
+     * Retrieves the number of features.
+     *
+     * @return The number of features.
+     */
+    public int getFeatures() {
+        return this.features.length;
+    }
+
+    /**
+     * Returns the reading of a feature.
+     *
+     * @param name The name of the feature.
+     * @return The function that reads the feature from the sensors.
+     * @throws IllegalArgumentException If the feature is unknown or its track edge sensor does not exist.
+     */
+    private static ToDoubleFunction<SensorModel> featureOf(String name) {
+        switch (name) {
+            case "speed":
+                return SensorModel::getSpeed;
+            case "angle":
+                return SensorModel::getAngleToTrackAxis;
+            case "trackPos":
+                return SensorModel::getTrackPosition;
+            case "lateralSpeed":
+                return SensorModel::getLateralSpeed;
+            case "rpm":
+                return SensorModel::getRPM;
+            case "gear":
+                return SensorModel::getGear;
+            case "longestEdge":
+                return StateDiscretizer::longestEdge;
+        }
+        if (name.startsWith("edge")) {
+            int sensor = Integer.parseInt(name.substring("edge".length()));
+            if (sensor < 0 || sensor >= TRACK_EDGE_SENSORS)
+                throw new IllegalArgumentException("Unknown track edge sensor " + name);
+            return sensors -> sensors.getTrackEdgeSensors()[sensor];
+        }
+        throw new IllegalArgumentException("Unknown feature " + name);
+    }
+
+    /**
+     * Finds the longest track edge sensor, the first one on ties.
+     *
+     * @param sensors The sensor readings from the car.
+     * @return The index of the sensor, or the middle one if every sensor reads out of the track.
+     */
+    private static double longestEdge(SensorModel sensors) {
+        double[] distances = sensors.getTrackEdgeSensors();
+        double maxValue = -1;
+        int index = distances.length / 2;
+        for (int i = 0; i < distances.length; i++) {
+            if (maxValue < distances[i]) {
+                maxValue = distances[i];
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * The Bins class finds the bin of a value among the edges of a feature.
+     */
+    private static class Bins {
+
+        final double[] edges;
+        final int count;
+        final double low;
+        final double scale;
+        final int[] table;
+
+        /**
+         * Precomputes the lookup table of the edges, if a small one is enough.
+         *
+         * @param edges The edges, in increasing order.
+         */
+        Bins(double[] edges) {
+            this.edges = edges.clone();
+            this.count = edges.length + 1;
+            double minGap = Double.MAX_VALUE;
+            for (int i = 1; i < edges.length; i++) {
+                if (!(edges[i] > edges[i - 1]))
+                    throw new IllegalArgumentException("Edges not in increasing order");
+                minGap = Math.min(minGap, edges[i] - edges[i - 1]);
+            }
+            if (edges.length == 0) {
+                this.low = 0;
+                this.scale = 0;
+                this.table = null;
+                return;
+            }
+            this.low = edges[0];
+            double span = edges[edges.length - 1] - edges[0];
+            // Cells no wider than the closest edges hold one edge at most, rounding aside
+            double cells = edges.length == 1 ? 1 : Math.ceil(span / minGap) + 1;
+            if (cells > MAX_TABLE_CELLS) {
+                this.scale = 0;
+                this.table = null;
+                return;
+            }
+            this.scale = edges.length == 1 ? 0 : (cells - 1) / span;
+            this.table = new int[(int) cells];
+            // Edges are placed with the same rounding as the values, so the edges of earlier cells are always lower
+            for (double edge : edges) {
+                for (int cell = this.cellOf(edge) + 1; cell < this.table.length; cell++) {
+                    this.table[cell]++;
+                }
+            }
+        }
+
+        /**
+         * Finds the bin of a value.
+         *
+         * @param value The value.
+         * @return The number of edges lower than or equal to the value.
+         */
+        int of(double value) {
+            if (this.edges.length == 0 || !(value >= this.low))
+                return 0;
+            if (this.table == null)
+                return this.search(value);
+            int bin = this.table[this.cellOf(value)];
+            while (bin < this.edges.length && this.edges[bin] <= value) {
+                bin++;
+            }
+            return bin;
+        }
+
+        /**
+         * Finds the cell of the lookup table of a value.
+         *
+         * @param value The value, not lower than the first edge.
+         * @return The cell.
+         */
+        private int cellOf(double value) {
+            return Math.min((int) ((value - this.low) * this.scale), this.table.length - 1);
+        }
+
+        /**
+         * Finds the bin of a value with a branchless binary search.
+         *
+         * @param value The value, not lower than the first edge.
+         * @return The number of edges lower than or equal to the value.
+         */
+        private int search(double value) {
+            int base = 0;
+            int length = this.edges.length;
+            while (length > 1) {
+                int half = length >>> 1;
+                base = this.edges[base + half] <= value ? base + half : base;
+                length -= half;
+            }
+            return base + 1;
+        }
+    }
+}
@@ -5,23 +5,65 @@ import torcs.SensorModel;
 
 public class SteerControl {
 
+    private static final States[] STATES = States.values();
+    private static final double[] ACTION_VALUES = actionValues();
+    private static final StateDiscretizer DISCRETIZER = loadDiscretizer();
+
     public static States evaluateSteerState(SensorModel currentSensors) {
-        double maxValue = -1;
-        int index = -1;
-        String state = "STATE_";
-
-        double[] distances = currentSensors.getTrackEdgeSensors();
-        for (int i = 0; i < distances.length; i++) {
-            if (maxValue < distances[i]) {
-                maxValue = distances[i];
-                index = i;
-            }
+        return STATES[evaluateSteerOrdinal(currentSensors)];
+    }
+
+    /**
+     * Finds the state of the car without building its name, with the discretizer of the steering states: by default
+     * the index of the longest track edge sensor.
+     *
+     * @param currentSensors The sensor readings from the car.
+     * @return The state ordinal.
+     */
+    public static int evaluateSteerOrdinal(SensorModel currentSensors) {
+        return DISCRETIZER.encode(currentSensors);
+    }
+
+    /**
+     * Retrieves the discretizer of the steering states.
+     *
+     * @return The discretizer.
+     */
+    public static StateDiscretizer getDiscretizer() {
+        return DISCRETIZER;
+    }
+
+    /**
+     * Loads the discretizer of the steering states, if one is configured and the steering Q-table can hold its states.
+     * A discretizer with more states than the table is rejected with an error, and the default one used instead; one
+     * with fewer states leaves the last rows unvisited.
+     *
+     * @return The discretizer.
+     */
+    private static StateDiscretizer loadDiscretizer() {
+        StateDiscretizer discretizer = StateDiscretizer.load(Constants.STEER_DISCRETIZER_PATH,
+                StateDiscretizer.steerDefault());
+        if (discretizer.getStates() > STATES.length) {
+            System.out.println("ERROR!!! -> The steering discretizer in " + Constants.STEER_DISCRETIZER_PATH + " has "
+                    + discretizer.getStates() + " states, over the cap of " + STATES.length
+                    + " states of the steering Q-table; using the default discretizer instead...");
+            return StateDiscretizer.steerDefault();
         }
-        if (index != -1) {
-            state = state + index;
-            return States.valueOf(state);
+        return discretizer;
+    }
+
+    /**
+     * Computes the steering value of every action once.
+     *
+     * @return The steering values, in action ordinal order.
+     */
+    private static double[] actionValues() {
+        Actions[] actions = Actions.values();
+        double[] values = new double[actions.length];
+        for (int i = 0; i < actions.length; i++) {
+            values[i] = steerAction2Double(actions[i]);
         }
-        return States.STATE_9;
+        return values;
     }
 
     public static double steerAction2Double(Actions actionSteer) {
@@ -43,6 +85,23 @@ public class SteerControl {
         return 0.0;
     }
 
+    /**
+     * Maps a steering command to the action with the closest steering value, such as the command of the driving
+     * instructor or a recorded command.
+     *
+     * @param steering The steering command.
+     * @return The action ordinal.
+     */
+    public static int nearestAction(double steering) {
+        double[] values = ACTION_VALUES;
+        int nearest = 0;
+        for (int action = 1; action < values.length; action++) {
+            if (Math.abs(steering - values[action]) < Math.abs(steering - values[nearest]))
+                nearest = action;
+        }
+        return nearest;
+    }
+
     public static double calculateReward(SensorModel previous, SensorModel current) {
         double reward = 0.0;
 //
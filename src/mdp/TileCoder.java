@@ -0,0 +1,73 @@
+package mdp;
+
+/**
+ * The TileCoder class maps a vector of continuous features to the set of active tiles of several overlapping
+ * tilings. Every tiling is a uniform grid over the feature ranges, displaced by a fraction of a tile using the
+ * asymmetric offsets (1, 3, 5, ...), and tile coordinates are hashed into a fixed memory size.
+ */
+public class TileCoder {
+
+    private final double[] min;
+    private final double[] scale;
+    private final int bins;
+    private final int tilings;
+    private final int memorySize;
+
+    /**
+     * Constructs a tile coder.
+     *
+     * @param min        The minimum value of each feature.
+     * @param max        The maximum value of each feature.
+     * @param bins       The number of tiles per feature in each tiling.
+     * @param tilings    The number of tilings.
+     * @param memorySize The number of distinct tile indices.
+     */
+    public TileCoder(double[] min, double[] max, int bins, int tilings, int memorySize) {
+        this.min = min.clone();
+        this.scale = new double[min.length];
+        for (int i = 0; i < min.length; i++) {
+            this.scale[i] = bins / (max[i] - min[i]);
+        }
+        this.bins = bins;
+        this.tilings = tilings;
+        this.memorySize = memorySize;
+    }
+
+    /**
+     * Computes the active tile of every tiling for the specified features.
+     *
+     * @param features The feature values. Values outside the ranges are clamped.
+     * @param tiles    The output array, with one tile index per tiling.
+     */
+    public void activeTiles(double[] features, int[] tiles) {
+        for (int t = 0; t < this.tilings; t++) {
+            int hash = t;
+            for (int d = 0; d < features.length; d++) {
+                double position = (features[d] - this.min[d]) * this.scale[d];
+                position = Math.max(0.0, Math.min(this.bins - 1e-9, position));
+                int coordinate = (int) (position * this.tilings + t * (2 * d + 1)) / this.tilings;
+                hash = hash * 0x9E3779B1 + coordinate;
+            }
+            hash ^= hash >>> 16;
+            tiles[t] = (hash & 0x7FFFFFFF) % this.memorySize;
+        }
+    }
+
+    /**
+     * Retrieves the number of tilings.
+     *
+     * @return The number of tilings.
+     */
+    public int getTilings() {
+        return this.tilings;
+    }
+
+    /**
+     * Retrieves the number of distinct tile indices.
+     *
+     * @return The memory size.
+     */
+    public int getMemorySize() {
+        return this.memorySize;
+    }
+}
@@ -0,0 +1,306 @@
+package mdp;
+
+import torcs.SensorModel;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static torcs.Constants.*;
+
+/**
+ * The TileCodingQLearning class is a steering learner that approximates the Q-function linearly over tile-coded
+ * continuous features (track position, angle, speed and three track edge sensors) instead of the discrete
+ * {@link SteerControl.States}. It exposes the same methods as {@link QLearning}, with {@link SensorModel} readings
+ * as states, so it can be used wherever the tabular learner is.
+ * <p>
+ * Weights are stored in one flat array laid out as {@code tile * actions + action}: evaluating all the actions of a
+ * state sums one contiguous row per tiling, a loop the JIT compiler vectorizes.
+ */
+public class TileCodingQLearning {
+
+    private static final int BINS = 8;
+    private static final int TILINGS = 8;
+    private static final int MEMORY_SIZE = 1 << 16;
+    private static final int[] EDGE_SENSORS = {4, 9, 14};
+
+    private final TileCoder tileCoder;
+    private final double[] weights;
+    private final SteerControl.Actions[] possibleActions;
+    private final int actions;
+    private final double[] features;
+    private final double[] qValues;
+    private final int[] candidates;
+    private int[] lastTiles;
+    private int[] currentTiles;
+    private Object tiledState;
+    private int lastAction;
+    private double epsilon;
+    private double epsilonDecay;
+    private double learningRate;
+    private int epochs;
+    private Random random;
+    private String weightsPath;
+
+    /**
+     * Constructs a steering learner, loading its weights if they were saved before.
+     */
+    public TileCodingQLearning() {
+        this.tileCoder = new TileCoder(
+                new double[]{-1.0, -Math.PI / 2, 0.0, 0.0, 0.0, 0.0},
+                new double[]{1.0, Math.PI / 2, 200.0, 200.0, 200.0, 200.0},
+                BINS, TILINGS, MEMORY_SIZE);
+        this.possibleActions = SteerControl.Actions.values();
+        this.actions = this.possibleActions.length;
+        this.weights = new double[MEMORY_SIZE * this.actions];
+        this.features = new double[6];
+        this.qValues = new double[this.actions];
+        this.candidates = new int[this.actions];
+        this.lastTiles = new int[TILINGS];
+        this.currentTiles = new int[TILINGS];
+        this.lastAction = -1;
+
+        this.epsilon = INITIAL_EPSILON;
+        this.epsilonDecay = INITIAL_EPSILON / (double) (RANGE_EPOCHS_END - RANGE_EPOCHS_INITIAL);
+        this.learningRate = INITIAL_LEARNING_RATE;
+        this.epochs = 0;
+        this.random = new Random(System.currentTimeMillis());
+
+        this.weightsPath = STEER_WEIGHTS_PATH;
+        if (new File(this.weightsPath).exists())
+            this.loadWeights();
+    }
+
+    /**
+     * Updates the weights for the last state-action pair based on the reward received.
+     *
+     * @param lastState       The last sensor readings.
+     * @param currentState    The current sensor readings.
+     * @param actionPerformed The action performed.
+     * @param reward          The reward received.
+     * @return The next action to take.
+     */
+    public Object update(Object lastState, Object currentState, Object actionPerformed, double reward) {
+        if (lastState != null) {
+            if (lastState != this.tiledState) {
+                this.tileCoder.activeTiles(this.features((SensorModel) lastState), this.currentTiles);
+            }
+            int[] swap = this.lastTiles;
+            this.lastTiles = this.currentTiles;
+            this.currentTiles = swap;
+            this.lastAction = ((SteerControl.Actions) actionPerformed).ordinal();
+        }
+        this.tileCoder.activeTiles(this.features((SensorModel) currentState), this.currentTiles);
+        this.tiledState = currentState;
+        this.evaluate(this.currentTiles);
+
+        if (lastState != null) {
+            double target = reward + DISCOUNT_FACTOR * this.max(this.qValues);
+            this.applyTarget(this.lastTiles, this.lastAction, target);
+            this.evaluate(this.currentTiles);
+        }
+        return this.selectAction();
+    }
+
+    /**
+     * Updates the weights for the last state-action pair, which ended the episode, based on the reward received.
+     *
+     * @param lastAction The last action.
+     * @param reward     The reward received.
+     */
+    public void lastUpdate(Object lastAction, double reward) {
+        if (this.tiledState != null) {
+            this.applyTarget(this.currentTiles, ((SteerControl.Actions) lastAction).ordinal(), reward);
+        }
+        this.tiledState = null;
+    }
+
+    /**
+     * Returns the next action to take based on the current sensor readings.
+     *
+     * @param state The current sensor readings.
+     * @return The next action.
+     */
+    public Object nextAction(Object state) {
+        this.tileCoder.activeTiles(this.features((SensorModel) state), this.currentTiles);
+        this.tiledState = state;
+        this.evaluate(this.currentTiles);
+        return this.selectAction();
+    }
+
+    /**
+     * Returns the best action to take based on the current sensor readings without any randomness.
+     *
+     * @param state The current sensor readings.
+     * @return The best action.
+     */
+    public Object nextOnlyBestAction(Object state) {
+        this.tileCoder.activeTiles(this.features((SensorModel) state), this.currentTiles);
+        this.tiledState = state;
+        this.evaluate(this.currentTiles);
+        int theBest = 0;
+        for (int action = 1; action < this.actions; action++) {
+            if (this.qValues[theBest] < this.qValues[action]) {
+                theBest = action;
+            }
+        }
+        return this.possibleActions[theBest];
+    }
+
+    /**
+     * Extracts the continuous features of the sensor readings.
+     *
+     * @param sensors The sensor readings.
+     * @return The features, in a buffer reused between calls.
+     */
+    private double[] features(SensorModel sensors) {
+        double[] edges = sensors.getTrackEdgeSensors();
+        this.features[0] = sensors.getTrackPosition();
+        this.features[1] = sensors.getAngleToTrackAxis();
+        this.features[2] = sensors.getSpeed();
+        for (int i = 0; i < EDGE_SENSORS.length; i++) {
+            this.features[3 + i] = edges[EDGE_SENSORS[i]];
+        }
+        return this.features;
+    }
+
+    /**
+     * Evaluates the Q-values of every action for the specified active tiles into {@code qValues}.
+     *
+     * @param tiles The active tiles.
+     */
+    private void evaluate(int[] tiles) {
+        double[] q = this.qValues;
+        double[] w = this.weights;
+        int n = this.actions;
+        for (int a = 0; a < n; a++) {
+            q[a] = 0.0;
+        }
+        for (int t = 0; t < tiles.length; t++) {
+            int row = tiles[t] * n;
+            for (int a = 0; a < n; a++) {
+                q[a] += w[row + a];
+            }
+        }
+    }
+
+    /**
+     * Moves the Q-value of an action in the specified tiles towards a target.
+     *
+     * @param tiles  The active tiles of the state.
+     * @param action The action ordinal.
+     * @param target The target Q-value.
+     */
+    private void applyTarget(int[] tiles, int action, double target) {
+        double qValue = 0.0;
+        for (int t = 0; t < tiles.length; t++) {
+            qValue += this.weights[tiles[t] * this.actions + action];
+        }
+        double step = this.learningRate / tiles.length * (target - qValue);
+        for (int t = 0; t < tiles.length; t++) {
+            this.weights[tiles[t] * this.actions + action] += step;
+        }
+    }
+
+    /**
+     * Selects an action with an epsilon-greedy policy over the evaluated Q-values.
+     *
+     * @return The selected action.
+     */
+    private Object selectAction() {
+        if (this.random.nextDouble() < this.epsilon) {
+            return this.possibleActions[this.random.nextInt(this.actions)];
+        }
+        double maxValue = this.max(this.qValues);
+        int count = 0;
+        for (int action = 0; action < this.actions; action++) {
+            if (this.qValues[action] == maxValue) {
+                this.candidates[count++] = action;
+            }
+        }
+        return this.possibleActions[this.candidates[this.random.nextInt(count)]];
+    }
+
+    /**
+     * Returns the maximum of the values.
+     *
+     * @param values The values.
+     * @return The maximum value.
+     */
+    private double max(double[] values) {
+        double maxValue = -Double.MAX_VALUE;
+        for (double value : values) {
+            maxValue = Math.max(maxValue, value);
+        }
+        return maxValue;
+    }
+
+    /**
+     * Loads the weights from a binary file.
+     */
+    private void loadWeights() {
+        try (DataInputStream file = new DataInputStream(new BufferedInputStream(new FileInputStream(this.weightsPath)))) {
+            byte[] bytes = new byte[this.weights.length * Double.BYTES];
+            file.readFully(bytes);
+            ByteBuffer.wrap(bytes).asDoubleBuffer().get(this.weights);
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not load weights from .bin file...");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Saves the weights to a binary file.
+     */
+    public void saveTable() {
+        try (OutputStream file = new BufferedOutputStream(new FileOutputStream(this.weightsPath))) {
+            ByteBuffer bytes = ByteBuffer.allocate(this.weights.length * Double.BYTES);
+            bytes.asDoubleBuffer().put(this.weights);
+            file.write(bytes.array());
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not save weights in .bin file...");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Saves the weights and statistics to files.
+     *
+     * @param newResults The new results to be added to the statistics.
+     */
+    public void saveQTableAndStatistics(String newResults) {
+        this.epochs++;
+        this.saveTable();
+        newResults = newResults + SEPARATOR + this.epsilon + SEPARATOR + this.learningRate + SEPARATOR + this.visitedTiles();
+        QLearning.saveStatistics(STATISTICS_TRAIN_PATH, newResults);
+    }
+
+    /**
+     * Counts the tiles with at least one non-zero weight.
+     *
+     * @return The number of visited tiles.
+     */
+    private int visitedTiles() {
+        int visited = 0;
+        for (int tile = 0; tile < MEMORY_SIZE; tile++) {
+            for (int action = 0; action < this.actions; action++) {
+                if (this.weights[tile * this.actions + action] != 0.0) {
+                    visited++;
+                    break;
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Decreases the value of epsilon.
+     */
+    public void updateParams() {
+        if (this.epochs > RANGE_EPOCHS_INITIAL && this.epochs < RANGE_EPOCHS_END) {
+            this.epsilon -= this.epsilonDecay;
+        } else {
+            this.epsilon = 0.0;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package mdp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * The TrainingSnapshot class saves everything a training run needs to continue after it dies, in a single file: the
+ * Q-table, the position of the schedule (epochs, epsilon and learning rate), the state of the random generators of
+ * the learner and of the actor, the visit counts, the replay buffer and the counters of the driver. The Q-table file
+ * alone only keeps the values, so a restarted run explores again from the initial epsilon.
+ * <p>
+ * The snapshot is taken on the learner thread at the end of an episode, after the table is saved, and written aside
+ * then moved into place, so a crash leaves either the previous snapshot or the new one. A snapshot is only resumed if
+ * it is at least as recent as the Q-table file of the learner: deleting or replacing the table starts a new run.
+ * <p>
+ * With the journal of Q-updates enabled, the table file, its journal and its visit counts file already hold the
+ * Q-values and the visit counts, so the snapshot of every episode leaves them out, and the replay buffer, its largest
+ * part, is saved to a file of its own only once the learner has saved its table whole since. A resumed run then
+ * starts from the Q-values of the table and its journal, and from the visit counts and the replay buffer of the last
+ * time the table was saved whole.
+ * <p>
+ * The file is binary: a header with a magic number, the version, the control system, the number of states and the
+ * number of actions, followed by whether the Q-values and the visit counts are included, the schedule, the Q-values,
+ * the visit counts, the random generators (serialized), the replay buffer and the driver counters. The replay buffer
+ * saved aside has the same header, followed by the transitions.
+ */
+public class TrainingSnapshot {
+
+    private static final int MAGIC = 0x54534E31; // TSN1
+    private static final int VERSION = 2;
+
+    private final Random actorRandom;
+    private final int[] counters;
+
+    /**
+     * Constructs a restored snapshot.
+     *
+     * @param actorRandom The random generator of the actor.
+     * @param counters    The counters of the driver.
+     */
+    private TrainingSnapshot(Random actorRandom, int[] counters) {
+        this.actorRandom = actorRandom;
+        this.counters = counters;
+    }
+
+    /**
+     * Captures the state of a random generator, so it can be saved later while the generator keeps being used.
+     *
+     * @param random The random generator.
+     * @return The serialized generator.
+     */
+    public static byte[] stateOf(Random random) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(random);
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not serialize random generator...");
+            e.printStackTrace();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Saves a snapshot. Must run on the thread that owns the learner, between two episodes.
+     *
+     * @param filePath    The path of the snapshot file.
+     * @param learner     The learner.
+     * @param replay      The replay buffer, or null.
+     * @param actorRandom The state of the random generator of the actor, from {@link #stateOf}, or null.
+     * @param counters    The counters of the driver.
+     */
+    public static void save(String filePath, QLearning learner, ReplayBuffer replay, byte[] actorRandom,
+                            int[] counters) {
+        // The table, its journal and its visit counts file hold the Q-values and the visit counts
+        boolean whole = !learner.hasJournal();
+        if (!whole && replay != null && !isCurrent(new File(replayPathOf(filePath)), learner))
+            saveReplay(replayPathOf(filePath), learner, replay);
+        File path = new File(filePath);
+        File tmp = new File(filePath + ".tmp" + Thread.currentThread().getId());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                writeHeader(out, learner);
+                out.writeBoolean(whole);
+
+                out.writeInt(learner.getEpochs());
+                out.writeDouble(learner.getEpsilon());
+                out.writeDouble(learner.getLearningRate());
+                if (whole) {
+                    for (double value : learner.getQValues()) {
+                        out.writeDouble(value);
+                    }
+                    learner.getVisitCounts().writeTo(out);
+                }
+                writeBytes(out, stateOf(learner.getRandom()));
+                writeBytes(out, actorRandom);
+
+                // Length-prefixed, so a run with another replay capacity skips it
+                ByteArrayOutputStream transitions = new ByteArrayOutputStream();
+                if (replay != null && whole)
+                    replay.writeTo(new DataOutputStream(transitions));
+                writeBytes(out, transitions.toByteArray());
+                out.writeInt(counters.length);
+                for (int counter : counters) {
+                    out.writeInt(counter);
+                }
+            }
+            Files.move(tmp.toPath(), path.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not save training snapshot in .bin file...");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Restores a learner and its replay buffer from a snapshot, if there is one for the learner's table.
+     *
+     * @param filePath The path of the snapshot file.
+     * @param learner  The learner, not trained yet.
+     * @param replay   The replay buffer, or null.
+     * @return The rest of the snapshot, for the actor and the driver, or null if nothing was restored.
+     */
+    public static TrainingSnapshot resume(String filePath, QLearning learner, ReplayBuffer replay) {
+        File file = new File(filePath);
+        if (!file.exists() || learner.getQTablePath() == null)
+            return null;
+        if (!isCurrent(file, learner))
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (!readHeader(in, learner, filePath))
+                return null;
+            boolean whole = in.readBoolean();
+
+            int epochs = in.readInt();
+            double epsilon = in.readDouble();
+            double learningRate = in.readDouble();
+            if (whole) {
+                double[] qValues = new double[learner.getPossibleStates().length * learner.getPossibleActions().length];
+                for (int i = 0; i < qValues.length; i++) {
+                    qValues[i] = in.readDouble();
+                }
+                learner.setQValues(qValues);
+                learner.getVisitCounts().readFrom(in);
+            }
+            Random random = readRandom(in);
+            learner.restoreSchedule(epochs, epsilon, learningRate, random != null ? random : learner.getRandom());
+            Random actorRandom = readRandom(in);
+
+            byte[] transitions = new byte[in.readInt()];
+            in.readFully(transitions);
+            if (transitions.length > 0 && replay != null)
+                replay.readFrom(new DataInputStream(new ByteArrayInputStream(transitions)));
+            int[] counters = new int[in.readInt()];
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = in.readInt();
+            }
+            if (!whole && replay != null)
+                loadReplay(replayPathOf(filePath), learner, replay);
+            return new TrainingSnapshot(actorRandom, counters);
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not load training snapshot from .bin file...");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the random generator of the actor, as it was when the snapshot was taken.
+     *
+     * @return The random generator, or a new one if the snapshot has none.
+     */
+    public Random getActorRandom() {
+        return this.actorRandom != null ? this.actorRandom : new Random(System.currentTimeMillis());
+    }
+
+    /**
+     * Retrieves a counter of the driver.
+     *
+     * @param index The index of the counter, in the order they were saved.
+     * @return The counter, or 0 if the snapshot has fewer counters.
+     */
+    public int getCounter(int index) {
+        return index < this.counters.length ? this.counters[index] : 0;
+    }
+
+    /**
+     * Returns the file where the replay buffer is saved aside, when the learner has a journal.
+     *
+     * @param filePath The path of the snapshot file.
+     * @return The path of the replay buffer file.
+     */
+    static String replayPathOf(String filePath) {
+        return filePath.replace(".bin", "_Replay.bin");
+    }
+
+    /**
+     * Checks whether a file is at least as recent as the Q-table file of a learner.
+     *
+     * @param file    The file.
+     * @param learner The learner.
+     * @return True if both files exist and the file was written after the table was last saved whole.
+     */
+    private static boolean isCurrent(File file, QLearning learner) {
+        File table = new File(learner.getQTablePath());
+        return file.exists() && table.exists() && file.lastModified() >= table.lastModified();
+    }
+
+    /**
+     * Saves the replay buffer to a file of its own.
+     *
+     * @param filePath The path of the replay buffer file.
+     * @param learner  The learner.
+     * @param replay   The replay buffer.
+     */
+    private static void saveReplay(String filePath, QLearning learner, ReplayBuffer replay) {
+        File tmp = new File(filePath + ".tmp" + Thread.currentThread().getId());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                writeHeader(out, learner);
+                replay.writeTo(out);
+            }
+            Files.move(tmp.toPath(), new File(filePath).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not save replay buffer in .bin file...");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Restores the replay buffer saved to a file of its own, if it is at least as recent as the Q-table file.
+     *
+     * @param filePath The path of the replay buffer file.
+     * @param learner  The learner.
+     * @param replay   The replay buffer.
+     */
+    private static void loadReplay(String filePath, QLearning learner, ReplayBuffer replay) {
+        File file = new File(filePath);
+        if (!isCurrent(file, learner))
+            return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (readHeader(in, learner, filePath))
+                replay.readFrom(in);
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not load replay buffer from .bin file...");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the header of a snapshot file.
+     *
+     * @param out     The stream.
+     * @param learner The learner.
+     * @throws IOException If the stream cannot be written.
+     */
+    private static void writeHeader(DataOutputStream out, QLearning learner) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(learner.getSystem().ordinal());
+        out.writeInt(learner.getPossibleStates().length);
+        out.writeInt(learner.getPossibleActions().length);
+    }
+
+    /**
+     * Reads the header of a snapshot file and checks that it belongs to a learner.
+     *
+     * @param in       The stream.
+     * @param learner  The learner.
+     * @param filePath The path of the file, for the error message.
+     * @return True if the file is a snapshot of the version, control system and shape of the learner.
+     * @throws IOException If the stream cannot be read.
+     */
+    private static boolean readHeader(DataInputStream in, QLearning learner, String filePath) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            System.out.println("ERROR!!! -> " + filePath + " is not a training snapshot...");
+            return false;
+        }
+        return in.readInt() == learner.getSystem().ordinal()
+                && in.readInt() == learner.getPossibleStates().length
+                && in.readInt() == learner.getPossibleActions().length;
+    }
+
+    /**
+     * Writes a length-prefixed byte array.
+     *
+     * @param out   The stream.
+     * @param bytes The bytes, or null for none.
+     * @throws IOException If the stream cannot be written.
+     */
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes == null ? 0 : bytes.length);
+        if (bytes != null)
+            out.write(bytes);
+    }
+
+    /**
+     * Reads a random generator written with {@link #writeBytes}.
+     *
+     * @param in The stream.
+     * @return The random generator, or null if none was saved.
+     * @throws IOException If the stream cannot be read.
+     */
+    private static Random readRandom(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        if (bytes.length == 0)
+            return null;
+        try (ObjectInputStream random = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Random) random.readObject();
+        } catch (ClassNotFoundException e) {
+            System.out.println("ERROR!!! -> Could not restore random generator...");
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package mdp;
+
+/**
+ * The TransitionModel class is a tabular model of the environment learned from the transitions a learner applies:
+ * for every state-action pair, how many times it was tried, how many times it led to every next state or ended the
+ * episode, and the average reward of both outcomes. It is what {@link DynaPlanner} simulates backups from.
+ * <p>
+ * Counts are kept in dense primitive arrays indexed by ordinals, so observing a transition never allocates memory.
+ */
+public class TransitionModel {
+
+    private final int states;
+    private final int actions;
+    private final int[] counts;
+    private final int[] nextCounts;
+    private final double[] rewardSums;
+    private final int[] terminalCounts;
+    private final double[] terminalRewardSums;
+
+    /**
+     * Constructs an empty model.
+     *
+     * @param states  The number of states.
+     * @param actions The number of actions.
+     */
+    public TransitionModel(int states, int actions) {
+        this.states = states;
+        this.actions = actions;
+        this.counts = new int[states * actions];
+        this.nextCounts = new int[states * actions * states];
+        this.rewardSums = new double[states * actions];
+        this.terminalCounts = new int[states * actions];
+        this.terminalRewardSums = new double[states * actions];
+    }
+
+    /**
+     * Records a transition.
+     *
+     * @param state     The state ordinal.
+     * @param action    The action ordinal.
+     * @param reward    The reward received.
+     * @param nextState The next state ordinal, ignored if the transition ended the episode.
+     * @param terminal  True if the transition ended the episode.
+     */
+    public void observe(int state, int action, double reward, int nextState, boolean terminal) {
+        int pair = state * this.actions + action;
+        this.counts[pair]++;
+        if (terminal) {
+            this.terminalCounts[pair]++;
+            this.terminalRewardSums[pair] += reward;
+        } else {
+            this.nextCounts[pair * this.states + nextState]++;
+            this.rewardSums[pair] += reward;
+        }
+    }
+
+    /**
+     * Retrieves the number of times a state-action pair was tried.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @return The number of transitions.
+     */
+    public int getCount(int state, int action) {
+        return this.counts[state * this.actions + action];
+    }
+
+    /**
+     * Retrieves the number of times a state-action pair led to a state.
+     *
+     * @param state     The state ordinal.
+     * @param action    The action ordinal.
+     * @param nextState The next state ordinal.
+     * @return The number of transitions.
+     */
+    public int getNextCount(int state, int action, int nextState) {
+        return this.nextCounts[(state * this.actions + action) * this.states + nextState];
+    }
+
+    /**
+     * Retrieves the number of times a state-action pair ended the episode.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @return The number of terminal transitions.
+     */
+    public int getTerminalCount(int state, int action) {
+        return this.terminalCounts[state * this.actions + action];
+    }
+
+    /**
+     * Retrieves the average reward of a state-action pair when the episode goes on.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @return The average reward, or 0 if it never went on.
+     */
+    public double getReward(int state, int action) {
+        int pair = state * this.actions + action;
+        int count = this.counts[pair] - this.terminalCounts[pair];
+        return count == 0 ? 0.0 : this.rewardSums[pair] / count;
+    }
+
+    /**
+     * Retrieves the average reward of a state-action pair when it ended the episode.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @return The average reward, or 0 if it never ended the episode.
+     */
+    public double getTerminalReward(int state, int action) {
+        int pair = state * this.actions + action;
+        return this.terminalCounts[pair] == 0 ? 0.0 : this.terminalRewardSums[pair] / this.terminalCounts[pair];
+    }
+
+    /**
+     * Retrieves the number of states.
+     *
+     * @return The number of states.
+     */
+    public int getStates() {
+        return this.states;
+    }
+
+    /**
+     * Retrieves the number of actions.
+     *
+     * @return The number of actions.
+     */
+    public int getActions() {
+        return this.actions;
+    }
+}
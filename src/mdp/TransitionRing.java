@@ -0,0 +1,185 @@
+package mdp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The TransitionRing class is a bounded lock-free single-producer/single-consumer queue of transitions.
+ * Records are stored in parallel primitive arrays, so neither side allocates memory. The producer never blocks: when
+ * the ring is full the record is dropped and counted.
+ * <p>
+ * Producer side: {@link #offer}. Consumer side: {@link #peek}, the slot accessors and {@link #advance}.
+ */
+public class TransitionRing {
+
+    /**
+     * A one-step transition, applied with {@link QLearning#update(Object, Object, Object, double)}.
+     */
+    public static final byte UPDATE = 0;
+
+    /**
+     * A transition that ended the episode, applied with {@link QLearning#lastUpdate(Object, double)}.
+     */
+    public static final byte LAST_UPDATE = 1;
+
+    /**
+     * The end of an episode.
+     */
+    public static final byte EPISODE_END = 2;
+
+    private final byte[] kinds;
+    private final int[] states;
+    private final int[] actions;
+    private final double[] rewards;
+    private final int[] nextStates;
+    private final int mask;
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private long cachedHead;
+    private long dropped;
+
+    /**
+     * Constructs an empty ring.
+     *
+     * @param capacity The capacity, rounded up to a power of two.
+     */
+    public TransitionRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.kinds = new byte[size];
+        this.states = new int[size];
+        this.actions = new int[size];
+        this.rewards = new double[size];
+        this.nextStates = new int[size];
+        this.mask = size - 1;
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+    }
+
+    /**
+     * Appends a record. Must only be called from the producer thread.
+     *
+     * @param kind      The kind of record.
+     * @param state     The state ordinal, or -1 if there is none.
+     * @param action    The action ordinal, or -1 if there is none.
+     * @param reward    The reward received.
+     * @param nextState The next state ordinal, or -1 if there is none.
+     * @return True if the record was queued, false if the ring was full and it was dropped.
+     */
+    public boolean offer(byte kind, int state, int action, double reward, int nextState) {
+        long position = this.tail.get();
+        if (position - this.cachedHead > this.mask) {
+            this.cachedHead = this.head.get();
+            if (position - this.cachedHead > this.mask) {
+                this.dropped++;
+                return false;
+            }
+        }
+        int slot = (int) position & this.mask;
+        this.kinds[slot] = kind;
+        this.states[slot] = state;
+        this.actions[slot] = action;
+        this.rewards[slot] = reward;
+        this.nextStates[slot] = nextState;
+        this.tail.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * Checks whether the ring is full, so the next record would be dropped. Must only be called from the producer
+     * thread.
+     *
+     * @return True if the ring is full, false otherwise.
+     */
+    public boolean isFull() {
+        long position = this.tail.get();
+        if (position - this.cachedHead > this.mask)
+            this.cachedHead = this.head.get();
+        return position - this.cachedHead > this.mask;
+    }
+
+    /**
+     * Returns the slot of the oldest record. Must only be called from the consumer thread.
+     *
+     * @return The slot, or -1 if the ring is empty.
+     */
+    public int peek() {
+        long position = this.head.get();
+        if (position == this.tail.get())
+            return -1;
+        return (int) position & this.mask;
+    }
+
+    /**
+     * Releases the oldest record once it has been consumed. Must only be called from the consumer thread.
+     */
+    public void advance() {
+        this.head.lazySet(this.head.get() + 1);
+    }
+
+    /**
+     * Checks whether there are records waiting to be consumed.
+     *
+     * @return True if the ring is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return this.head.get() == this.tail.get();
+    }
+
+    /**
+     * Retrieves the kind of a record.
+     *
+     * @param slot The slot of the record.
+     * @return The kind of record.
+     */
+    public byte getKind(int slot) {
+        return this.kinds[slot];
+    }
+
+    /**
+     * Retrieves the state ordinal of a record.
+     *
+     * @param slot The slot of the record.
+     * @return The state ordinal, or -1.
+     */
+    public int getState(int slot) {
+        return this.states[slot];
+    }
+
+    /**
+     * Retrieves the action ordinal of a record.
+     *
+     * @param slot The slot of the record.
+     * @return The action ordinal, or -1.
+     */
+    public int getAction(int slot) {
+        return this.actions[slot];
+    }
+
+    /**
+     * Retrieves the reward of a record.
+     *
+     * @param slot The slot of the record.
+     * @return The reward.
+     */
+    public double getReward(int slot) {
+        return this.rewards[slot];
+    }
+
+    /**
+     * Retrieves the next state ordinal of a record.
+     *
+     * @param slot The slot of the record.
+     * @return The next state ordinal, or -1.
+     */
+    public int getNextState(int slot) {
+        return this.nextStates[slot];
+    }
+
+    /**
+     * Retrieves the number of records dropped because the ring was full. Must only be called from the producer thread.
+     *
+     * @return The number of dropped records.
+     */
+    public long getDropped() {
+        return this.dropped;
+    }
+}
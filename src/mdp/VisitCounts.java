@@ -0,0 +1,279 @@
+package mdp;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Scanner;
+
+import static torcs.Constants.SEPARATOR;
+
+/**
+ * The VisitCounts class counts the visits of every state and every state-action pair of a tabular learner in
+ * primitive arrays, with a bit set of the states visited at least once. On top of the counts it offers an optional
+ * UCB action selector: untried actions are chosen first, then the action with the best Q-value plus a bonus that
+ * shrinks as the action is tried, so coverage grows faster than with a decaying epsilon.
+ * <p>
+ * Counts are written by the learner thread and are not synchronized. Another thread selects actions from a
+ * {@link #copy} published by the learner thread, whose counts lag behind by the transitions still queued, which only
+ * delays the bonus shrinking.
+ */
+public class VisitCounts {
+
+    private final int states;
+    private final int actions;
+    private final int[] stateCounts;
+    private final int[] pairCounts;
+    private final BitSet visited;
+    private double explorationBonus;
+
+    /**
+     * Constructs empty counts.
+     *
+     * @param states  The number of states.
+     * @param actions The number of actions.
+     */
+    public VisitCounts(int states, int actions) {
+        this.states = states;
+        this.actions = actions;
+        this.stateCounts = new int[states];
+        this.pairCounts = new int[states * actions];
+        this.visited = new BitSet(states);
+        this.explorationBonus = 0;
+    }
+
+    /**
+     * Constructs a copy of counts.
+     *
+     * @param counts The counts to copy.
+     */
+    private VisitCounts(VisitCounts counts) {
+        this.states = counts.states;
+        this.actions = counts.actions;
+        this.stateCounts = counts.stateCounts.clone();
+        this.pairCounts = counts.pairCounts.clone();
+        this.visited = (BitSet) counts.visited.clone();
+        this.explorationBonus = counts.explorationBonus;
+    }
+
+    /**
+     * Copies the counts, so another thread can read them while these keep being written.
+     *
+     * @return The copy.
+     */
+    public VisitCounts copy() {
+        return new VisitCounts(this);
+    }
+
+    /**
+     * Counts a visit of a state.
+     *
+     * @param state The state ordinal.
+     */
+    public void visitState(int state) {
+        this.stateCounts[state]++;
+        this.visited.set(state);
+    }
+
+    /**
+     * Counts an action performed in a state.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     */
+    public void visitPair(int state, int action) {
+        this.pairCounts[state * this.actions + action]++;
+    }
+
+    /**
+     * Retrieves the number of visits of a state.
+     *
+     * @param state The state ordinal.
+     * @return The number of visits.
+     */
+    public int getStateCount(int state) {
+        return this.stateCounts[state];
+    }
+
+    /**
+     * Retrieves the number of times an action was performed in a state.
+     *
+     * @param state  The state ordinal.
+     * @param action The action ordinal.
+     * @return The number of times.
+     */
+    public int getPairCount(int state, int action) {
+        return this.pairCounts[state * this.actions + action];
+    }
+
+    /**
+     * Retrieves the number of states visited at least once.
+     *
+     * @return The number of visited states.
+     */
+    public int getCoverage() {
+        return this.visited.cardinality();
+    }
+
+    /**
+     * Checks if every state has been visited.
+     *
+     * @return True if the coverage is complete.
+     */
+    public boolean isComplete() {
+        return this.visited.cardinality() == this.states;
+    }
+
+    /**
+     * Enables the UCB action selector.
+     *
+     * @param explorationBonus The weight of the exploration bonus, 0 to disable the selector.
+     */
+    public void setExplorationBonus(double explorationBonus) {
+        this.explorationBonus = explorationBonus;
+    }
+
+    /**
+     * Checks if the UCB action selector is enabled.
+     *
+     * @return True if actions must be chosen with {@link #select}.
+     */
+    public boolean isExploring() {
+        return this.explorationBonus > 0;
+    }
+
+    /**
+     * Chooses the action with the best upper confidence bound, {@code Q + bonus * sqrt(ln(N(s)) / N(s, a))}, with
+     * untried actions first and ties broken at random.
+     *
+     * @param state      The state ordinal.
+     * @param qValues    The Q-values, indexed by {@code state * actions + action}.
+     * @param random     The random generator used to break ties.
+     * @param candidates A scratch array of at least one entry per action.
+     * @return The action ordinal.
+     */
+    public int select(int state, double[] qValues, Random random, int[] candidates) {
+        int row = state * this.actions;
+        double logVisits = Math.log(this.stateCounts[state] + 1);
+        double maxValue = Double.NEGATIVE_INFINITY;
+        int count = 0;
+        for (int action = 0; action < this.actions; action++) {
+            int tried = this.pairCounts[row + action];
+            double value = tried == 0 ? Double.POSITIVE_INFINITY
+                    : qValues[row + action] + this.explorationBonus * Math.sqrt(logVisits / tried);
+            if (maxValue < value) {
+                maxValue = value;
+                count = 0;
+                candidates[count++] = action;
+            } else if (maxValue == value) {
+                candidates[count++] = action;
+            }
+        }
+        return candidates[random.nextInt(count)];
+    }
+
+    /**
+     * Writes the counts in binary, for a training snapshot.
+     *
+     * @param out The stream.
+     * @throws IOException If the stream cannot be written.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        for (int count : this.stateCounts) {
+            out.writeInt(count);
+        }
+        for (int count : this.pairCounts) {
+            out.writeInt(count);
+        }
+    }
+
+    /**
+     * Replaces the counts with the ones written by {@link #writeTo}.
+     *
+     * @param in The stream.
+     * @throws IOException If the stream cannot be read.
+     */
+    void readFrom(DataInputStream in) throws IOException {
+        this.visited.clear();
+        for (int state = 0; state < this.states; state++) {
+            this.stateCounts[state] = in.readInt();
+            if (this.stateCounts[state] > 0)
+                this.visited.set(state);
+        }
+        for (int pair = 0; pair < this.pairCounts.length; pair++) {
+            this.pairCounts[pair] = in.readInt();
+        }
+    }
+
+    /**
+     * Loads the counts saved in a file, keeping the current counts if there is none and starting from zero counts if
+     * it cannot be read.
+     *
+     * @param filePath The file path.
+     */
+    public void load(String filePath) {
+        File file = new File(filePath);
+        if (!file.exists())
+            return;
+        try (Scanner scanner = new Scanner(file)) {
+            scanner.nextLine();
+            for (int state = 0; state < this.states && scanner.hasNextLine(); state++) {
+                String[] row = scanner.nextLine().split(SEPARATOR);
+                this.stateCounts[state] = Integer.parseInt(row[1]);
+                if (this.stateCounts[state] > 0)
+                    this.visited.set(state);
+                for (int action = 0; action < this.actions; action++) {
+                    this.pairCounts[state * this.actions + action] = Integer.parseInt(row[action + 2]);
+                }
+            }
+        } catch (FileNotFoundException | NoSuchElementException | NumberFormatException
+                 | ArrayIndexOutOfBoundsException e) {
+            // Rows read before the error would mix with the current counts, so the counts start over
+            System.out.println("ERROR!!! -> Could not load visit counts from .csv file, starting from zero counts...");
+            e.printStackTrace();
+            this.clear();
+        }
+    }
+
+    /**
+     * Sets every count back to zero.
+     */
+    private void clear() {
+        Arrays.fill(this.stateCounts, 0);
+        Arrays.fill(this.pairCounts, 0);
+        this.visited.clear();
+    }
+
+    /**
+     * Saves the counts to a file, one row per state with the state count followed by the count of every action.
+     *
+     * @param filePath        The file path.
+     * @param possibleStates  The states, in ordinal order.
+     * @param possibleActions The actions, in ordinal order.
+     */
+    public void save(String filePath, Object[] possibleStates, Object[] possibleActions) {
+        try (PrintWriter file = new PrintWriter(filePath)) {
+            file.write(" VISITS " + SEPARATOR + "STATE");
+            for (Object action : possibleActions) {
+                file.write(SEPARATOR + action);
+            }
+            file.write("\n");
+            for (int state = 0; state < this.states; state++) {
+                file.write(possibleStates[state] + SEPARATOR + this.stateCounts[state]);
+                for (int action = 0; action < this.actions; action++) {
+                    file.write(SEPARATOR + this.pairCounts[state * this.actions + action]);
+                }
+                file.write("\n");
+            }
+        } catch (FileNotFoundException e) {
+            System.out.println("ERROR!!! -> Could not save visit counts in .csv file...");
+            e.printStackTrace();
+        }
+    }
+}
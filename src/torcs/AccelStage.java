@@ -0,0 +1,47 @@
+package torcs;
+
+/**
+ * The AccelStage class computes the joint accel/brake command and splits it, filtering the brake through the ABS.
+ */
+public class AccelStage implements ControlStage {
+
+    private final TrackMapStage trackMap;
+
+    /**
+     * Constructs a stage that estimates the target speed from the track edge sensors.
+     */
+    public AccelStage() {
+        this(null);
+    }
+
+    /**
+     * Constructs a stage that looks the target speed up in the map of the track once it is complete.
+     *
+     * @param trackMap The stage that maintains the map of the track, or null.
+     */
+    public AccelStage(TrackMapStage trackMap) {
+        this.trackMap = trackMap;
+    }
+
+    /**
+     * Sets the accel and brake commands.
+     *
+     * @param sensors The sensor readings from the car.
+     * @param action  The action being built.
+     *
+     * @return True if the action is complete and the following stages must be skipped.
+     */
+    @Override
+    public boolean apply(SensorModel sensors, Action action) {
+        float accelAndBrake = this.trackMap == null ? DrivingInstructor.getAccel(sensors)
+                : DrivingInstructor.getAccel(sensors, this.trackMap.getTrackMap());
+        if (accelAndBrake > 0) {
+            action.accelerate = accelAndBrake;
+            action.brake = 0;
+        } else {
+            action.accelerate = 0;
+            action.brake = DrivingInstructor.filterABS(sensors, -accelAndBrake);
+        }
+        return false;
+    }
+}
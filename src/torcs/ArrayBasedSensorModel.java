@@ -0,0 +1,400 @@
+package torcs;
+
+/**
+ * The ArrayBasedSensorModel class implements the SensorModel interface by holding every reading in memory.
+ * It is used for sensor readings that do not come from a server message, such as the ones produced by a simulator or
+ * decoded from a recorded trace. All the readings can be flattened to and restored from an array of {@link #FIELDS}
+ * values, laid out as described by the field offsets of this class.
+ */
+public class ArrayBasedSensorModel implements SensorModel {
+
+    public static final int SPEED = 0;
+    public static final int ANGLE = 1;
+    public static final int TRACK_POSITION = 2;
+    public static final int GEAR = 3;
+    public static final int RACE_POSITION = 4;
+    public static final int LATERAL_SPEED = 5;
+    public static final int CURRENT_LAP_TIME = 6;
+    public static final int DAMAGE = 7;
+    public static final int DISTANCE_FROM_START = 8;
+    public static final int DISTANCE_RACED = 9;
+    public static final int FUEL = 10;
+    public static final int LAST_LAP_TIME = 11;
+    public static final int RPM = 12;
+    public static final int Z_SPEED = 13;
+    public static final int Z = 14;
+    public static final int TRACK_EDGES = 15;
+    public static final int FOCUS = TRACK_EDGES + 19;
+    public static final int OPPONENTS = FOCUS + 5;
+    public static final int WHEEL_SPIN = OPPONENTS + 36;
+    public static final int FIELDS = WHEEL_SPIN + 4;
+
+    private final double[] scalars;
+    private final double[] trackEdges;
+    private final double[] focus;
+    private final double[] opponents;
+    private final double[] wheelSpin;
+
+    /**
+     * Constructs a sensor model with every reading set to zero, except opponents and focus, which are out of range.
+     */
+    public ArrayBasedSensorModel() {
+        this.scalars = new double[TRACK_EDGES];
+        this.trackEdges = new double[19];
+        this.focus = new double[5];
+        this.opponents = new double[36];
+        this.wheelSpin = new double[4];
+        java.util.Arrays.fill(this.focus, -1.0);
+        java.util.Arrays.fill(this.opponents, 200.0);
+        this.scalars[RACE_POSITION] = 1;
+    }
+
+    /**
+     * Constructs a sensor model from a flattened array of readings.
+     *
+     * @param fields The readings, laid out as described by the field offsets of this class.
+     */
+    public ArrayBasedSensorModel(double[] fields) {
+        this();
+        this.load(fields);
+    }
+
+    /**
+     * Copies the readings of any sensor model.
+     *
+     * @param sensors The sensor model to copy.
+     */
+    public ArrayBasedSensorModel(SensorModel sensors) {
+        this();
+        this.set(SPEED, sensors.getSpeed());
+        this.set(ANGLE, sensors.getAngleToTrackAxis());
+        this.set(TRACK_POSITION, sensors.getTrackPosition());
+        this.set(GEAR, sensors.getGear());
+        this.set(RACE_POSITION, sensors.getRacePosition());
+        this.set(LATERAL_SPEED, sensors.getLateralSpeed());
+        this.set(CURRENT_LAP_TIME, sensors.getCurrentLapTime());
+        this.set(DAMAGE, sensors.getDamage());
+        this.set(DISTANCE_FROM_START, sensors.getDistanceFromStartLine());
+        this.set(DISTANCE_RACED, sensors.getDistanceRaced());
+        this.set(FUEL, sensors.getFuelLevel());
+        this.set(LAST_LAP_TIME, sensors.getLastLapTime());
+        this.set(RPM, sensors.getRPM());
+        this.set(Z_SPEED, sensors.getZSpeed());
+        this.set(Z, sensors.getZ());
+        copy(sensors.getTrackEdgeSensors(), this.trackEdges);
+        copy(sensors.getFocusSensors(), this.focus);
+        copy(sensors.getOpponentSensors(), this.opponents);
+        copy(sensors.getWheelSpinVelocity(), this.wheelSpin);
+    }
+
+    /**
+     * Flattens every reading of any sensor model into an array, without copying it first.
+     *
+     * @param sensors The sensor model.
+     * @param fields  The output array, of at least {@link #FIELDS} values.
+     */
+    public static void flatten(SensorModel sensors, double[] fields) {
+        if (sensors instanceof ArrayBasedSensorModel) {
+            ((ArrayBasedSensorModel) sensors).toArray(fields);
+            return;
+        }
+        fields[SPEED] = sensors.getSpeed();
+        fields[ANGLE] = sensors.getAngleToTrackAxis();
+        fields[TRACK_POSITION] = sensors.getTrackPosition();
+        fields[GEAR] = sensors.getGear();
+        fields[RACE_POSITION] = sensors.getRacePosition();
+        fields[LATERAL_SPEED] = sensors.getLateralSpeed();
+        fields[CURRENT_LAP_TIME] = sensors.getCurrentLapTime();
+        fields[DAMAGE] = sensors.getDamage();
+        fields[DISTANCE_FROM_START] = sensors.getDistanceFromStartLine();
+        fields[DISTANCE_RACED] = sensors.getDistanceRaced();
+        fields[FUEL] = sensors.getFuelLevel();
+        fields[LAST_LAP_TIME] = sensors.getLastLapTime();
+        fields[RPM] = sensors.getRPM();
+        fields[Z_SPEED] = sensors.getZSpeed();
+        fields[Z] = sensors.getZ();
+        copy(sensors.getTrackEdgeSensors(), fields, TRACK_EDGES, FOCUS - TRACK_EDGES, 0.0);
+        copy(sensors.getFocusSensors(), fields, FOCUS, OPPONENTS - FOCUS, -1.0);
+        copy(sensors.getOpponentSensors(), fields, OPPONENTS, WHEEL_SPIN - OPPONENTS, 200.0);
+        copy(sensors.getWheelSpinVelocity(), fields, WHEEL_SPIN, FIELDS - WHEEL_SPIN, 0.0);
+    }
+
+    /**
+     * Sets a scalar reading.
+     *
+     * @param field The offset of the reading, lower than {@link #TRACK_EDGES}.
+     * @param value The value of the reading.
+     */
+    public void set(int field, double value) {
+        this.scalars[field] = value;
+    }
+
+    /**
+     * Replaces every reading with the values of a flattened array, so a decoder can reuse the same instance.
+     *
+     * @param fields The readings, laid out as described by the field offsets of this class.
+     */
+    public void load(double[] fields) {
+        System.arraycopy(fields, 0, this.scalars, 0, TRACK_EDGES);
+        System.arraycopy(fields, TRACK_EDGES, this.trackEdges, 0, this.trackEdges.length);
+        System.arraycopy(fields, FOCUS, this.focus, 0, this.focus.length);
+        System.arraycopy(fields, OPPONENTS, this.opponents, 0, this.opponents.length);
+        System.arraycopy(fields, WHEEL_SPIN, this.wheelSpin, 0, this.wheelSpin.length);
+    }
+
+    /**
+     * Flattens every reading into an array.
+     *
+     * @param fields The output array, of at least {@link #FIELDS} values.
+     */
+    public void toArray(double[] fields) {
+        System.arraycopy(this.scalars, 0, fields, 0, TRACK_EDGES);
+        System.arraycopy(this.trackEdges, 0, fields, TRACK_EDGES, this.trackEdges.length);
+        System.arraycopy(this.focus, 0, fields, FOCUS, this.focus.length);
+        System.arraycopy(this.opponents, 0, fields, OPPONENTS, this.opponents.length);
+        System.arraycopy(this.wheelSpin, 0, fields, WHEEL_SPIN, this.wheelSpin.length);
+    }
+
+    /**
+     * Retrieves the current speed of the car.
+     *
+     * @return The car's speed in units per second.
+     */
+    public double getSpeed() {
+        return this.scalars[SPEED];
+    }
+
+    /**
+     * Retrieves the angle between the car's orientation and the track's axis.
+     *
+     * @return The angle to the track's axis in radians.
+     */
+    public double getAngleToTrackAxis() {
+        return this.scalars[ANGLE];
+    }
+
+    /**
+     * Retrieves an array of sensor readings representing the track's edge distances.
+     *
+     * @return An array of track edge sensor readings.
+     */
+    public double[] getTrackEdgeSensors() {
+        return this.trackEdges;
+    }
+
+    /**
+     * Retrieves an array of sensor readings representing the focus on specific objects in the environment.
+     *
+     * @return An array of focus sensor readings.
+     */
+    public double[] getFocusSensors() {
+        return this.focus;
+    }
+
+    /**
+     * Retrieves the car's position on the track.
+     *
+     * @return The car's track position as a value between -1.0 (left) and 1.0 (right).
+     */
+    public double getTrackPosition() {
+        return this.scalars[TRACK_POSITION];
+    }
+
+    /**
+     * Retrieves the current gear of the car.
+     *
+     * @return The car's gear as an integer value.
+     */
+    public int getGear() {
+        return (int) this.scalars[GEAR];
+    }
+
+    /**
+     * Retrieves an array of sensor readings representing other cars on the track.
+     *
+     * @return An array of opponent sensor readings.
+     */
+    public double[] getOpponentSensors() {
+        return this.opponents;
+    }
+
+    /**
+     * Retrieves the current race position of the car.
+     *
+     * @return The car's race position as an integer value.
+     */
+    public int getRacePosition() {
+        return (int) this.scalars[RACE_POSITION];
+    }
+
+    /**
+     * Retrieves the lateral speed of the car.
+     *
+     * @return The car's lateral speed in units per second.
+     */
+    public double getLateralSpeed() {
+        return this.scalars[LATERAL_SPEED];
+    }
+
+    /**
+     * Retrieves the current lap time of the car.
+     *
+     * @return The car's current lap time in seconds.
+     */
+    public double getCurrentLapTime() {
+        return this.scalars[CURRENT_LAP_TIME];
+    }
+
+    /**
+     * Retrieves the damage level of the car.
+     *
+     * @return The car's damage level as a value between 0.0 (no damage) and 1.0 (severe damage).
+     */
+    public double getDamage() {
+        return this.scalars[DAMAGE];
+    }
+
+    /**
+     * Retrieves the distance from the start line to the car's current position.
+     *
+     * @return The car's distance from the start line in meters.
+     */
+    public double getDistanceFromStartLine() {
+        return this.scalars[DISTANCE_FROM_START];
+    }
+
+    /**
+     * Retrieves the total distance raced by the car.
+     *
+     * @return The car's total distance raced in meters.
+     */
+    public double getDistanceRaced() {
+        return this.scalars[DISTANCE_RACED];
+    }
+
+    /**
+     * Retrieves the current fuel level of the car.
+     *
+     * @return The car's fuel level as a percentage.
+     */
+    public double getFuelLevel() {
+        return this.scalars[FUEL];
+    }
+
+    /**
+     * Retrieves the time taken to complete the last lap.
+     *
+     * @return The car's last lap time in seconds.
+     */
+    public double getLastLapTime() {
+        return this.scalars[LAST_LAP_TIME];
+    }
+
+    /**
+     * Retrieves the current RPM (Revolutions Per Minute) of the car's engine.
+     *
+     * @return The car's current RPM.
+     */
+    public double getRPM() {
+        return this.scalars[RPM];
+    }
+
+    /**
+     * Retrieves an array of sensor readings representing the wheel spin velocities.
+     *
+     * @return An array of wheel spin velocity sensor readings.
+     */
+    public double[] getWheelSpinVelocity() {
+        return this.wheelSpin;
+    }
+
+    /**
+     * Retrieves the speed of the car along the z-axis (vertical axis).
+     *
+     * @return The car's z-axis speed in units per second.
+     */
+    public double getZSpeed() {
+        return this.scalars[Z_SPEED];
+    }
+
+    /**
+     * Retrieves the z-coordinate of the car's position.
+     *
+     * @return The car's z-coordinate.
+     */
+    public double getZ() {
+        return this.scalars[Z];
+    }
+
+    /**
+     * Builds the message a TORCS server would send with these readings.
+     *
+     * @return The readings as a server message.
+     */
+    public String getMessage() {
+        StringBuilder message = new StringBuilder();
+        append(message, "angle", this.scalars[ANGLE]);
+        append(message, "curLapTime", this.scalars[CURRENT_LAP_TIME]);
+        append(message, "damage", this.scalars[DAMAGE]);
+        append(message, "distFromStart", this.scalars[DISTANCE_FROM_START]);
+        append(message, "distRaced", this.scalars[DISTANCE_RACED]);
+        append(message, "fuel", this.scalars[FUEL]);
+        append(message, "gear", this.scalars[GEAR]);
+        append(message, "lastLapTime", this.scalars[LAST_LAP_TIME]);
+        append(message, "opponents", this.opponents);
+        append(message, "racePos", this.scalars[RACE_POSITION]);
+        append(message, "rpm", this.scalars[RPM]);
+        append(message, "speedX", this.scalars[SPEED]);
+        append(message, "speedY", this.scalars[LATERAL_SPEED]);
+        append(message, "speedZ", this.scalars[Z_SPEED]);
+        append(message, "track", this.trackEdges);
+        append(message, "trackPos", this.scalars[TRACK_POSITION]);
+        append(message, "wheelSpinVel", this.wheelSpin);
+        append(message, "z", this.scalars[Z]);
+        append(message, "focus", this.focus);
+        return message.toString();
+    }
+
+    /**
+     * Appends a reading to a message.
+     *
+     * @param message The message being built.
+     * @param name    The name of the reading.
+     * @param values  The values of the reading.
+     */
+    private static void append(StringBuilder message, String name, double... values) {
+        message.append('(').append(name);
+        for (double value : values) {
+            message.append(' ').append(value);
+        }
+        message.append(')');
+    }
+
+    /**
+     * Copies an array of readings, tolerating a missing or shorter source.
+     *
+     * @param source      The readings to copy, or null.
+     * @param destination The destination array.
+     */
+    private static void copy(double[] source, double[] destination) {
+        if (source != null) {
+            System.arraycopy(source, 0, destination, 0, Math.min(source.length, destination.length));
+        }
+    }
+
+    /**
+     * Copies a reading made of several values into a flattened array, filling the missing values.
+     *
+     * @param source  The values of the reading, or null if the reading is missing.
+     * @param fields  The flattened array.
+     * @param offset  The offset of the reading in the flattened array.
+     * @param length  The number of values of the reading.
+     * @param missing The value of the missing values.
+     */
+    private static void copy(double[] source, double[] fields, int offset, int length, double missing) {
+        int copied = source == null ? 0 : Math.min(source.length, length);
+        if (copied > 0)
+            System.arraycopy(source, 0, fields, offset, copied);
+        java.util.Arrays.fill(fields, offset + copied, offset + length, missing);
+    }
+}
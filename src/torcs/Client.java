@@ -2,6 +2,7 @@ package torcs;
 
 import torcs.Controller.Stage;
 
+import java.io.IOException;
 import java.util.StringTokenizer;
 
 /**
@@ -19,6 +20,8 @@ public class Client {
     private static int maxSteps;
     private static Stage stage;
     private static String trackName;
+    private static String recordPath;
+    private static int decisionRepeat;
 
     /**
      * The main entry point of the client.
@@ -33,6 +36,8 @@ public class Client {
         Controller driver = load(args[0]);
         driver.setStage(stage);
         driver.setTrackName(trackName);
+        driver.setDecisionRepeat(decisionRepeat);
+        TraceWriter recorder = openRecorder();
 
         /* Build init string */
         float[] angles = driver.initAngles();
@@ -80,6 +85,9 @@ public class Client {
                      * Check if race is restarted
                      */
                     if (inMsg.indexOf("***restart***") >= 0) {
+                        if (recorder != null)
+                            recorder.endEpisode(maxSteps > 0 && currStep > maxSteps ? TraceIndex.Termination.MAX_STEPS
+                                    : TraceIndex.Termination.of(driver.getStoppingStage()));
                         driver.reset();
                         if (verbose)
                             System.out.println("Server restarting!");
@@ -87,10 +95,13 @@ public class Client {
                     }
 
                     Action action = new Action();
+                    SensorModel sensors = new MessageBasedSensorModel(inMsg);
                     if (currStep < maxSteps || maxSteps == 0)
-                        action = driver.control(new MessageBasedSensorModel(inMsg));
+                        action = driver.control(sensors);
                     else
                         action.restartRace = true;
+                    if (recorder != null)
+                        recorder.record(sensors, action);
 
                     currStep++;
                     mySocket.send(action.toString());
@@ -104,6 +115,7 @@ public class Client {
          * Shutdown the controller
          */
         driver.shutdown();
+        closeRecorder(recorder);
         mySocket.close();
         System.out.println("Client shutdown.");
         System.out.println("Bye, bye!");
@@ -127,6 +139,8 @@ public class Client {
         maxSteps = 0;
         stage = Stage.UNKNOWN;
         trackName = "unknown";
+        recordPath = null;
+        decisionRepeat = Constants.DECISION_TICKS;
 
         for (int i = 1; i
 
@@ -162,6 +176,9 @@ public class Client {
             if (entity.equals("trackName")) {
                 trackName = value;
             }
+            if (entity.equals("record")) {
+                recordPath = value;
+            }
             if (entity.equals("maxEpisodes")) {
                 maxEpisodes = Integer.parseInt(value);
                 if (maxEpisodes <= 0) {
@@ -169,6 +186,13 @@ public class Client {
                     System.exit(0);
                 }
             }
+            if (entity.equals("repeat")) {
+                decisionRepeat = Integer.parseInt(value);
+                if (decisionRepeat <= 0) {
+                    System.out.println(entity + ":" + value + " is not a valid option");
+                    System.exit(0);
+                }
+            }
             if (entity.equals("maxSteps")) {
                 maxSteps = Integer.parseInt(value);
                 if (maxSteps < 0) {
@@ -179,6 +203,40 @@ public class Client {
         }
     }
 
+    /**
+     * Creates the trace file and the index where every tick is recorded, if the record option was given.
+     *
+     * @return The trace writer, or null if ticks are not recorded.
+     */
+    private static TraceWriter openRecorder() {
+        if (recordPath == null)
+            return null;
+        try {
+            return new TraceWriter(recordPath, trackName);
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not create trace file " + recordPath);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Writes the pending ticks of the trace file and closes it.
+     *
+     * @param recorder The trace writer, or null if ticks are not recorded.
+     */
+    private static void closeRecorder(TraceWriter recorder) {
+        if (recorder == null)
+            return;
+        try {
+            recorder.close();
+            System.out.println("Recorded " + recorder.getTicks() + " ticks in " + recorder.getBytes() + " bytes");
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not close trace file " + recordPath);
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Loads an instance of the specified controller class.
      *
@@ -0,0 +1,43 @@
+package torcs;
+
+/**
+ * The ClutchStage class releases the clutch progressively after the race start and after gear changes.
+ */
+public class ClutchStage implements ControlStage {
+
+    private final Controller controller;
+    private float clutch;
+
+    /**
+     * Constructs a clutch stage.
+     *
+     * @param controller The controller, which knows the current stage of the race.
+     */
+    public ClutchStage(Controller controller) {
+        this.controller = controller;
+        this.clutch = 0;
+    }
+
+    /**
+     * Sets the clutch command.
+     *
+     * @param sensors The sensor readings from the car.
+     * @param action  The action being built.
+     *
+     * @return True if the action is complete and the following stages must be skipped.
+     */
+    @Override
+    public boolean apply(SensorModel sensors, Action action) {
+        this.clutch = DrivingInstructor.clutching(sensors, this.clutch, this.controller.getStage());
+        action.clutch = this.clutch;
+        return false;
+    }
+
+    /**
+     * Releases the clutch at the beginning of each new trial.
+     */
+    @Override
+    public void reset() {
+        this.clutch = 0;
+    }
+}
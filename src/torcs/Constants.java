@@ -17,10 +17,43 @@ public class Constants {
     public static final int MAX_EPOCHS = 50;
     public static final int RANGE_EPOCHS_INITIAL = 10;
     public static final int RANGE_EPOCHS_END = 45;
+    public static final int REPLAY_CAPACITY = 10000;
+    public static final int REPLAY_BATCH_SIZE = 2000;
+    public static final boolean USE_ELIGIBILITY_TRACES = false;
+    public static final double LAMBDA = 0.8;
+    public static final double TRACE_THRESHOLD = 0.01;
+    public static final int MAX_ACTIVE_TRACES = 32;
+    public static final boolean USE_TILE_CODING = false;
+    public static final boolean USE_COUNT_EXPLORATION = false;
+    public static final double EXPLORATION_BONUS = 0.5;
+    public static final String LOG_LEVEL = "INFO";
+    public static final int LOG_CAPACITY = 4096;
+    public static final int TRACE_BLOCK_TICKS = 256;
+    public static final int Q_TABLE_CACHE_SIZE = 4;
+    public static final boolean USE_UPDATE_JOURNAL = false;
+    public static final int JOURNAL_GROUP_RECORDS = 256;
+    public static final long JOURNAL_COMMIT_MILLIS = 200;
+    public static final long JOURNAL_COMPACT_RECORDS = 100000;
+    public static final boolean USE_DYNA_PLANNING = false;
+    public static final int PLANNING_STEPS = 10;
+    public static final double PLANNING_THRESHOLD = 1e-6;
+    public static final long PLANNING_BUDGET_NANOS = 2_000_000;
+    public static final int DECISION_TICKS = 5;
+    public static final int DECISION_MAX_HOLDS = 3;
+    public static final double OFF_TRACK_REWARD = -10.0;
+    public static final double TRACK_LIMIT = 0.85;
+    public static final double LIMITER_SPEED = 30.0;
     public static final String STEER_Q_TABLE_PATH = System.getProperty("user.dir") + "/mdp/resources/QTable_Steer.csv";
     public static final String ACCEL_Q_TABLE_PATH = System.getProperty("user.dir") + "/mdp/resources/QTable_Accel.csv";
+    public static final String STEER_COMPILED_POLICY_PATH = System.getProperty("user.dir") + "/mdp/resources/QTable_Steer.policy";
+    public static final String STEER_DISCRETIZER_PATH = System.getProperty("user.dir") + "/mdp/resources/Discretizer_Steer.csv";
+    public static final String STEER_POLICY_PATH = System.getProperty("user.dir") + "/mdp/resources/QTable_Steer.shm";
+    public static final String TRAINING_SNAPSHOT_PATH = System.getProperty("user.dir") + "/mdp/resources/TrainingSnapshot_Steer.bin";
+    public static final String STEER_WEIGHTS_PATH = System.getProperty("user.dir") + "/mdp/resources/Weights_Steer.bin";
     public static final String GEAR_Q_TABLE_PATH = System.getProperty("user.dir") + "/mdp/resources/QTable_Gear.csv";
     public static final String STATISTICS_TRAIN_PATH = System.getProperty("user.dir") + "/mdp/resources/StatisticsTrain.csv";
+    public static final String TRACK_MAP_PATH = System.getProperty("user.dir") + "/mdp/resources/TrackMap_%s.csv";
+    public static final String SWEEP_REPORT_PATH = System.getProperty("user.dir") + "/mdp/resources/SweepReport.csv";
     public static final String STATISTICS_TEST_PATH = System.getProperty("user.dir") + "/mdp/resources/StatisticsTest.csv";
     public static final double radian = 0.785398;
 
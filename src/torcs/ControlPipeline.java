@@ -0,0 +1,136 @@
+package torcs;
+
+import java.util.Arrays;
+
+/**
+ * The ControlPipeline class builds the action of every tick by running a chain of {@link ControlStage}s in order, until
+ * one of them completes the action. The time spent in every stage is measured, so the report shows which stage eats
+ * the tick budget.
+ */
+public class ControlPipeline {
+
+    private ControlStage[] stages;
+    private String[] names;
+    private long[] nanos;
+    private long[] calls;
+    private long[] stops;
+    private ControlStage stoppingStage;
+
+    /**
+     * Constructs an empty pipeline.
+     */
+    public ControlPipeline() {
+        this.stages = new ControlStage[0];
+        this.names = new String[0];
+        this.nanos = new long[0];
+        this.calls = new long[0];
+        this.stops = new long[0];
+    }
+
+    /**
+     * Appends a stage to the pipeline.
+     *
+     * @param name  The name of the stage in the timing report.
+     * @param stage The stage.
+     *
+     * @return This pipeline.
+     */
+    public ControlPipeline add(String name, ControlStage stage) {
+        int size = this.stages.length + 1;
+        this.stages = Arrays.copyOf(this.stages, size);
+        this.names = Arrays.copyOf(this.names, size);
+        this.nanos = Arrays.copyOf(this.nanos, size);
+        this.calls = Arrays.copyOf(this.calls, size);
+        this.stops = Arrays.copyOf(this.stops, size);
+        this.stages[size - 1] = stage;
+        this.names[size - 1] = name;
+        return this;
+    }
+
+    /**
+     * Runs the stages on the readings of a tick.
+     *
+     * @param sensors The sensor readings from the car.
+     *
+     * @return The action to be performed by the car.
+     */
+    public Action run(SensorModel sensors) {
+        Action action = new Action();
+        this.stoppingStage = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < this.stages.length; i++) {
+            boolean stop = this.stages[i].apply(sensors, action);
+            long end = System.nanoTime();
+            this.nanos[i] += end - start;
+            this.calls[i]++;
+            start = end;
+            if (stop) {
+                this.stops[i]++;
+                this.stoppingStage = this.stages[i];
+                break;
+            }
+        }
+        return action;
+    }
+
+    /**
+     * Retrieves the stage that completed the action of the last tick, which tells why the last trial ended.
+     *
+     * @return The stage, or null if every stage ran.
+     */
+    public ControlStage getStoppingStage() {
+        return this.stoppingStage;
+    }
+
+    /**
+     * Resets every stage at the beginning of each new trial. Timings are kept.
+     */
+    public void reset() {
+        for (ControlStage stage : this.stages) {
+            stage.reset();
+        }
+    }
+
+    /**
+     * Retrieves the total time spent in a stage.
+     *
+     * @param index The position of the stage in the pipeline.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getNanos(int index) {
+        return this.nanos[index];
+    }
+
+    /**
+     * Retrieves the number of ticks a stage ran.
+     *
+     * @param index The position of the stage in the pipeline.
+     *
+     * @return The number of ticks.
+     */
+    public long getCalls(int index) {
+        return this.calls[index];
+    }
+
+    /**
+     * Builds a table with the mean time per tick of every stage, its share of the total time and the number of ticks
+     * it ended early.
+     *
+     * @return The timing report.
+     */
+    public String report() {
+        long total = 0;
+        for (long stageNanos : this.nanos) {
+            total += stageNanos;
+        }
+        StringBuilder report = new StringBuilder(String.format("%-12s %10s %12s %8s %8s%n",
+                "stage", "ticks", "mean (ns)", "share", "stops"));
+        for (int i = 0; i < this.stages.length; i++) {
+            report.append(String.format("%-12s %10d %12.0f %7.1f%% %8d%n", this.names[i], this.calls[i],
+                    this.calls[i] == 0 ? 0.0 : (double) this.nanos[i] / this.calls[i],
+                    total == 0 ? 0.0 : 100.0 * this.nanos[i] / total, this.stops[i]));
+        }
+        return report.toString();
+    }
+}
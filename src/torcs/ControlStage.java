@@ -0,0 +1,25 @@
+package torcs;
+
+/**
+ * The ControlStage interface represents one step of a {@link ControlPipeline}: it reads the sensors, fills in part of
+ * the action and decides whether the following stages run. Stages that end the tick early, such as a restart or a
+ * stuck recovery, spare the later and usually more expensive stages.
+ */
+public interface ControlStage {
+
+    /**
+     * Applies the stage to the action being built for this tick.
+     *
+     * @param sensors The sensor readings from the car.
+     * @param action  The action being built.
+     *
+     * @return True if the action is complete and the following stages must be skipped.
+     */
+    public boolean apply(SensorModel sensors, Action action);
+
+    /**
+     * Resets the state of the stage at the beginning of each new trial.
+     */
+    public default void reset() {
+    }
+}
@@ -8,6 +8,8 @@ public abstract class Controller {
 
     private Stage stage;
     private String trackName;
+    private final DecisionScheduler decisionScheduler =
+            new DecisionScheduler(Constants.DECISION_TICKS, Constants.DECISION_MAX_HOLDS);
 
     /**
      * Initializes an array of angles for the car's orientation.
@@ -57,6 +59,33 @@ public abstract class Controller {
         this.trackName = trackName;
     }
 
+    /**
+     * Retrieves the scheduler of the ticks where the controller consults its learner or policy.
+     *
+     * @return The decision scheduler.
+     */
+    public DecisionScheduler getDecisionScheduler() {
+        return decisionScheduler;
+    }
+
+    /**
+     * Sets the number of ticks an action is repeated for.
+     *
+     * @param repeat The action repeat.
+     */
+    public void setDecisionRepeat(int repeat) {
+        this.decisionScheduler.setRepeat(repeat);
+    }
+
+    /**
+     * Retrieves the control stage that completed the action of the last tick, so recorders know why a trial ended.
+     *
+     * @return The stage, or null if the controller has no pipeline or every stage ran.
+     */
+    public ControlStage getStoppingStage() {
+        return null;
+    }
+
     /**
      * Controls the car's behavior based on the sensor readings.
      *
@@ -0,0 +1,124 @@
+package torcs;
+
+/**
+ * The DecisionScheduler class decides on which ticks a controller consults its learner or policy, so a chosen action
+ * is repeated over the ticks in between. A decision is due every given number of ticks, and immediately when a
+ * critical event starts, such as the car getting close to the edge of the track, or after ticks where the controller
+ * was not asked, such as while the car was stuck and the recovery policy drove.
+ * <p>
+ * On a due tick the controller maps the sensors to a discrete state and asks {@link #isUnchanged}: if the state is
+ * the one of the last consulted decision, the action chosen for it is kept without asking the learner for a new one,
+ * up to a number of times in a row. The learner is still given the transition of every due tick, so holding an
+ * action only saves the choice, never the training signal.
+ */
+public class DecisionScheduler {
+
+    private final int maxHolds;
+    private int repeat;
+    private int lastTick;
+    private int lastDecisionTick;
+    private boolean critical;
+    private boolean forced;
+    private int lastState;
+    private int holds;
+    private long decisions;
+    private long consultations;
+
+    /**
+     * Constructs a scheduler.
+     *
+     * @param repeat   The number of ticks an action is repeated for.
+     * @param maxHolds The number of due decisions in a row that may keep the action of an unchanged state.
+     */
+    public DecisionScheduler(int repeat, int maxHolds) {
+        this.repeat = Math.max(1, repeat);
+        this.maxHolds = maxHolds;
+        this.reset();
+    }
+
+    /**
+     * Checks whether a decision is due on a tick. Must be called on every tick the controller is asked for a command.
+     *
+     * @param tick     The tick number.
+     * @param critical True while a critical event lasts, such as the car being close to the edge of the track.
+     * @return True if the controller must decide on this tick.
+     */
+    public boolean isDue(int tick, boolean critical) {
+        boolean resumed = tick != this.lastTick + 1;
+        boolean risen = critical && !this.critical;
+        this.lastTick = tick;
+        this.critical = critical;
+        if (!resumed && !risen && tick - this.lastDecisionTick < this.repeat)
+            return false;
+        this.lastDecisionTick = tick;
+        this.forced = resumed || risen;
+        this.decisions++;
+        return true;
+    }
+
+    /**
+     * Checks whether the decision due on this tick can keep the last action, because the state did not change since
+     * the last consulted decision.
+     *
+     * @param state The discrete state of the due tick.
+     * @return True if the last action is kept, false if the learner must choose a new one.
+     */
+    public boolean isUnchanged(int state) {
+        if (!this.forced && state == this.lastState && this.holds < this.maxHolds) {
+            this.holds++;
+            return true;
+        }
+        this.lastState = state;
+        this.holds = 0;
+        this.consultations++;
+        return false;
+    }
+
+    /**
+     * Resets the scheduler at the beginning of each new trial, so the first tick decides.
+     */
+    public void reset() {
+        this.lastTick = Integer.MIN_VALUE;
+        this.lastDecisionTick = Integer.MIN_VALUE;
+        this.critical = false;
+        this.forced = true;
+        this.lastState = -1;
+        this.holds = 0;
+    }
+
+    /**
+     * Retrieves the number of ticks an action is repeated for.
+     *
+     * @return The action repeat.
+     */
+    public int getRepeat() {
+        return this.repeat;
+    }
+
+    /**
+     * Sets the number of ticks an action is repeated for.
+     *
+     * @param repeat The action repeat, at least 1.
+     */
+    public void setRepeat(int repeat) {
+        this.repeat = Math.max(1, repeat);
+    }
+
+    /**
+     * Retrieves the number of due decisions.
+     *
+     * @return The number of decisions.
+     */
+    public long getDecisions() {
+        return this.decisions;
+    }
+
+    /**
+     * Retrieves the number of decisions that consulted the learner.
+     *
+     * @return The number of consultations.
+     */
+    public long getConsultations() {
+        return this.consultations;
+    }
+}
@@ -136,6 +136,26 @@ public class DrivingInstructor {
             return (float) 0.3; // When out of track, return a moderate acceleration command
     }
 
+    /**
+     * Calculates the acceleration and braking command, looking the target speed up in a map of the track once it is
+     * complete, and estimating it from the track edge sensors otherwise.
+     *
+     * @param sensors  The sensor readings from the car.
+     * @param trackMap The map of the track, or null.
+     *
+     * @return The acceleration and braking command value.
+     */
+    public static float getAccel(SensorModel sensors, TrackMap trackMap) {
+        if (trackMap == null || !trackMap.isComplete())
+            return getAccel(sensors);
+        // Check if the car is out of the track
+        if (sensors.getTrackPosition() < 1 && sensors.getTrackPosition() > -1) {
+            double targetSpeed = trackMap.getTargetSpeed(sensors.getDistanceFromStartLine());
+            return (float) (2 / (1 + Math.exp(sensors.getSpeed() - targetSpeed)) - 1);
+        } else
+            return (float) 0.3; // When out of track, return a moderate acceleration command
+    }
+
     /**
      * Determines the appropriate gear for the car based on the current RPM and gear shifting thresholds.
      *
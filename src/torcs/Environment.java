@@ -0,0 +1,29 @@
+package torcs;
+
+/**
+ * The Environment interface represents a source of racing episodes that a {@link Controller} can drive: a TORCS
+ * server, a simulator or any other implementation that produces {@link SensorModel} readings from {@link Action}s.
+ */
+public interface Environment {
+
+    /**
+     * Starts a new episode.
+     *
+     * @return The first sensor readings of the episode, or null if the environment has shut down.
+     */
+    public SensorModel reset();
+
+    /**
+     * Applies an action and advances the environment by one tick.
+     *
+     * @param action The action to be performed by the car.
+     *
+     * @return The next sensor readings, or null if the episode has ended.
+     */
+    public SensorModel step(Action action);
+
+    /**
+     * Releases the resources of the environment.
+     */
+    public void close();
+}
@@ -0,0 +1,42 @@
+package torcs;
+
+/**
+ * The GearStage class selects the gear, either from the engine RPM or always the same one.
+ */
+public class GearStage implements ControlStage {
+
+    private final boolean automatic;
+    private final int gear;
+
+    /**
+     * Constructs a stage that shifts gears from the engine RPM.
+     */
+    public GearStage() {
+        this.automatic = true;
+        this.gear = 1;
+    }
+
+    /**
+     * Constructs a stage that always engages the same gear.
+     *
+     * @param gear The gear.
+     */
+    public GearStage(int gear) {
+        this.automatic = false;
+        this.gear = gear;
+    }
+
+    /**
+     * Sets the gear command.
+     *
+     * @param sensors The sensor readings from the car.
+     * @param action  The action being built.
+     *
+     * @return True if the action is complete and the following stages must be skipped.
+     */
+    @Override
+    public boolean apply(SensorModel sensors, Action action) {
+        action.gear = this.automatic ? DrivingInstructor.getGear(sensors) : this.gear;
+        return false;
+    }
+}
@@ -0,0 +1,310 @@
+package torcs;
+
+import torcs.Controller.Stage;
+
+import java.util.StringTokenizer;
+
+/**
+ * The KinematicSimulator class is an in-process {@link Environment} that replaces the TORCS server with a simple and
+ * deterministic model: a kinematic bicycle car with a gearbox and an engine map, driving on a {@link Track}. The
+ * track edge sensors are computed by marching each ray along the track, using the distance to the nearest edge as the
+ * step, so a tick costs a few microseconds and the simulator runs thousands of times faster than real time.
+ * <p>
+ * The readings follow the conventions of TORCS: the speed is in km/h, the track position is positive to the left,
+ * the angle is positive when the track axis points to the left of the car, and the track edge sensors read -1 when the
+ * car is off the track. The kinematic model has no side slip, so the lateral speed is always zero.
+ * <p>
+ * Usage: {@code java torcs.KinematicSimulator <controller> [maxEpisodes:N] [maxSteps:N] [stage:N] [width:W]
+ * [layout:S300,L90@60,...]}
+ */
+public class KinematicSimulator implements Environment {
+
+    public static final double TICK = 0.02;
+    private static final double MAX_RANGE = 200.0;
+    private static final double MIN_RAY_STEP = 0.5;
+    private static final double START_BEHIND_LINE = 20.0;
+
+    /* Car constants */
+    private static final double WHEELBASE = 2.6;
+    private static final double WHEEL_RADIUS = 0.33;
+    private static final double STEER_LOCK = 0.366;
+    private static final double MAX_LATERAL_ACCEL = 15.0;
+    private static final double[] GEAR_RATIOS = {3.2, 0.0, 3.6, 2.2, 1.6, 1.25, 1.0, 0.85};
+    private static final double FINAL_DRIVE = 4.5;
+    private static final double ENGINE_ACCEL = 8.0;
+    private static final double BRAKE_DECEL = 12.0;
+    private static final double DRAG = 0.0004;
+    private static final double ROLLING_DECEL = 0.1;
+    private static final double GRASS_DECEL = 3.0;
+    private static final double IDLE_RPM = 1000.0;
+    private static final double PEAK_RPM = 7500.0;
+    private static final double REV_LIMIT = 9500.0;
+    private static final double FUEL = 94.0;
+
+    private final Track track;
+    private final double[] cosAngles;
+    private final double[] sinAngles;
+
+    private double x;
+    private double y;
+    private double yaw;
+    private double velocity;
+    private int gear;
+    private double rpm;
+    private int sample;
+    private double distanceFromStart;
+    private double distanceRaced;
+    private double currentLapTime;
+    private double lastLapTime;
+
+    /**
+     * Constructs a simulator for the specified track.
+     *
+     * @param track  The track to drive on.
+     * @param angles The angles of the track edge sensors, in degrees and positive to the right.
+     */
+    public KinematicSimulator(Track track, float[] angles) {
+        this.track = track;
+        this.cosAngles = new double[angles.length];
+        this.sinAngles = new double[angles.length];
+        for (int i = 0; i < angles.length; i++) {
+            this.cosAngles[i] = Math.cos(Math.toRadians(angles[i]));
+            this.sinAngles[i] = Math.sin(Math.toRadians(angles[i]));
+        }
+    }
+
+    /**
+     * Places the car on the centerline, behind the start line and at rest.
+     *
+     * @return The first sensor readings of the episode.
+     */
+    @Override
+    public SensorModel reset() {
+        this.sample = this.track.sampleAt(this.track.getLength() - START_BEHIND_LINE);
+        this.x = this.track.getX(this.sample);
+        this.y = this.track.getY(this.sample);
+        this.yaw = this.track.getHeading(this.sample);
+        this.velocity = 0;
+        this.gear = 0;
+        this.rpm = IDLE_RPM;
+        this.distanceFromStart = this.track.distanceFromStart(this.x, this.y, this.sample);
+        this.distanceRaced = 0;
+        this.currentLapTime = 0;
+        this.lastLapTime = 0;
+        return this.sense();
+    }
+
+    /**
+     * Applies an action and advances the car by one tick.
+     *
+     * @param action The action to be performed by the car.
+     *
+     * @return The next sensor readings, or null if the action asks to restart the race.
+     */
+    @Override
+    public SensorModel step(Action action) {
+        if (action.restartRace)
+            return null;
+        action.limitValues();
+        this.gear = action.gear;
+
+        boolean onTrack = Math.abs(this.track.lateral(this.x, this.y, this.sample)) <= this.track.getHalfWidth();
+        double ratio = GEAR_RATIOS[this.gear + 1];
+        double wheelRpm = Math.abs(this.velocity) / WHEEL_RADIUS * 60 / (2 * Math.PI);
+        if (ratio == 0 || action.clutch > 0.5)
+            this.rpm += (IDLE_RPM + action.accelerate * (REV_LIMIT - IDLE_RPM) - this.rpm) * 0.1;
+        else
+            this.rpm = Math.max(IDLE_RPM, wheelRpm * ratio * FINAL_DRIVE);
+
+        if (ratio != 0) {
+            double torque = this.rpm < PEAK_RPM ? 1.0 : Math.max(0, (REV_LIMIT - this.rpm) / (REV_LIMIT - PEAK_RPM));
+            double force = action.accelerate * (1 - action.clutch) * ENGINE_ACCEL * ratio / GEAR_RATIOS[2] * torque;
+            this.velocity += (this.gear < 0 ? -force : force) * TICK;
+        }
+        double resistance = (action.brake * BRAKE_DECEL + DRAG * this.velocity * this.velocity
+                + (onTrack ? ROLLING_DECEL : GRASS_DECEL)) * TICK;
+        if (Math.abs(this.velocity) <= resistance)
+            this.velocity = 0;
+        else
+            this.velocity -= Math.signum(this.velocity) * resistance;
+
+        double yawRate = this.velocity * Math.tan(action.steering * STEER_LOCK) / WHEELBASE;
+        double maxYawRate = MAX_LATERAL_ACCEL / Math.max(Math.abs(this.velocity), 1.0);
+        yawRate = Math.max(-maxYawRate, Math.min(maxYawRate, yawRate));
+        this.yaw += yawRate * TICK;
+        this.x += Math.cos(this.yaw) * this.velocity * TICK;
+        this.y += Math.sin(this.yaw) * this.velocity * TICK;
+        this.sample = this.track.nearest(this.x, this.y, this.sample);
+
+        double previousDistance = this.distanceFromStart;
+        this.distanceFromStart = this.track.distanceFromStart(this.x, this.y, this.sample);
+        double delta = this.distanceFromStart - previousDistance;
+        if (delta < -this.track.getLength() / 2) {
+            delta += this.track.getLength();
+            this.lastLapTime = this.currentLapTime;
+            this.currentLapTime = 0;
+        } else if (delta > this.track.getLength() / 2) {
+            delta -= this.track.getLength();
+        }
+        this.distanceRaced += delta;
+        this.currentLapTime += TICK;
+        return this.sense();
+    }
+
+    /**
+     * Does nothing, the simulator holds no external resources.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Builds the sensor readings of the current state of the car.
+     *
+     * @return The sensor readings.
+     */
+    private SensorModel sense() {
+        ArrayBasedSensorModel sensors = new ArrayBasedSensorModel();
+        double halfWidth = this.track.getHalfWidth();
+        double trackPosition = this.track.lateral(this.x, this.y, this.sample) / halfWidth;
+        double angle = this.track.getHeading(this.sample) - this.yaw;
+        angle = Math.atan2(Math.sin(angle), Math.cos(angle));
+        double wheelSpin = this.velocity / WHEEL_RADIUS;
+
+        sensors.set(ArrayBasedSensorModel.SPEED, this.velocity * 3.6);
+        sensors.set(ArrayBasedSensorModel.ANGLE, angle);
+        sensors.set(ArrayBasedSensorModel.TRACK_POSITION, trackPosition);
+        sensors.set(ArrayBasedSensorModel.GEAR, this.gear);
+        sensors.set(ArrayBasedSensorModel.CURRENT_LAP_TIME, this.currentLapTime);
+        sensors.set(ArrayBasedSensorModel.DISTANCE_FROM_START, this.distanceFromStart);
+        sensors.set(ArrayBasedSensorModel.DISTANCE_RACED, this.distanceRaced);
+        sensors.set(ArrayBasedSensorModel.FUEL, FUEL);
+        sensors.set(ArrayBasedSensorModel.LAST_LAP_TIME, this.lastLapTime);
+        sensors.set(ArrayBasedSensorModel.RPM, this.rpm);
+        double[] wheels = sensors.getWheelSpinVelocity();
+        for (int i = 0; i < wheels.length; i++) {
+            wheels[i] = wheelSpin;
+        }
+        double[] edges = sensors.getTrackEdgeSensors();
+        boolean onTrack = Math.abs(trackPosition) <= 1.0;
+        double cosYaw = Math.cos(this.yaw);
+        double sinYaw = Math.sin(this.yaw);
+        for (int i = 0; i < this.cosAngles.length && i < edges.length; i++) {
+            // Sensor angles are positive to the right, so each ray is the heading rotated clockwise
+            double dx = cosYaw * this.cosAngles[i] + sinYaw * this.sinAngles[i];
+            double dy = sinYaw * this.cosAngles[i] - cosYaw * this.sinAngles[i];
+            edges[i] = onTrack ? this.range(dx, dy) : -1.0;
+        }
+        return sensors;
+    }
+
+    /**
+     * Measures the distance from the car to the track edge along a ray.
+     *
+     * @param dx The x-component of the unit direction of the ray.
+     * @param dy The y-component of the unit direction of the ray.
+     * @return The distance to the edge in meters, at most {@link #MAX_RANGE}.
+     */
+    private double range(double dx, double dy) {
+        double halfWidth = this.track.getHalfWidth();
+        int hint = this.sample;
+        double inside = 0;
+        double t = 0;
+        while (t < MAX_RANGE) {
+            double px = this.x + dx * t;
+            double py = this.y + dy * t;
+            hint = this.track.nearest(px, py, hint);
+            double margin = halfWidth - Math.abs(this.track.lateral(px, py, hint));
+            if (margin <= 0) {
+                // Bisect between the last point inside the track and the first one outside
+                double outside = t;
+                for (int i = 0; i < 6; i++) {
+                    double middle = (inside + outside) / 2;
+                    int h = this.track.nearest(this.x + dx * middle, this.y + dy * middle, hint);
+                    if (Math.abs(this.track.lateral(this.x + dx * middle, this.y + dy * middle, h)) < halfWidth)
+                        inside = middle;
+                    else
+                        outside = middle;
+                }
+                return inside;
+            }
+            inside = t;
+            t += Math.max(margin, MIN_RAY_STEP);
+        }
+        return MAX_RANGE;
+    }
+
+    /**
+     * Drives a controller in the simulator and reports the simulation speed.
+     *
+     * @param args The command-line arguments.
+     */
+    public static void main(String[] args) throws Exception {
+        int maxEpisodes = 1;
+        int maxSteps = 0;
+        Stage stage = Stage.UNKNOWN;
+        double width = Track.DEFAULT_WIDTH;
+        String layout = Track.DEFAULT_LAYOUT;
+        String record = null;
+        int repeat = Constants.DECISION_TICKS;
+        for (int i = 1; i < args.length; i++) {
+            StringTokenizer st = new StringTokenizer(args[i], ":");
+            String entity = st.nextToken();
+            String value = st.nextToken();
+            if (entity.equals("maxEpisodes"))
+                maxEpisodes = Integer.parseInt(value);
+            if (entity.equals("maxSteps"))
+                maxSteps = Integer.parseInt(value);
+            if (entity.equals("stage"))
+                stage = Stage.fromInt(Integer.parseInt(value));
+            if (entity.equals("width"))
+                width = Double.parseDouble(value);
+            if (entity.equals("layout"))
+                layout = value;
+            if (entity.equals("record"))
+                record = value;
+            if (entity.equals("repeat"))
+                repeat = Integer.parseInt(value);
+        }
+
+        Controller driver = (Controller) Class.forName(args[0]).getDeclaredConstructor().newInstance();
+        driver.setStage(stage);
+        driver.setDecisionRepeat(repeat);
+        Track track = new Track("sim", width, layout);
+        driver.setTrackName(track.getName());
+        KinematicSimulator simulator = new KinematicSimulator(track, driver.initAngles());
+        TraceWriter recorder = record == null ? null : new TraceWriter(record, track.getName());
+
+        long steps = 0;
+        long start = System.nanoTime();
+        for (int episode = 0; episode < maxEpisodes; episode++) {
+            SensorModel sensors = simulator.reset();
+            long currStep = 0;
+            while (sensors != null) {
+                Action action = new Action();
+                if (currStep < maxSteps || maxSteps == 0)
+                    action = driver.control(sensors);
+                else
+                    action.restartRace = true;
+                if (recorder != null)
+                    recorder.record(sensors, action);
+                currStep++;
+                sensors = simulator.step(action);
+            }
+            if (recorder != null)
+                recorder.endEpisode(maxSteps > 0 && currStep > maxSteps ? TraceIndex.Termination.MAX_STEPS
+                        : TraceIndex.Termination.of(driver.getStoppingStage()));
+            driver.reset();
+            steps += currStep;
+            System.out.println("Episode " + episode + ": " + currStep + " ticks, "
+                    + (int) simulator.distanceRaced + " m raced");
+        }
+        driver.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d ticks in %.2f s, %.0fx real time%n", steps, seconds, steps * TICK / seconds);
+        if (recorder != null) {
+            recorder.close();
+            System.out.println("Recorded " + recorder.getTicks() + " ticks in " + recorder.getBytes() + " bytes");
+        }
+    }
+}
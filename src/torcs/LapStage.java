@@ -0,0 +1,75 @@
+package torcs;
+
+/**
+ * The LapStage class counts the times the car crosses the start line, and restarts the race once it completes the
+ * requested number of laps. The car starts behind the line, so the first crossing starts the first lap.
+ */
+public class LapStage implements ControlStage {
+
+    private final int lapsToComplete;
+    private double previousDistance;
+    private int laps;
+    private boolean completeLap;
+
+    /**
+     * Constructs a lap stage.
+     *
+     * @param lapsToComplete The number of laps after which the race is restarted.
+     */
+    public LapStage(int lapsToComplete) {
+        this.lapsToComplete = lapsToComplete;
+        this.reset();
+    }
+
+    /**
+     * Counts the crossings of the start line and restarts the race after the last lap.
+     *
+     * @param sensors The sensor readings from the car.
+     * @param action  The action being built.
+     *
+     * @return True if the action is complete and the following stages must be skipped.
+     */
+    @Override
+    public boolean apply(SensorModel sensors, Action action) {
+        double distance = sensors.getDistanceFromStartLine();
+        boolean crossedLine = this.previousDistance > 1 && distance < 1;
+        this.previousDistance = distance;
+        if (crossedLine) {
+            this.laps++;
+            if (this.laps >= this.lapsToComplete) {
+                this.completeLap = true;
+                action.restartRace = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resets the lap count at the beginning of each new trial.
+     */
+    @Override
+    public void reset() {
+        this.previousDistance = -1;
+        this.laps = -1;
+        this.completeLap = false;
+    }
+
+    /**
+     * Retrieves the number of laps completed in this trial.
+     *
+     * @return The number of laps, -1 before the car first crosses the start line.
+     */
+    public int getLaps() {
+        return this.laps;
+    }
+
+    /**
+     * Checks if the trial ended because the car completed its laps.
+     *
+     * @return True if the laps were completed.
+     */
+    public boolean isCompleteLap() {
+        return this.completeLap;
+    }
+}
@@ -0,0 +1,61 @@
+package torcs;
+
+/**
+ * The OffTrackStage class restarts the race when the car leaves the track, skipping the rest of the pipeline. A
+ * listener runs before the restart, so a learner can take the last reward of the trial.
+ */
+public class OffTrackStage implements ControlStage {
+
+    private final double trackLimit;
+    private final Runnable onOffTrack;
+    private boolean offTrack;
+
+    /**
+     * Constructs an off-track stage.
+     *
+     * @param trackLimit The absolute track position from which the car is off the track, 1 being the edge.
+     * @param onOffTrack The listener run when the car leaves the track, or null.
+     */
+    public OffTrackStage(double trackLimit, Runnable onOffTrack) {
+        this.trackLimit = trackLimit;
+        this.onOffTrack = onOffTrack;
+        this.offTrack = false;
+    }
+
+    /**
+     * Restarts the race if the car is off the track.
+     *
+     * @param sensors The sensor readings from the car.
+     * @param action  The action being built.
+     *
+     * @return True if the action is complete and the following stages must be skipped.
+     */
+    @Override
+    public boolean apply(SensorModel sensors, Action action) {
+        if (Math.abs(sensors.getTrackPosition()) >= this.trackLimit) {
+            this.offTrack = true;
+            if (this.onOffTrack != null)
+                this.onOffTrack.run();
+            action.restartRace = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Resets the off-track flag at the beginning of each new trial.
+     */
+    @Override
+    public void reset() {
+        this.offTrack = false;
+    }
+
+    /**
+     * Checks if the trial ended because the car left the track.
+     *
+     * @return True if the car left the track.
+     */
+    public boolean isOffTrack() {
+        return this.offTrack;
+    }
+}
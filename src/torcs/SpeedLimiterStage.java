@@ -0,0 +1,34 @@
+package torcs;
+
+/**
+ * The SpeedLimiterStage class keeps the car at a low constant speed with full throttle below the limit and none
+ * above it, so learners can focus on the steering.
+ */
+public class SpeedLimiterStage implements ControlStage {
+
+    private final double limit;
+
+    /**
+     * Constructs a speed limiter stage.
+     *
+     * @param limit The speed limit in km/h.
+     */
+    public SpeedLimiterStage(double limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Sets the accel and brake commands from the speed limit.
+     *
+     * @param sensors The sensor readings from the car.
+     * @param action  The action being built.
+     *
+     * @return True if the action is complete and the following stages must be skipped.
+     */
+    @Override
+    public boolean apply(SensorModel sensors, Action action) {
+        action.accelerate = sensors.getSpeed() < this.limit ? 1 : 0;
+        action.brake = 0;
+        return false;
+    }
+}
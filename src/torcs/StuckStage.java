@@ -0,0 +1,64 @@
+package torcs;
+
+/**
+ * The StuckStage class detects a car that has been misaligned with the track for a while and takes over with the
+ * recovery policy, skipping the rest of the pipeline until the car is aligned again.
+ */
+public class StuckStage implements ControlStage {
+
+    private final ClutchStage clutch;
+    private int stuck;
+
+    /**
+     * Constructs a stuck stage.
+     *
+     * @param clutch The clutch stage, whose state the recovery policy shares.
+     */
+    public StuckStage(ClutchStage clutch) {
+        this.clutch = clutch;
+        this.stuck = 0;
+    }
+
+    /**
+     * Counts the ticks the car is misaligned and applies the recovery policy once it is stuck.
+     *
+     * @param sensors The sensor readings from the car.
+     * @param action  The action being built.
+     *
+     * @return True if the action is complete and the following stages must be skipped.
+     */
+    @Override
+    public boolean apply(SensorModel sensors, Action action) {
+        if (Math.abs(sensors.getAngleToTrackAxis()) > DrivingInstructor.stuckAngle) {
+            this.stuck++;
+        } else {
+            this.stuck = 0;
+        }
+        if (this.stuck <= DrivingInstructor.stuckTime)
+            return false;
+
+        // To bring car parallel to track axis, assuming it is pointing out of the track
+        float steer = (float) (-sensors.getAngleToTrackAxis() / DrivingInstructor.steerLock);
+        int gear = -1; // gear R
+
+        // If car is pointing in the correct direction revert gear and steer
+        if (sensors.getAngleToTrackAxis() * sensors.getTrackPosition() > 0) {
+            gear = 1;
+            steer = -steer;
+        }
+        action.gear = gear;
+        action.steering = steer;
+        action.accelerate = 1.0;
+        action.brake = 0;
+        this.clutch.apply(sensors, action);
+        return true;
+    }
+
+    /**
+     * Resets the stuck counter at the beginning of each new trial.
+     */
+    @Override
+    public void reset() {
+        this.stuck = 0;
+    }
+}
@@ -0,0 +1,55 @@
+package torcs;
+
+/**
+ * The TimeoutStage class restarts the race when a lap takes too long, skipping the rest of the pipeline.
+ */
+public class TimeoutStage implements ControlStage {
+
+    private final double maxLapTime;
+    private boolean timedOut;
+
+    /**
+     * Constructs a timeout stage.
+     *
+     * @param maxLapTime The longest lap time allowed in seconds.
+     */
+    public TimeoutStage(double maxLapTime) {
+        this.maxLapTime = maxLapTime;
+        this.timedOut = false;
+    }
+
+    /**
+     * Restarts the race if the last lap took too long.
+     *
+     * @param sensors The sensor readings from the car.
+     * @param action  The action being built.
+     *
+     * @return True if the action is complete and the following stages must be skipped.
+     */
+    @Override
+    public boolean apply(SensorModel sensors, Action action) {
+        if (sensors.getLastLapTime() > this.maxLapTime) {
+            this.timedOut = true;
+            action.restartRace = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Resets the timeout flag at the beginning of each new trial.
+     */
+    @Override
+    public void reset() {
+        this.timedOut = false;
+    }
+
+    /**
+     * Checks if the trial ended because of a timeout.
+     *
+     * @return True if a lap took too long.
+     */
+    public boolean isTimedOut() {
+        return this.timedOut;
+    }
+}
@@ -0,0 +1,292 @@
+package torcs;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The TraceIndex class answers queries over the sidecar index that {@link TraceWriter} appends to while it records a
+ * trace, so a replay seeks straight to the blocks of an episode, a lap or a range of ticks instead of scanning the
+ * trace. The index is memory-mapped and scanned in place.
+ * <p>
+ * The index starts with a header (magic number, version and the name of the track, as a length-prefixed UTF-8
+ * string) followed by records of {@link #RECORD_SIZE} bytes. A block record holds the episode, the lap, the first tick
+ * and the number of ticks of a block, and its offset in the trace. An episode record, appended once the episode ends,
+ * holds its number of ticks, its number of laps and why it ended. Blocks never span two laps or two episodes.
+ */
+public class TraceIndex implements AutoCloseable {
+
+    static final int MAGIC = 0x54524958; // TRIX
+    static final int VERSION = 1;
+    static final int RECORD_SIZE = 32;
+    static final int BLOCK_RECORD = 0;
+    static final int EPISODE_RECORD = 1;
+    private static final int TYPE_OFFSET = 0;
+    private static final int EPISODE_OFFSET = 4;
+    private static final int LAP_OFFSET = 8;
+    private static final int FIRST_TICK_OFFSET = 12;
+    private static final int TICKS_OFFSET = 16;
+    private static final int TERMINATION_OFFSET = 20;
+    private static final int POSITION_OFFSET = 24;
+
+    /**
+     * The Termination enum represents why an episode ended.
+     */
+    public enum Termination {
+
+        UNKNOWN, LAPS_COMPLETE, OFF_TRACK, TIMEOUT, STUCK, MAX_STEPS, SHUTDOWN;
+
+        /**
+         * Finds why an episode ended from the stage that completed the action of its last tick.
+         *
+         * @param stage The stage, or null if every stage ran.
+         *
+         * @return The reason the episode ended.
+         */
+        public static Termination of(ControlStage stage) {
+            if (stage instanceof LapStage)
+                return LAPS_COMPLETE;
+            if (stage instanceof OffTrackStage)
+                return OFF_TRACK;
+            if (stage instanceof TimeoutStage)
+                return TIMEOUT;
+            if (stage instanceof StuckStage)
+                return STUCK;
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * The Span class locates a range of ticks in a trace: the block to seek to, the ticks to skip at the beginning of
+     * the block, and the number of ticks of the range.
+     */
+    public static class Span {
+
+        public final long offset;
+        public final int skip;
+        public final int ticks;
+
+        /**
+         * Constructs a span.
+         *
+         * @param offset The offset of the first block in the trace.
+         * @param skip   The number of ticks of the block before the range.
+         * @param ticks  The number of ticks of the range.
+         */
+        public Span(long offset, int skip, int ticks) {
+            this.offset = offset;
+            this.skip = skip;
+            this.ticks = ticks;
+        }
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final String trackName;
+    private final int recordsStart;
+    private final int records;
+
+    /**
+     * Maps the index of a trace. Records appended after this call are not seen.
+     *
+     * @param tracePath The path of the trace file.
+     * @throws IOException If the index cannot be mapped or is not a trace index.
+     */
+    public TraceIndex(String tracePath) throws IOException {
+        this.channel = FileChannel.open(Path.of(pathOf(tracePath)), StandardOpenOption.READ);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.channel.size());
+        if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION) {
+            this.channel.close();
+            throw new IOException(pathOf(tracePath) + " is not a trace index");
+        }
+        int nameLength = this.buffer.getShort(8) & 0xFFFF;
+        byte[] name = new byte[nameLength];
+        this.buffer.get(10, name);
+        this.trackName = new String(name, StandardCharsets.UTF_8);
+        this.recordsStart = 10 + nameLength;
+        // A record being appended while mapping is left out
+        this.records = (this.buffer.capacity() - this.recordsStart) / RECORD_SIZE;
+    }
+
+    /**
+     * Retrieves the sidecar index file of a trace.
+     *
+     * @param tracePath The path of the trace file.
+     * @return The path of the index file.
+     */
+    public static String pathOf(String tracePath) {
+        return tracePath + ".idx";
+    }
+
+    /**
+     * Retrieves the name of the track of the trace.
+     *
+     * @return The name of the track.
+     */
+    public String getTrackName() {
+        return this.trackName;
+    }
+
+    /**
+     * Retrieves the number of episodes that have ended.
+     *
+     * @return The number of complete episodes.
+     */
+    public int getEpisodes() {
+        int episodes = 0;
+        for (int record = 0; record < this.records; record++) {
+            if (this.getInt(record, TYPE_OFFSET) == EPISODE_RECORD)
+                episodes++;
+        }
+        return episodes;
+    }
+
+    /**
+     * Retrieves why an episode ended.
+     *
+     * @param episode The episode number, from 0.
+     * @return The reason, or null if the episode has not ended.
+     */
+    public Termination getTermination(int episode) {
+        int record = this.findEpisodeRecord(episode);
+        return record < 0 ? null : Termination.values()[this.getInt(record, TERMINATION_OFFSET)];
+    }
+
+    /**
+     * Finds the episodes that ended for a reason.
+     *
+     * @param termination The reason.
+     * @return The episode numbers, in order.
+     */
+    public List<Integer> findEpisodes(Termination termination) {
+        List<Integer> episodes = new ArrayList<>();
+        for (int record = 0; record < this.records; record++) {
+            if (this.getInt(record, TYPE_OFFSET) == EPISODE_RECORD
+                    && this.getInt(record, TERMINATION_OFFSET) == termination.ordinal())
+                episodes.add(this.getInt(record, EPISODE_OFFSET));
+        }
+        return episodes;
+    }
+
+    /**
+     * Locates every tick of an episode.
+     *
+     * @param episode The episode number, from 0.
+     * @return The span, or null if the episode is not in the trace.
+     */
+    public Span findEpisode(int episode) {
+        return this.find(episode, Integer.MIN_VALUE, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Locates every tick of a lap, -1 being the ticks before the car first crosses the start line.
+     *
+     * @param episode The episode number, from 0.
+     * @param lap     The lap number.
+     * @return The span, or null if the lap is not in the trace.
+     */
+    public Span findLap(int episode, int lap) {
+        return this.find(episode, lap, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Locates a range of ticks of an episode.
+     *
+     * @param episode The episode number, from 0.
+     * @param from    The first tick of the range, counted from the start of the episode.
+     * @param to      The tick after the range.
+     * @return The span, or null if no tick of the range is in the trace.
+     */
+    public Span findTicks(int episode, int from, int to) {
+        return this.find(episode, Integer.MIN_VALUE, from, to);
+    }
+
+    /**
+     * Locates the last ticks of an episode, such as the ones before the car left the track.
+     *
+     * @param episode The episode number, from 0.
+     * @param ticks   The number of ticks.
+     * @return The span, or null if the episode is not in the trace.
+     */
+    public Span findLastTicks(int episode, int ticks) {
+        int end = -1;
+        for (int record = 0; record < this.records; record++) {
+            if (this.getInt(record, TYPE_OFFSET) == BLOCK_RECORD && this.getInt(record, EPISODE_OFFSET) == episode)
+                end = this.getInt(record, FIRST_TICK_OFFSET) + this.getInt(record, TICKS_OFFSET);
+        }
+        return end < 0 ? null : this.findTicks(episode, Math.max(0, end - ticks), end);
+    }
+
+    /**
+     * Closes the index.
+     *
+     * @throws IOException If the index cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Locates the ticks of an episode within a lap and a range.
+     *
+     * @param episode The episode number.
+     * @param lap     The lap number, or {@link Integer#MIN_VALUE} for every lap.
+     * @param from    The first tick of the range.
+     * @param to      The tick after the range.
+     * @return The span, or null if no tick matches.
+     */
+    private Span find(int episode, int lap, int from, int to) {
+        long offset = -1;
+        int skip = 0;
+        int first = 0;
+        int end = 0;
+        for (int record = 0; record < this.records; record++) {
+            if (this.getInt(record, TYPE_OFFSET) != BLOCK_RECORD || this.getInt(record, EPISODE_OFFSET) != episode)
+                continue;
+            if (lap != Integer.MIN_VALUE && this.getInt(record, LAP_OFFSET) != lap)
+                continue;
+            int blockFirst = this.getInt(record, FIRST_TICK_OFFSET);
+            int blockEnd = blockFirst + this.getInt(record, TICKS_OFFSET);
+            if (blockEnd <= from || blockFirst >= to)
+                continue;
+            if (offset < 0) {
+                offset = this.buffer.getLong(this.recordsStart + record * RECORD_SIZE + POSITION_OFFSET);
+                first = Math.max(from, blockFirst);
+                skip = first - blockFirst;
+            }
+            end = Math.min(to, blockEnd);
+        }
+        return offset < 0 ? null : new Span(offset, skip, end - first);
+    }
+
+    /**
+     * Reads an int field of a record.
+     *
+     * @param record The record number.
+     * @param field  The offset of the field in the record.
+     * @return The value of the field.
+     */
+    private int getInt(int record, int field) {
+        return this.buffer.getInt(this.recordsStart + record * RECORD_SIZE + field);
+    }
+
+    /**
+     * Finds the record of an episode.
+     *
+     * @param episode The episode number.
+     * @return The record number, or -1 if the episode has not ended.
+     */
+    private int findEpisodeRecord(int episode) {
+        for (int record = 0; record < this.records; record++) {
+            if (this.getInt(record, TYPE_OFFSET) == EPISODE_RECORD && this.getInt(record, EPISODE_OFFSET) == episode)
+                return record;
+        }
+        return -1;
+    }
+}
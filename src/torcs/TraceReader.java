@@ -0,0 +1,173 @@
+package torcs;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The TraceReader class streams the ticks of a trace file written by {@link TraceWriter}. Blocks are read whole and
+ * decoded tick by tick into a reusable frame, so a consumer that reads frames allocates nothing.
+ */
+public class TraceReader implements AutoCloseable {
+
+    private final FileChannel channel;
+    private DataInputStream in;
+    private final double[] quanta;
+    private final int frameLength;
+    private final double[] frame;
+    private final long[] previous;
+    private double[] current;
+    private byte[] block;
+    private int blockPosition;
+    private int ticksLeft;
+    private boolean blockStartsEpisode;
+    private boolean episodeStart;
+
+    /**
+     * Opens a trace file.
+     *
+     * @param filePath The path of the trace file.
+     * @throws IOException If the file cannot be read or is not a trace.
+     */
+    public TraceReader(String filePath) throws IOException {
+        this.channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ);
+        this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(this.channel), 1 << 16));
+        if (this.in.readInt() != TraceWriter.MAGIC || this.in.readInt() != TraceWriter.VERSION) {
+            this.channel.close();
+            throw new IOException(filePath + " is not a trace file");
+        }
+        this.frameLength = this.in.readInt();
+        this.in.readInt();
+        this.quanta = new double[this.frameLength];
+        for (int i = 0; i < this.frameLength; i++) {
+            this.quanta[i] = this.in.readDouble();
+        }
+        this.frame = new double[this.frameLength];
+        this.previous = new long[this.frameLength];
+        this.block = new byte[0];
+        this.current = this.frame;
+    }
+
+    /**
+     * Decodes the next tick.
+     *
+     * @param frame The array that receives the values of the tick, laid out as described by {@link TraceWriter}.
+     * @return True if a tick was decoded, false at the end of the trace.
+     * @throws IOException If the file cannot be read.
+     */
+    public boolean next(double[] frame) throws IOException {
+        if (this.ticksLeft == 0 && !this.readBlock())
+            return false;
+        byte[] block = this.block;
+        int p = this.blockPosition;
+        for (int i = 0; i < this.frameLength; i++) {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = block[p++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            long quantized = this.previous[i] + ((zigzag >>> 1) ^ -(zigzag & 1));
+            this.previous[i] = quantized;
+            frame[i] = quantized * this.quanta[i];
+        }
+        this.blockPosition = p;
+        this.current = frame;
+        this.ticksLeft--;
+        this.episodeStart = this.blockStartsEpisode;
+        this.blockStartsEpisode = false;
+        return true;
+    }
+
+    /**
+     * Moves to the first tick of a span found in the {@link TraceIndex} of the trace. The ticks after the span keep
+     * streaming, so the caller stops after {@link TraceIndex.Span#ticks} ticks.
+     *
+     * @param span The span.
+     * @throws IOException If the file cannot be read.
+     */
+    public void seek(TraceIndex.Span span) throws IOException {
+        this.channel.position(span.offset);
+        this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(this.channel), 1 << 16));
+        this.ticksLeft = 0;
+        // Blocks only decode from their first tick
+        for (int i = 0; i < span.skip; i++) {
+            this.next(this.frame);
+        }
+    }
+
+    /**
+     * Decodes the next tick into a sensor model.
+     *
+     * @return The readings of the tick, or null at the end of the trace.
+     * @throws IOException If the file cannot be read.
+     */
+    public SensorModel next() throws IOException {
+        return this.next(this.frame) ? new ArrayBasedSensorModel(this.frame) : null;
+    }
+
+    /**
+     * Builds the action recorded with the last decoded tick.
+     *
+     * @return The action.
+     */
+    public Action getAction() {
+        Action action = new Action();
+        action.accelerate = this.current[TraceWriter.ACCELERATE];
+        action.brake = this.current[TraceWriter.BRAKE];
+        action.clutch = this.current[TraceWriter.CLUTCH];
+        action.gear = (int) Math.round(this.current[TraceWriter.GEAR_COMMAND]);
+        action.steering = this.current[TraceWriter.STEERING];
+        return action;
+    }
+
+    /**
+     * Checks if the last decoded tick is the first tick of an episode.
+     *
+     * @return True if an episode starts with the last tick.
+     */
+    public boolean isEpisodeStart() {
+        return this.episodeStart;
+    }
+
+    /**
+     * Closes the trace file.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+    /**
+     * Reads the next block into memory and restarts the deltas from zero.
+     *
+     * @return True if a block was read, false at the end of the trace.
+     * @throws IOException If the file cannot be read.
+     */
+    private boolean readBlock() throws IOException {
+        int length;
+        try {
+            length = this.in.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+        this.ticksLeft = this.in.readInt();
+        this.blockStartsEpisode = (this.in.readInt() & TraceWriter.EPISODE_START) != 0;
+        if (this.block.length < length)
+            this.block = new byte[length];
+        this.in.readFully(this.block, 0, length);
+        this.blockPosition = 0;
+        Arrays.fill(this.previous, 0);
+        return this.ticksLeft > 0 || this.readBlock();
+    }
+}
@@ -0,0 +1,284 @@
+package torcs;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The TraceWriter class records the sensor readings and the actions of every tick into a compact trace file.
+ * <p>
+ * A tick is a frame of {@link #FRAME} values: the readings, laid out as in {@link ArrayBasedSensorModel}, followed by
+ * the commands of the action. Every value is quantized to the precision of its field, and the quantized value is
+ * stored as the difference with the previous tick, zig-zag encoded into a varint, so slowly changing readings take a
+ * byte or two instead of the kilobyte of a server message.
+ * <p>
+ * Ticks are grouped in blocks of at most {@link Constants#TRACE_BLOCK_TICKS} ticks. The first tick of a block is
+ * encoded against zero, so every block decodes on its own, and an episode always starts a new block. The file starts
+ * with a header (magic number, version, frame length, block length and the quantum of every field) and every block
+ * with a header of {@link #BLOCK_HEADER_SIZE} bytes (payload length, number of ticks and flags).
+ * <p>
+ * A block never spans two laps either, and every block and every episode is appended to the sidecar
+ * {@link TraceIndex} as soon as it is written, so the index of a recording session is usable while it runs.
+ */
+public class TraceWriter implements AutoCloseable {
+
+    static final int MAGIC = 0x54524331; // TRC1
+    static final int VERSION = 1;
+    static final int BLOCK_HEADER_SIZE = 12;
+    static final int EPISODE_START = 1;
+
+    public static final int ACCELERATE = ArrayBasedSensorModel.FIELDS;
+    public static final int BRAKE = ACCELERATE + 1;
+    public static final int CLUTCH = ACCELERATE + 2;
+    public static final int GEAR_COMMAND = ACCELERATE + 3;
+    public static final int STEERING = ACCELERATE + 4;
+    public static final int FRAME = ACCELERATE + 5;
+
+    private final DataOutputStream out;
+    private final DataOutputStream index;
+    private final double[] quanta;
+    private final double[] scales;
+    private final int blockTicks;
+    private final double[] frame;
+    private final long[] previous;
+    private final byte[] block;
+    private int blockLength;
+    private int ticksInBlock;
+    private boolean episodeStart;
+    private long position;
+    private long ticks;
+    private int episode;
+    private int lap;
+    private int episodeTicks;
+    private int blockFirstTick;
+    private double previousDistance;
+
+    /**
+     * Creates a trace file and its index with the default precision of every field.
+     *
+     * @param filePath  The path of the trace file.
+     * @param trackName The name of the track being recorded.
+     * @throws IOException If the files cannot be created.
+     */
+    public TraceWriter(String filePath, String trackName) throws IOException {
+        this(filePath, trackName, defaultQuanta());
+    }
+
+    /**
+     * Creates a trace file and its index.
+     *
+     * @param filePath  The path of the trace file.
+     * @param trackName The name of the track being recorded.
+     * @param quanta    The precision of every field of the frame: values are rounded to a multiple of it.
+     * @throws IOException If the files cannot be created.
+     */
+    public TraceWriter(String filePath, String trackName, double[] quanta) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath), 1 << 16));
+        this.index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(TraceIndex.pathOf(filePath))));
+        this.quanta = quanta.clone();
+        this.scales = new double[FRAME];
+        for (int i = 0; i < FRAME; i++) {
+            this.scales[i] = 1.0 / quanta[i];
+        }
+        this.blockTicks = Constants.TRACE_BLOCK_TICKS;
+        this.frame = new double[FRAME];
+        this.previous = new long[FRAME];
+        // A varint of a 64-bit value takes at most 10 bytes
+        this.block = new byte[this.blockTicks * FRAME * 10];
+        this.episodeStart = true;
+        this.lap = -1;
+        this.previousDistance = -1;
+
+        byte[] name = trackName.getBytes(StandardCharsets.UTF_8);
+        this.index.writeInt(TraceIndex.MAGIC);
+        this.index.writeInt(TraceIndex.VERSION);
+        this.index.writeShort(name.length);
+        this.index.write(name);
+        this.index.flush();
+
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+        this.out.writeInt(FRAME);
+        this.out.writeInt(this.blockTicks);
+        for (double quantum : this.quanta) {
+            this.out.writeDouble(quantum);
+        }
+        this.position = 4 * Integer.BYTES + (long) FRAME * Double.BYTES;
+    }
+
+    /**
+     * Builds the default precision of every field: a thousandth of the unit, a ten-thousandth for the angle, the
+     * track position and the commands, and one revolution per minute for the engine.
+     *
+     * @return The quantum of every field of the frame.
+     */
+    public static double[] defaultQuanta() {
+        double[] quanta = new double[FRAME];
+        Arrays.fill(quanta, 1e-3);
+        quanta[ArrayBasedSensorModel.ANGLE] = 1e-4;
+        quanta[ArrayBasedSensorModel.TRACK_POSITION] = 1e-4;
+        quanta[ArrayBasedSensorModel.RPM] = 1.0;
+        Arrays.fill(quanta, ACCELERATE, FRAME, 1e-4);
+        quanta[GEAR_COMMAND] = 1.0;
+        return quanta;
+    }
+
+    /**
+     * Records a tick.
+     *
+     * @param sensors The sensor readings from the car.
+     * @param action  The action performed by the car.
+     */
+    public void record(SensorModel sensors, Action action) {
+        ArrayBasedSensorModel.flatten(sensors, this.frame);
+        this.frame[ACCELERATE] = action.accelerate;
+        this.frame[BRAKE] = action.brake;
+        this.frame[CLUTCH] = action.clutch;
+        this.frame[GEAR_COMMAND] = action.gear;
+        this.frame[STEERING] = action.steering;
+        this.record(this.frame);
+    }
+
+    /**
+     * Records a tick.
+     *
+     * @param frame The values of the tick, laid out as described by this class.
+     */
+    public void record(double[] frame) {
+        // Laps start a new block, like the LapStage counts them
+        double distance = frame[ArrayBasedSensorModel.DISTANCE_FROM_START];
+        if (this.previousDistance > 1 && distance < 1) {
+            this.flushBlock();
+            this.lap++;
+        }
+        this.previousDistance = distance;
+
+        byte[] block = this.block;
+        int p = this.blockLength;
+        for (int i = 0; i < FRAME; i++) {
+            long quantized = Math.round(frame[i] * this.scales[i]);
+            long delta = quantized - this.previous[i];
+            this.previous[i] = quantized;
+            long zigzag = (delta << 1) ^ (delta >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                block[p++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            block[p++] = (byte) zigzag;
+        }
+        this.blockLength = p;
+        this.ticks++;
+        this.episodeTicks++;
+        if (++this.ticksInBlock == this.blockTicks)
+            this.flushBlock();
+    }
+
+    /**
+     * Ends the current episode and indexes it, so the next tick starts a new block flagged as the start of an episode.
+     *
+     * @param termination Why the episode ended.
+     */
+    public void endEpisode(TraceIndex.Termination termination) {
+        this.flushBlock();
+        if (this.episodeTicks > 0) {
+            this.writeIndexRecord(TraceIndex.EPISODE_RECORD, this.lap, 0, this.episodeTicks, termination.ordinal(), 0);
+            try {
+                // The blocks go to disk before the index records that point at them
+                this.out.flush();
+                this.index.flush();
+            } catch (IOException e) {
+                System.out.println("ERROR!!! -> Could not write trace index...");
+                e.printStackTrace();
+            }
+            this.episode++;
+        }
+        this.episodeStart = true;
+        this.episodeTicks = 0;
+        this.blockFirstTick = 0;
+        this.lap = -1;
+        this.previousDistance = -1;
+    }
+
+    /**
+     * Retrieves the number of ticks recorded.
+     *
+     * @return The number of ticks.
+     */
+    public long getTicks() {
+        return this.ticks;
+    }
+
+    /**
+     * Retrieves the size of the trace, including the ticks of the current block.
+     *
+     * @return The number of bytes.
+     */
+    public long getBytes() {
+        return this.position + (this.ticksInBlock > 0 ? BLOCK_HEADER_SIZE + this.blockLength : 0);
+    }
+
+    /**
+     * Writes the pending ticks, ending the current episode if it has any, and closes the trace file and its index.
+     *
+     * @throws IOException If the files cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        this.endEpisode(TraceIndex.Termination.SHUTDOWN);
+        this.out.close();
+        this.index.close();
+    }
+
+    /**
+     * Writes the current block, if it holds any tick, and starts a new one encoded against zero.
+     */
+    private void flushBlock() {
+        if (this.ticksInBlock == 0)
+            return;
+        try {
+            this.out.writeInt(this.blockLength);
+            this.out.writeInt(this.ticksInBlock);
+            this.out.writeInt(this.episodeStart ? EPISODE_START : 0);
+            this.out.write(this.block, 0, this.blockLength);
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not write trace block...");
+            e.printStackTrace();
+        }
+        this.writeIndexRecord(TraceIndex.BLOCK_RECORD, this.lap, this.blockFirstTick, this.ticksInBlock, 0,
+                this.position);
+        this.blockFirstTick += this.ticksInBlock;
+        this.position += BLOCK_HEADER_SIZE + this.blockLength;
+        this.blockLength = 0;
+        this.ticksInBlock = 0;
+        this.episodeStart = false;
+        Arrays.fill(this.previous, 0);
+    }
+
+    /**
+     * Appends a record to the index.
+     *
+     * @param type        The type of the record.
+     * @param lap         The lap of a block, or the number of laps of an episode.
+     * @param firstTick   The first tick of a block, counted from the start of the episode.
+     * @param ticks       The number of ticks of the block or of the episode.
+     * @param termination The reason an episode ended.
+     * @param position    The offset of a block in the trace.
+     */
+    private void writeIndexRecord(int type, int lap, int firstTick, int ticks, int termination, long position) {
+        try {
+            this.index.writeInt(type);
+            this.index.writeInt(this.episode);
+            this.index.writeInt(lap);
+            this.index.writeInt(firstTick);
+            this.index.writeInt(ticks);
+            this.index.writeInt(termination);
+            this.index.writeLong(position);
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not write trace index...");
+            e.printStackTrace();
+        }
+    }
+}
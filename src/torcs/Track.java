@@ -0,0 +1,273 @@
+package torcs;
+
+import java.util.StringTokenizer;
+
+import static torcs.Constants.SEPARATOR;
+
+/**
+ * The Track class models a closed circuit as a sequence of centerline segments of constant width. The centerline is
+ * sampled at a fixed step, so projecting a point on the track is a local search over the samples, starting from a hint
+ * such as the previous position of the car.
+ * <p>
+ * A layout is a comma-separated list of segments: {@code S<length>} is a straight of the given length in meters, and
+ * {@code L<degrees>@<radius>} or {@code R<degrees>@<radius>} is a left or right turn of the given angle and radius.
+ */
+public class Track {
+
+    public static final String DEFAULT_LAYOUT = "S300,L60@80,S50,R30@60,L150@70,S300,L60@80,S50,R30@60,L150@70";
+    public static final double DEFAULT_WIDTH = 12.0;
+    private static final double SAMPLE_STEP = 1.0;
+
+    private final String name;
+    private final double halfWidth;
+    private final double length;
+    private final int samples;
+    private final double[] x;
+    private final double[] y;
+    private final double[] heading;
+    private final double[] cosHeading;
+    private final double[] sinHeading;
+
+    /**
+     * Constructs the default track.
+     */
+    public Track() {
+        this("sim", DEFAULT_WIDTH, DEFAULT_LAYOUT);
+    }
+
+    /**
+     * Constructs a track from a layout.
+     *
+     * @param name   The name of the track.
+     * @param width  The width of the track in meters.
+     * @param layout The layout of the centerline, as described by this class.
+     */
+    public Track(String name, double width, String layout) {
+        this.name = name;
+        this.halfWidth = width / 2;
+
+        StringTokenizer st = new StringTokenizer(layout, SEPARATOR);
+        int segments = st.countTokens();
+        double[] ends = new double[segments];
+        double[] curvatures = new double[segments];
+        double total = 0;
+        for (int i = 0; i < segments; i++) {
+            String segment = st.nextToken();
+            total += segmentLength(segment);
+            ends[i] = total;
+            curvatures[i] = segmentCurvature(segment);
+        }
+        this.samples = (int) Math.round(total / SAMPLE_STEP);
+        this.length = this.samples * SAMPLE_STEP;
+        this.x = new double[this.samples];
+        this.y = new double[this.samples];
+        this.heading = new double[this.samples];
+        this.cosHeading = new double[this.samples];
+        this.sinHeading = new double[this.samples];
+
+        // Integrate the centerline sample by sample, splitting the steps that cross a segment boundary
+        double px = 0, py = 0, ph = 0, position = 0;
+        int segment = 0;
+        for (int i = 0; i < this.samples; i++) {
+            this.x[i] = px;
+            this.y[i] = py;
+            this.heading[i] = ph;
+            this.cosHeading[i] = Math.cos(ph);
+            this.sinHeading[i] = Math.sin(ph);
+            double remaining = SAMPLE_STEP;
+            while (remaining > 1e-12) {
+                double piece = segment < segments - 1 ? Math.min(remaining, ends[segment] - position) : remaining;
+                double turn = curvatures[segment] * piece;
+                double chord = turn == 0 ? piece : 2 * Math.sin(turn / 2) / curvatures[segment];
+                px += Math.cos(ph + turn / 2) * chord;
+                py += Math.sin(ph + turn / 2) * chord;
+                ph += turn;
+                position += piece;
+                remaining -= piece;
+                if (segment < segments - 1 && position >= ends[segment] - 1e-12)
+                    segment++;
+            }
+        }
+        if (Math.hypot(px - this.x[0], py - this.y[0]) > this.halfWidth)
+            System.out.println("ERROR!!! -> Track layout " + layout + " is not closed");
+    }
+
+    /**
+     * Retrieves the name of the track.
+     *
+     * @return The name of the track.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Retrieves the length of a lap.
+     *
+     * @return The length of the track in meters.
+     */
+    public double getLength() {
+        return this.length;
+    }
+
+    /**
+     * Retrieves half the width of the track.
+     *
+     * @return The distance from the centerline to each edge in meters.
+     */
+    public double getHalfWidth() {
+        return this.halfWidth;
+    }
+
+    /**
+     * Retrieves the position of the centerline sample closest to a distance from the start line.
+     *
+     * @param distance The distance from the start line in meters.
+     * @return The sample index.
+     */
+    public int sampleAt(double distance) {
+        int sample = (int) Math.round(distance / SAMPLE_STEP) % this.samples;
+        return sample < 0 ? sample + this.samples : sample;
+    }
+
+    /**
+     * Retrieves the x-coordinate of a centerline sample.
+     *
+     * @param sample The sample index.
+     * @return The x-coordinate in meters.
+     */
+    public double getX(int sample) {
+        return this.x[sample];
+    }
+
+    /**
+     * Retrieves the y-coordinate of a centerline sample.
+     *
+     * @param sample The sample index.
+     * @return The y-coordinate in meters.
+     */
+    public double getY(int sample) {
+        return this.y[sample];
+    }
+
+    /**
+     * Retrieves the direction of the centerline at a sample.
+     *
+     * @param sample The sample index.
+     * @return The heading in radians, counterclockwise from the x-axis.
+     */
+    public double getHeading(int sample) {
+        return this.heading[sample];
+    }
+
+    /**
+     * Finds the centerline sample closest to a point, searching locally from a hint.
+     *
+     * @param px   The x-coordinate of the point.
+     * @param py   The y-coordinate of the point.
+     * @param hint A sample close to the point, such as the result of the previous search.
+     * @return The index of the closest sample.
+     */
+    public int nearest(double px, double py, int hint) {
+        // Jump by the distance along the centerline first, so distant hints cost a couple of steps
+        double along = this.cosHeading[hint] * (px - this.x[hint]) + this.sinHeading[hint] * (py - this.y[hint]);
+        int best = (hint + (int) Math.round(along / SAMPLE_STEP)) % this.samples;
+        if (best < 0)
+            best += this.samples;
+        double bestDistance = this.squaredDistance(px, py, best);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int next = best + 1 == this.samples ? 0 : best + 1;
+            int previous = best == 0 ? this.samples - 1 : best - 1;
+            double nextDistance = this.squaredDistance(px, py, next);
+            double previousDistance = this.squaredDistance(px, py, previous);
+            if (nextDistance < bestDistance) {
+                best = next;
+                bestDistance = nextDistance;
+                improved = true;
+            } else if (previousDistance < bestDistance) {
+                best = previous;
+                bestDistance = previousDistance;
+                improved = true;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Computes the signed distance of a point from the centerline at a sample.
+     *
+     * @param px     The x-coordinate of the point.
+     * @param py     The y-coordinate of the point.
+     * @param sample The closest sample to the point.
+     * @return The lateral offset in meters, positive to the left of the centerline.
+     */
+    public double lateral(double px, double py, int sample) {
+        return -this.sinHeading[sample] * (px - this.x[sample]) + this.cosHeading[sample] * (py - this.y[sample]);
+    }
+
+    /**
+     * Computes the distance from the start line of a point along the centerline.
+     *
+     * @param px     The x-coordinate of the point.
+     * @param py     The y-coordinate of the point.
+     * @param sample The closest sample to the point.
+     * @return The distance from the start line in meters, between 0 and the length of the track.
+     */
+    public double distanceFromStart(double px, double py, int sample) {
+        double along = this.cosHeading[sample] * (px - this.x[sample]) + this.sinHeading[sample] * (py - this.y[sample]);
+        double distance = sample * SAMPLE_STEP + along;
+        if (distance < 0)
+            distance += this.length;
+        return distance >= this.length ? distance - this.length : distance;
+    }
+
+    /**
+     * Computes the squared distance between a point and a centerline sample.
+     *
+     * @param px     The x-coordinate of the point.
+     * @param py     The y-coordinate of the point.
+     * @param sample The sample index.
+     * @return The squared distance in square meters.
+     */
+    private double squaredDistance(double px, double py, int sample) {
+        double dx = px - this.x[sample];
+        double dy = py - this.y[sample];
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Computes the length of a layout segment.
+     *
+     * @param segment The segment, as described by this class.
+     * @return The length of the segment in meters.
+     */
+    private static double segmentLength(String segment) {
+        if (segment.charAt(0) == 'S')
+            return Double.parseDouble(segment.substring(1));
+        int at = segment.indexOf('@');
+        double degrees = Double.parseDouble(segment.substring(1, at));
+        double radius = Double.parseDouble(segment.substring(at + 1));
+        return Math.toRadians(degrees) * radius;
+    }
+
+    /**
+     * Computes the curvature of a layout segment.
+     *
+     * @param segment The segment, as described by this class.
+     * @return The curvature in radians per meter, positive for left turns.
+     */
+    private static double segmentCurvature(String segment) {
+        switch (segment.charAt(0)) {
+            case 'S':
+                return 0.0;
+            case 'L':
+                return 1.0 / Double.parseDouble(segment.substring(segment.indexOf('@') + 1));
+            case 'R':
+                return -1.0 / Double.parseDouble(segment.substring(segment.indexOf('@') + 1));
+            default:
+                throw new IllegalArgumentException("Unknown track segment " + segment);
+        }
+    }
+}
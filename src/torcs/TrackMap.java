@@ -0,0 +1,292 @@
+package torcs;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import static torcs.Constants.SEPARATOR;
+
+/**
+ * The TrackMap class remembers the geometry of a track, indexed by buckets of distance from the start line. While the
+ * map is incomplete, every reading with the car on the track and roughly aligned with its axis contributes an estimate
+ * of the curvature ahead, from the front and side track edge sensors. Once the car has crossed the start line with most
+ * of the lap observed, the map is completed with a braking-aware target speed per bucket and saved, so later laps and
+ * later sessions on the same track look ahead with a single array read.
+ */
+public class TrackMap {
+
+    public static final double BUCKET_SIZE = 5.0;
+    public static final double lateralAccel = 8.0;
+    public static final double brakeDecel = 10.0;
+    public static final double minSpeed = 40.0;
+    private static final double MIN_COVERAGE = 0.9;
+    private static final double MAX_ANGLE = 0.2;
+    private static final double MAX_RANGE = 199.0;
+
+    private final String trackName;
+    private double[] curvatureSum;
+    private int[] observations;
+    private double[] curvature;
+    private double[] targetSpeed;
+    private double trackLength;
+    private double previousDistance;
+    private boolean complete;
+
+    /**
+     * Constructs an empty map for the specified track.
+     *
+     * @param trackName The name of the track.
+     */
+    public TrackMap(String trackName) {
+        this.trackName = trackName;
+        this.curvatureSum = new double[1024];
+        this.observations = new int[1024];
+        this.trackLength = 0;
+        this.previousDistance = -1;
+        this.complete = false;
+    }
+
+    /**
+     * Loads the saved map of the specified track, or constructs an empty one if there is none or it cannot be read.
+     *
+     * @param trackName The name of the track.
+     * @return The map of the track.
+     */
+    public static TrackMap load(String trackName) {
+        TrackMap map = new TrackMap(trackName);
+        File path = new File(pathOf(trackName));
+        if (!path.exists())
+            return map;
+        try (Scanner file = new Scanner(path)) {
+            String[] header = file.nextLine().split(SEPARATOR);
+            map.trackLength = Double.parseDouble(header[0]);
+            int buckets = Integer.parseInt(header[1]);
+            if (buckets <= 0) {
+                System.out.println("ERROR!!! -> The track map in .csv file has " + buckets + " buckets...");
+                return new TrackMap(trackName);
+            }
+            map.curvature = new double[buckets];
+            for (int i = 0; i < buckets; i++) {
+                map.curvature[i] = Double.parseDouble(file.nextLine());
+            }
+            map.computeTargetSpeeds();
+            map.complete = true;
+        } catch (FileNotFoundException | NoSuchElementException | NumberFormatException
+                 | ArrayIndexOutOfBoundsException e) {
+            // A truncated or corrupt map is mapped again, from an empty one
+            System.out.println("ERROR!!! -> Could not load track map from .csv file...");
+            e.printStackTrace();
+            return new TrackMap(trackName);
+        }
+        return map;
+    }
+
+    /**
+     * Adds the readings of a tick to the map, and completes it when the car crosses the start line after observing
+     * most of the lap.
+     *
+     * @param sensors The sensor readings from the car.
+     */
+    public void observe(SensorModel sensors) {
+        if (this.complete)
+            return;
+        double distance = sensors.getDistanceFromStartLine();
+        this.trackLength = Math.max(this.trackLength, distance);
+        boolean crossedLine = this.previousDistance > distance + this.trackLength / 2;
+        this.previousDistance = distance;
+        if (crossedLine && this.coverage() >= MIN_COVERAGE) {
+            this.finish();
+            return;
+        }
+
+        double[] edges = sensors.getTrackEdgeSensors();
+        if (Math.abs(sensors.getTrackPosition()) >= 1 || Math.abs(sensors.getAngleToTrackAxis()) > MAX_ANGLE)
+            return;
+        double ahead = edges[9];
+        double estimate = 0;
+        if (ahead < MAX_RANGE) {
+            // The front sensor is a chord to the outer edge: ahead^2 = outer^2 - radius^2, with outer = radius + side
+            boolean leftTurn = edges[8] > edges[10];
+            double side = leftTurn ? edges[18] : edges[0];
+            if (side <= 0 || ahead <= side)
+                return;
+            double radius = (ahead * ahead - side * side) / (2 * side);
+            estimate = leftTurn ? 1 / radius : -1 / radius;
+        }
+        int bucket = (int) ((distance + ahead / 2) / BUCKET_SIZE);
+        this.ensureCapacity(bucket + 1);
+        this.curvatureSum[bucket] += estimate;
+        this.observations[bucket]++;
+    }
+
+    /**
+     * Checks if the map covers the whole track.
+     *
+     * @return True if the map can be queried.
+     */
+    public boolean isComplete() {
+        return this.complete;
+    }
+
+    /**
+     * Retrieves the name of the mapped track.
+     *
+     * @return The name of the track.
+     */
+    public String getTrackName() {
+        return this.trackName;
+    }
+
+    /**
+     * Retrieves the estimated curvature of the track at a distance from the start line.
+     *
+     * @param distance The distance from the start line in meters.
+     * @return The curvature in radians per meter, positive for left turns.
+     */
+    public double getCurvature(double distance) {
+        return this.curvature[this.bucketOf(distance)];
+    }
+
+    /**
+     * Retrieves the speed the car should have at a distance from the start line, so that it can take every turn ahead.
+     *
+     * @param distance The distance from the start line in meters.
+     * @return The target speed in km/h.
+     */
+    public double getTargetSpeed(double distance) {
+        return this.targetSpeed[this.bucketOf(distance)];
+    }
+
+    /**
+     * Saves the map, so later sessions on the same track start with it.
+     */
+    public void save() {
+        // Write aside and move into place, so drivers mapping the same track never read a partial file
+        File path = new File(pathOf(this.trackName));
+        File tmp = new File(path.getPath() + ".tmp" + Thread.currentThread().getId());
+        try {
+            try (PrintWriter file = new PrintWriter(tmp)) {
+                file.write(this.trackLength + SEPARATOR + this.curvature.length + "\n");
+                for (double value : this.curvature) {
+                    file.write(value + "\n");
+                }
+            }
+            Files.move(tmp.toPath(), path.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("ERROR!!! -> Could not save track map in .csv file...");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Averages the observations of every bucket, fills the gaps and saves the completed map.
+     */
+    private void finish() {
+        int buckets = (int) Math.ceil(this.trackLength / BUCKET_SIZE);
+        this.curvature = new double[buckets];
+        this.ensureCapacity(buckets + 1);
+        // Observations past the line belong to the first buckets of the next lap
+        for (int i = buckets; i < this.observations.length; i++) {
+            this.curvatureSum[i % buckets] += this.curvatureSum[i];
+            this.observations[i % buckets] += this.observations[i];
+        }
+        // Gaps take the value of the closest observed bucket behind them, wrapping around the start line
+        int last = -1;
+        for (int i = 0; i < buckets; i++) {
+            if (this.observations[i] > 0)
+                last = i;
+        }
+        for (int i = 0; i < buckets; i++) {
+            if (this.observations[i] > 0) {
+                last = i;
+                this.curvature[i] = this.curvatureSum[i] / this.observations[i];
+            } else {
+                this.curvature[i] = last < 0 ? 0 : this.curvatureSum[last] / this.observations[last];
+            }
+        }
+        this.curvatureSum = null;
+        this.observations = null;
+        this.computeTargetSpeeds();
+        this.complete = true;
+        this.save();
+    }
+
+    /**
+     * Computes the target speed of every bucket from the cornering speed of the bucket and the target speeds of the
+     * buckets ahead, so the car always has room to brake.
+     */
+    private void computeTargetSpeeds() {
+        int buckets = this.curvature.length;
+        this.targetSpeed = new double[buckets];
+        double maxSpeed = DrivingInstructor.maxSpeed / 3.6;
+        for (int i = 0; i < buckets; i++) {
+            double cornering = Math.sqrt(lateralAccel / Math.max(Math.abs(this.curvature[i]), 1e-6));
+            this.targetSpeed[i] = Math.min(maxSpeed, cornering);
+        }
+        // Two backward passes, so the turns right after the start line also constrain the end of the lap
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = buckets - 1; i >= 0; i--) {
+                double next = this.targetSpeed[(i + 1) % buckets];
+                this.targetSpeed[i] = Math.min(this.targetSpeed[i], Math.sqrt(next * next + 2 * brakeDecel * BUCKET_SIZE));
+            }
+        }
+        for (int i = 0; i < buckets; i++) {
+            this.targetSpeed[i] = Math.max(minSpeed, this.targetSpeed[i] * 3.6);
+        }
+    }
+
+    /**
+     * Computes the fraction of the buckets that have been observed.
+     *
+     * @return The coverage of the map, between 0 and 1.
+     */
+    private double coverage() {
+        int buckets = (int) Math.ceil(this.trackLength / BUCKET_SIZE);
+        int observed = 0;
+        for (int i = 0; i < buckets && i < this.observations.length; i++) {
+            if (this.observations[i] > 0)
+                observed++;
+        }
+        return buckets == 0 ? 0 : (double) observed / buckets;
+    }
+
+    /**
+     * Grows the observation arrays to hold the specified number of buckets.
+     *
+     * @param buckets The number of buckets.
+     */
+    private void ensureCapacity(int buckets) {
+        if (buckets > this.observations.length) {
+            int capacity = Math.max(buckets, this.observations.length * 2);
+            this.curvatureSum = Arrays.copyOf(this.curvatureSum, capacity);
+            this.observations = Arrays.copyOf(this.observations, capacity);
+        }
+    }
+
+    /**
+     * Finds the bucket of a distance from the start line.
+     *
+     * @param distance The distance from the start line in meters.
+     * @return The bucket index.
+     */
+    private int bucketOf(double distance) {
+        int bucket = (int) (distance / BUCKET_SIZE);
+        return bucket < 0 ? 0 : bucket % this.curvature.length;
+    }
+
+    /**
+     * Retrieves the file where the map of a track is saved.
+     *
+     * @param trackName The name of the track.
+     * @return The path of the file.
+     */
+    private static String pathOf(String trackName) {
+        return String.format(Constants.TRACK_MAP_PATH, trackName);
+    }
+}
@@ -0,0 +1,46 @@
+package torcs;
+
+/**
+ * The TrackMapStage class feeds every reading to the map of the current track, loading the map whenever the track
+ * changes. It runs before the stages that restart the race, so the crossing of the start line completes the map.
+ */
+public class TrackMapStage implements ControlStage {
+
+    private final Controller controller;
+    private TrackMap trackMap;
+
+    /**
+     * Constructs a track map stage.
+     *
+     * @param controller The controller, which knows the name of the current track.
+     */
+    public TrackMapStage(Controller controller) {
+        this.controller = controller;
+    }
+
+    /**
+     * Adds the readings to the map of the current track.
+     *
+     * @param sensors The sensor readings from the car.
+     * @param action  The action being built.
+     *
+     * @return True if the action is complete and the following stages must be skipped.
+     */
+    @Override
+    public boolean apply(SensorModel sensors, Action action) {
+        if (this.trackMap == null || !this.trackMap.getTrackName().equals(this.controller.getTrackName())) {
+            this.trackMap = TrackMap.load(this.controller.getTrackName());
+        }
+        this.trackMap.observe(sensors);
+        return false;
+    }
+
+    /**
+     * Retrieves the map of the current track.
+     *
+     * @return The map, or null before the first reading.
+     */
+    public TrackMap getTrackMap() {
+        return this.trackMap;
+    }
+}
@@ -0,0 +1,92 @@
+package torcs;
+
+/**
+ * The UdpEnvironment class is an {@link Environment} backed by a TORCS server reached through UDP, following the same
+ * protocol as {@link Client}.
+ */
+public class UdpEnvironment implements Environment {
+
+    private static final int UDP_TIMEOUT = 10000;
+
+    private final SocketHandler socket;
+    private final String initStr;
+    private boolean shutdown;
+
+    /**
+     * Constructs an environment for the TORCS server at the specified address.
+     *
+     * @param host     The server host.
+     * @param port     The server port.
+     * @param clientId The client identifier.
+     * @param angles   The angles of the track edge sensors.
+     */
+    public UdpEnvironment(String host, int port, String clientId, float[] angles) {
+        this.socket = new SocketHandler(host, port, false);
+        String init = clientId + "(init";
+        for (float angle : angles) {
+            init = init + " " + angle;
+        }
+        this.initStr = init + ")";
+        this.shutdown = false;
+    }
+
+    /**
+     * Identifies the client and waits for the first sensor readings of the episode.
+     *
+     * @return The first sensor readings, or null if the server has shut down.
+     */
+    @Override
+    public SensorModel reset() {
+        if (this.shutdown)
+            return null;
+        String inMsg;
+        do {
+            this.socket.send(this.initStr);
+            inMsg = this.socket.receive(UDP_TIMEOUT);
+        } while (inMsg == null || inMsg.indexOf("***identified***") < 0);
+        return this.receive();
+    }
+
+    /**
+     * Sends the action to the server and waits for the next sensor readings.
+     *
+     * @param action The action to be performed by the car.
+     *
+     * @return The next sensor readings, or null if the race was restarted or shut down.
+     */
+    @Override
+    public SensorModel step(Action action) {
+        this.socket.send(action.toString());
+        return this.receive();
+    }
+
+    /**
+     * Closes the socket.
+     */
+    @Override
+    public void close() {
+        this.socket.close();
+    }
+
+    /**
+     * Waits for the next message of the server.
+     *
+     * @return The sensor readings, or null if the race was restarted or shut down.
+     */
+    private SensorModel receive() {
+        while (true) {
+            String inMsg = this.socket.receive(UDP_TIMEOUT);
+            if (inMsg == null) {
+                System.out.println("Server did not respond within the timeout");
+                continue;
+            }
+            if (inMsg.indexOf("***shutdown***") >= 0) {
+                this.shutdown = true;
+                return null;
+            }
+            if (inMsg.indexOf("***restart***") >= 0)
+                return null;
+            return new MessageBasedSensorModel(inMsg);
+        }
+    }
+}
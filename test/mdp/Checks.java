@@ -0,0 +1,80 @@
+package mdp;
+
+/**
+ * The Checks class holds the assertions of the tests. The tests are plain classes with a main method, so they run
+ * with nothing but the JDK: a failed check throws an {@link AssertionError} and ends the run.
+ */
+final class Checks {
+
+    /**
+     * Hides the constructor of a utility class.
+     */
+    private Checks() {
+    }
+
+    /**
+     * Checks that a condition holds.
+     *
+     * @param condition The condition.
+     * @param message   The description of the failure.
+     */
+    static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    /**
+     * Checks that a value is the expected one.
+     *
+     * @param expected The expected value.
+     * @param actual   The actual value.
+     * @param message  The description of the value.
+     */
+    static void checkEquals(Object expected, Object actual, String message) {
+        if (expected == null ? actual != null : !expected.equals(actual))
+            throw new AssertionError(message + ": expected " + expected + ", got " + actual);
+    }
+
+    /**
+     * Checks that an operation throws an exception of a type.
+     *
+     * @param type      The type of the exception.
+     * @param operation The operation.
+     * @param message   The description of the failure.
+     */
+    static void checkThrows(Class<? extends Throwable> type, Operation operation, String message) {
+        try {
+            operation.run();
+        } catch (Throwable e) {
+            if (type.isInstance(e))
+                return;
+            throw new AssertionError(message + ": threw " + e, e);
+        }
+        throw new AssertionError(message + ": threw nothing");
+    }
+
+    /**
+     * Runs a test, printing its name when it passes.
+     *
+     * @param name The name of the test.
+     * @param test The test.
+     * @throws Exception If the test fails with an exception.
+     */
+    static void run(String name, Operation test) throws Exception {
+        test.run();
+        System.out.println("PASSED " + name);
+    }
+
+    /**
+     * The Operation interface is a piece of a test that may throw any exception.
+     */
+    interface Operation {
+
+        /**
+         * Runs the operation.
+         *
+         * @throws Exception If the operation fails.
+         */
+        void run() throws Exception;
+    }
+}
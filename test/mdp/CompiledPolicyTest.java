@@ -0,0 +1,134 @@
+package mdp;
+
+import torcs.Constants.ControlSystems;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static mdp.Checks.*;
+
+/**
+ * The CompiledPolicyTest class tests that a compiled policy picks the same action as the Q-table it was compiled from,
+ * ties included, and that it survives its .policy file.
+ */
+public class CompiledPolicyTest {
+
+    private static final int STATES = SteerControl.States.values().length;
+    private static final int ACTIONS = SteerControl.Actions.values().length;
+
+    /**
+     * Runs the tests.
+     *
+     * @param args Unused.
+     * @throws Exception If a test fails.
+     */
+    public static void main(String[] args) throws Exception {
+        run("tiesGoToTheLowestOrdinal", CompiledPolicyTest::tiesGoToTheLowestOrdinal);
+        run("policyMatchesTheGreedyLearner", CompiledPolicyTest::policyMatchesTheGreedyLearner);
+        run("savedPolicyIsLoaded", CompiledPolicyTest::savedPolicyIsLoaded);
+        run("otherFilesAreNotLoaded", CompiledPolicyTest::otherFilesAreNotLoaded);
+    }
+
+    /**
+     * Among actions of the same best Q-value, the one with the lowest ordinal is chosen.
+     */
+    private static void tiesGoToTheLowestOrdinal() {
+        double[] actuatorValues = {-1, -0.5, 0, 0.5, 1};
+        double[] qValues = {
+                0, 0, 0, 0, 0,
+                1, 3, 2, 3, 3,
+                -2, -1, -4, -1, -3,
+                5, 0, 0, 0, 5,
+        };
+        CompiledPolicy policy = CompiledPolicy.compile(qValues, actuatorValues);
+        checkEquals(4, policy.getStates(), "States");
+        int[] expected = {0, 1, 1, 0};
+        for (int state = 0; state < expected.length; state++) {
+            checkEquals(expected[state], policy.getAction(state), "Action of state " + state);
+            checkEquals(actuatorValues[expected[state]], policy.getValue(state), "Value of state " + state);
+        }
+    }
+
+    /**
+     * The compiled steering policy picks the action of {@link QLearning#nextOnlyBestAction} in every state of random
+     * tables with many ties, and its value is the steering of that action.
+     */
+    private static void policyMatchesTheGreedyLearner() {
+        Random random = new Random(42);
+        QLearning learner = new QLearning(ControlSystems.STEERING_CONTROL_SYSTEM,
+                new Hyperparameters(0, 0.5, 0.9, 10, 0, 10), null);
+        SteerControl.States[] states = SteerControl.States.values();
+        for (int table = 0; table < 50; table++) {
+            double[] qValues = new double[STATES * ACTIONS];
+            for (int i = 0; i < qValues.length; i++) {
+                qValues[i] = random.nextInt(4) - 2;
+            }
+            learner.setQValues(qValues);
+            CompiledPolicy policy = CompiledPolicy.compileSteer(learner.getQValues());
+            for (SteerControl.States state : states) {
+                SteerControl.Actions best = (SteerControl.Actions) learner.nextOnlyBestAction(state);
+                checkEquals(best.ordinal(), policy.getAction(state.ordinal()), "Action of " + state);
+                checkEquals(SteerControl.steerAction2Double(best), policy.getValue(state.ordinal()),
+                        "Value of " + state);
+            }
+        }
+    }
+
+    /**
+     * A saved policy is loaded with the same action and value in every state.
+     *
+     * @throws IOException If the file cannot be created.
+     */
+    private static void savedPolicyIsLoaded() throws IOException {
+        File file = policyFile();
+        try {
+            Random random = new Random(7);
+            double[] qValues = new double[STATES * ACTIONS];
+            for (int i = 0; i < qValues.length; i++) {
+                qValues[i] = random.nextGaussian();
+            }
+            CompiledPolicy policy = CompiledPolicy.compileSteer(qValues);
+            policy.save(file.getPath());
+            CompiledPolicy loaded = CompiledPolicy.load(file.getPath());
+            check(loaded != null, "The saved policy is not loaded");
+            checkEquals(policy.getStates(), loaded.getStates(), "States");
+            for (int state = 0; state < STATES; state++) {
+                checkEquals(policy.getAction(state), loaded.getAction(state), "Action of state " + state);
+                checkEquals(policy.getValue(state), loaded.getValue(state), "Value of state " + state);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Missing files and files that are not policies are not loaded.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    private static void otherFilesAreNotLoaded() throws IOException {
+        File file = policyFile();
+        try {
+            Files.writeString(file.toPath(), "STATE,TURN_L\n");
+            checkEquals(null, CompiledPolicy.load(file.getPath()), "Policy loaded from a .csv file");
+            file.delete();
+            checkEquals(null, CompiledPolicy.load(file.getPath()), "Policy loaded from a missing file");
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Creates an empty temporary .policy file.
+     *
+     * @return The file.
+     * @throws IOException If the file cannot be created.
+     */
+    private static File policyFile() throws IOException {
+        File file = File.createTempFile("steer", ".policy");
+        file.deleteOnExit();
+        return file;
+    }
+}
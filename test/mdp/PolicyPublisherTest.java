@@ -0,0 +1,206 @@
+package mdp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static mdp.Checks.*;
+
+/**
+ * The PolicyPublisherTest class tests the shared policy file: the versions and the track name a subscriber reads, and
+ * that a subscriber racing a publisher never reads a half-written table.
+ */
+public class PolicyPublisherTest {
+
+    private static final int STATES = 19;
+    private static final int ACTIONS = 9;
+
+    /**
+     * Runs the tests.
+     *
+     * @param args Unused.
+     * @throws Exception If a test fails.
+     */
+    public static void main(String[] args) throws Exception {
+        run("publishedTableIsReadOnce", PolicyPublisherTest::publishedTableIsReadOnce);
+        run("trackNameFollowsTheTable", PolicyPublisherTest::trackNameFollowsTheTable);
+        run("reopenedPublisherKeepsCounting", PolicyPublisherTest::reopenedPublisherKeepsCounting);
+        run("subscriberRejectsOtherFiles", PolicyPublisherTest::subscriberRejectsOtherFiles);
+        run("subscriberNeverReadsTornTables", PolicyPublisherTest::subscriberNeverReadsTornTables);
+    }
+
+    /**
+     * A published table is read whole, once.
+     *
+     * @throws IOException If the shared file cannot be mapped.
+     */
+    private static void publishedTableIsReadOnce() throws IOException {
+        File path = sharedFile();
+        try (PolicyPublisher publisher = new PolicyPublisher(path.getPath(), STATES, ACTIONS);
+             PolicySubscriber subscriber = new PolicySubscriber(path.getPath())) {
+            double[] read = new double[STATES * ACTIONS];
+            check(!subscriber.poll(read), "Nothing is read before the first version");
+
+            double[] published = table(1.5);
+            published[7] = -3;
+            publisher.publish("forza", published);
+            check(subscriber.poll(read), "The first version is read");
+            check(Arrays.equals(published, read), "The table read is the one published");
+            checkEquals(1L, subscriber.getVersion(), "Version read");
+            checkEquals(STATES, subscriber.getStates(), "States");
+            checkEquals(ACTIONS, subscriber.getActions(), "Actions");
+            check(!subscriber.poll(read), "The same version is not read again");
+        } finally {
+            path.delete();
+        }
+    }
+
+    /**
+     * The track name read is the one of the last table read, cut to the header field.
+     *
+     * @throws IOException If the shared file cannot be mapped.
+     */
+    private static void trackNameFollowsTheTable() throws IOException {
+        File path = sharedFile();
+        try (PolicyPublisher publisher = new PolicyPublisher(path.getPath(), STATES, ACTIONS);
+             PolicySubscriber subscriber = new PolicySubscriber(path.getPath())) {
+            double[] read = new double[STATES * ACTIONS];
+            publisher.publish("forza", table(1));
+            subscriber.poll(read);
+            checkEquals("forza", subscriber.getTrackName(), "Track of the first table");
+
+            publisher.publish(null, table(2));
+            subscriber.poll(read);
+            checkEquals(null, subscriber.getTrackName(), "Track of a table of no track");
+
+            String longName = "x".repeat(PolicyPublisher.TRACK_SIZE + 10);
+            publisher.publish(longName, table(3));
+            subscriber.poll(read);
+            checkEquals(longName.substring(0, PolicyPublisher.TRACK_SIZE), subscriber.getTrackName(),
+                    "Track longer than the header field");
+        } finally {
+            path.delete();
+        }
+    }
+
+    /**
+     * A publisher that maps the file again continues from the last version, so subscribers notice its first table.
+     *
+     * @throws IOException If the shared file cannot be mapped.
+     */
+    private static void reopenedPublisherKeepsCounting() throws IOException {
+        File path = sharedFile();
+        try (PolicySubscriber subscriber = subscriberAfter(path, 3)) {
+            double[] read = new double[STATES * ACTIONS];
+            subscriber.poll(read);
+            checkEquals(3L, subscriber.getVersion(), "Version before reopening");
+            try (PolicyPublisher publisher = new PolicyPublisher(path.getPath(), STATES, ACTIONS)) {
+                publisher.publish("forza", table(9));
+            }
+            check(subscriber.poll(read), "The table of the reopened publisher is read");
+            checkEquals(4L, subscriber.getVersion(), "Version after reopening");
+            checkEquals(9.0, read[0], "Value after reopening");
+        } finally {
+            path.delete();
+        }
+    }
+
+    /**
+     * A subscriber refuses a file that is not the size announced by its header.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    private static void subscriberRejectsOtherFiles() throws IOException {
+        File path = sharedFile();
+        try {
+            Files.write(path.toPath(), new byte[PolicyPublisher.HEADER_SIZE + 3]);
+            checkThrows(IOException.class, () -> new PolicySubscriber(path.getPath()).close(),
+                    "A file of the wrong size is mapped");
+        } finally {
+            path.delete();
+        }
+    }
+
+    /**
+     * Every table a subscriber reads while a publisher keeps writing holds a single version: the publisher fills every
+     * version with its own number.
+     *
+     * @throws Exception If the shared file cannot be mapped or the publisher thread fails.
+     */
+    private static void subscriberNeverReadsTornTables() throws Exception {
+        File path = sharedFile();
+        try (PolicyPublisher publisher = new PolicyPublisher(path.getPath(), STATES, ACTIONS);
+             PolicySubscriber subscriber = new PolicySubscriber(path.getPath())) {
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread writer = new Thread(() -> {
+                for (int version = 1; running.get(); version++) {
+                    publisher.publish("forza", table(version));
+                }
+            });
+            writer.start();
+            double[] read = new double[STATES * ACTIONS];
+            int reads = 0;
+            long end = System.nanoTime() + 500_000_000L;
+            try {
+                while (System.nanoTime() < end) {
+                    if (!subscriber.poll(read))
+                        continue;
+                    reads++;
+                    for (double value : read) {
+                        check(value == read[0], "Torn table read at version " + subscriber.getVersion());
+                    }
+                    checkEquals((double) subscriber.getVersion(), read[0], "Table of the version read");
+                }
+            } finally {
+                running.set(false);
+                writer.join();
+            }
+            check(reads > 0, "No table was read");
+        } finally {
+            path.delete();
+        }
+    }
+
+    /**
+     * Maps a subscriber to a file in which a number of versions were published.
+     *
+     * @param path     The shared file.
+     * @param versions The number of versions.
+     * @return The subscriber.
+     * @throws IOException If the shared file cannot be mapped.
+     */
+    private static PolicySubscriber subscriberAfter(File path, int versions) throws IOException {
+        try (PolicyPublisher publisher = new PolicyPublisher(path.getPath(), STATES, ACTIONS)) {
+            for (int version = 1; version <= versions; version++) {
+                publisher.publish("forza", table(version));
+            }
+        }
+        return new PolicySubscriber(path.getPath());
+    }
+
+    /**
+     * Creates a table with every Q-value set to the same value.
+     *
+     * @param value The value.
+     * @return The Q-values.
+     */
+    private static double[] table(double value) {
+        double[] qValues = new double[STATES * ACTIONS];
+        Arrays.fill(qValues, value);
+        return qValues;
+    }
+
+    /**
+     * Creates an empty temporary file for a shared policy.
+     *
+     * @return The file.
+     * @throws IOException If the file cannot be created.
+     */
+    private static File sharedFile() throws IOException {
+        File path = File.createTempFile("policy", ".shm");
+        path.deleteOnExit();
+        return path;
+    }
+}
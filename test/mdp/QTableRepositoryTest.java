@@ -0,0 +1,139 @@
+package mdp;
+
+import torcs.Constants.ControlSystems;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static mdp.Checks.*;
+
+/**
+ * The QTableRepositoryTest class tests the cache of Q-tables per track: the least recently used table is the one
+ * dropped, a dropped table is saved when the repository trains it, and tracks without a table of their own start from
+ * the shared one without reading it again on every call.
+ * <p>
+ * The tables are read from and saved to {@code mdp/resources} under the working directory, so the test moves the
+ * working directory to a temporary one before the paths are first read.
+ */
+public class QTableRepositoryTest {
+
+    private static final ControlSystems STEER = ControlSystems.STEERING_CONTROL_SYSTEM;
+
+    /**
+     * Runs the tests.
+     *
+     * @param args Unused.
+     * @throws Exception If a test fails.
+     */
+    public static void main(String[] args) throws Exception {
+        File directory = Files.createTempDirectory("repository").toFile();
+        new File(directory, "mdp/resources").mkdirs();
+        System.setProperty("user.dir", directory.getPath());
+
+        double[] shared = saveSharedTable();
+        run("tracksStartFromTheSharedTable", () -> tracksStartFromTheSharedTable(shared));
+        run("leastRecentlyUsedTableIsDropped", QTableRepositoryTest::leastRecentlyUsedTableIsDropped);
+        run("droppedTablesAreSaved", QTableRepositoryTest::droppedTablesAreSaved);
+        run("singleTrackStaysCached", QTableRepositoryTest::singleTrackStaysCached);
+        run("policyOfTrackWithoutTableIsShared", () -> policyOfTrackWithoutTableIsShared(shared));
+    }
+
+    /**
+     * The learner of a track without a table of its own holds the shared Q-values and saves to the file of the track,
+     * and asking for it again reads nothing.
+     *
+     * @param shared The shared Q-values.
+     */
+    private static void tracksStartFromTheSharedTable(double[] shared) {
+        QTableRepository repository = new QTableRepository(Hyperparameters.greedy(), 4, false);
+        QLearning learner = repository.getLearner(STEER, "forza");
+        check(Arrays.equals(shared, learner.getQValues()), "The track does not start from the shared table");
+        int loads = repository.getLoads();
+        check(learner == repository.getLearner(STEER, "forza"), "The learner of the track is loaded again");
+        checkEquals(loads, repository.getLoads(), "Loads after a cache hit");
+        check(!new File(QTableRepository.tablePathOf(STEER, "forza")).exists(), "The track table is saved on load");
+    }
+
+    /**
+     * With room for two tables, using a third one drops the one used least recently, not the one loaded first. The
+     * tracks have tables of their own, so the shared table takes no room.
+     */
+    private static void leastRecentlyUsedTableIsDropped() {
+        for (String trackName : new String[]{"a", "b", "c"}) {
+            new QLearning(STEER, Hyperparameters.greedy(), QTableRepository.tablePathOf(STEER, trackName)).saveTable();
+        }
+        QTableRepository repository = new QTableRepository(Hyperparameters.greedy(), 2, false);
+        QLearning a = repository.getLearner(STEER, "a");
+        QLearning b = repository.getLearner(STEER, "b");
+        repository.getLearner(STEER, "a");
+        repository.getLearner(STEER, "c");
+        checkEquals(2, repository.size(), "Tables in memory");
+        check(a == repository.getLearner(STEER, "a"), "The most recently used table is dropped");
+        check(b != repository.getLearner(STEER, "b"), "The least recently used table is kept");
+    }
+
+    /**
+     * A repository that trains its tables saves a table it drops, so loading it again finds the trained values.
+     */
+    private static void droppedTablesAreSaved() {
+        QTableRepository repository = new QTableRepository(Hyperparameters.greedy(), 1, true);
+        QLearning trained = repository.getLearner(STEER, "saved");
+        double[] qValues = trained.getQValues();
+        qValues[5] = 123.25;
+        trained.setQValues(qValues);
+        repository.getLearner(STEER, "other");
+        check(new File(QTableRepository.tablePathOf(STEER, "saved")).exists(), "The dropped table is not saved");
+
+        QLearning reloaded = repository.getLearner(STEER, "saved");
+        check(reloaded != trained, "The dropped table is still in memory");
+        checkEquals(123.25, reloaded.getQValues()[5], "Trained value after reloading");
+    }
+
+    /**
+     * With room for a single table, the table of a track that starts from the shared one stays cached: reading the
+     * shared table never takes its place.
+     */
+    private static void singleTrackStaysCached() {
+        QTableRepository repository = new QTableRepository(Hyperparameters.greedy(), 1, false);
+        QLearning learner = repository.getLearner(STEER, "single");
+        int loads = repository.getLoads();
+        check(learner == repository.getLearner(STEER, "single"), "The table of the track is dropped");
+        checkEquals(loads, repository.getLoads(), "Loads after a cache hit");
+        checkEquals(1, repository.size(), "Tables in memory");
+    }
+
+    /**
+     * A track without a table of its own follows the shared policy, which is compiled once even with room for a single
+     * table.
+     *
+     * @param shared The shared Q-values.
+     */
+    private static void policyOfTrackWithoutTableIsShared(double[] shared) {
+        QTableRepository repository = new QTableRepository(Hyperparameters.greedy(), 1, false);
+        CompiledPolicy policy = repository.getSteerPolicy("unknown");
+        CompiledPolicy expected = CompiledPolicy.compileSteer(shared);
+        for (int state = 0; state < expected.getStates(); state++) {
+            checkEquals(expected.getAction(state), policy.getAction(state), "Action of state " + state);
+        }
+        int loads = repository.getLoads();
+        check(policy == repository.getSteerPolicy("unknown"), "The shared policy is compiled again");
+        checkEquals(loads, repository.getLoads(), "Loads after a cache hit");
+    }
+
+    /**
+     * Saves a shared steering table with distinct values.
+     *
+     * @return The shared Q-values.
+     */
+    private static double[] saveSharedTable() {
+        QLearning learner = new QLearning(STEER, Hyperparameters.greedy(), QTableRepository.tablePathOf(STEER, null));
+        double[] qValues = learner.getQValues();
+        for (int i = 0; i < qValues.length; i++) {
+            qValues[i] = (i * 7 % 11) - 5;
+        }
+        learner.setQValues(qValues);
+        learner.saveTable();
+        return qValues;
+    }
+}
@@ -0,0 +1,224 @@
+package mdp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static mdp.Checks.*;
+
+/**
+ * The QUpdateJournalTest class tests the write-ahead journal of Q-updates: committed records are replayed in order,
+ * whole or from a position, a record torn by a crash is dropped, and a journal of another table shape is ignored.
+ */
+public class QUpdateJournalTest {
+
+    private static final int STATES = 19;
+    private static final int ACTIONS = 9;
+
+    /**
+     * Runs the tests.
+     *
+     * @param args Unused.
+     * @throws Exception If a test fails.
+     */
+    public static void main(String[] args) throws Exception {
+        run("committedRecordsAreReplayed", QUpdateJournalTest::committedRecordsAreReplayed);
+        run("largeJournalsAreReplayedWhole", QUpdateJournalTest::largeJournalsAreReplayedWhole);
+        run("replayResumesFromAPosition", QUpdateJournalTest::replayResumesFromAPosition);
+        run("tornRecordIsDropped", QUpdateJournalTest::tornRecordIsDropped);
+        run("otherShapesAreIgnored", QUpdateJournalTest::otherShapesAreIgnored);
+        run("resetEmptiesTheJournal", QUpdateJournalTest::resetEmptiesTheJournal);
+    }
+
+    /**
+     * Records are replayed in the order they were logged, with every field, including the ones still pending when the
+     * journal is closed.
+     *
+     * @throws IOException If the journal cannot be opened.
+     */
+    private static void committedRecordsAreReplayed() throws IOException {
+        File file = journalFile();
+        try {
+            try (QUpdateJournal journal = new QUpdateJournal(file.getPath(), STATES, ACTIONS, 4, 0)) {
+                for (int i = 0; i < 10; i++) {
+                    journal.append(i % STATES, i % ACTIONS, valueOf(i));
+                }
+                checkEquals(10L, journal.getRecords(), "Records logged");
+                checkEquals(2L, journal.getCommits(), "Groups committed while logging");
+            }
+            checkReplay(file, 0, 10);
+            checkEquals(QUpdateJournal.HEADER_SIZE + 10L * QUpdateJournal.RECORD_SIZE, file.length(), "File size");
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * A journal larger than the replay buffer is replayed whole, with records split across the buffer boundary.
+     *
+     * @throws IOException If the journal cannot be opened.
+     */
+    private static void largeJournalsAreReplayedWhole() throws IOException {
+        File file = journalFile();
+        try {
+            int records = (3 << 20) / QUpdateJournal.RECORD_SIZE;
+            writeRecords(file, 0, records);
+            checkReplay(file, 0, records);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * A reader that already replayed part of a journal gets only the records appended since, and nothing once it has
+     * caught up.
+     *
+     * @throws IOException If the journal cannot be opened.
+     */
+    private static void replayResumesFromAPosition() throws IOException {
+        File file = journalFile();
+        try {
+            writeRecords(file, 0, 25);
+            checkReplay(file, 25, 25);
+            writeRecords(file, 25, 40);
+            checkReplay(file, 25, 40);
+            checkReplay(file, 40, 40);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Half a record at the end of the file, as left by a crash, is not replayed, and reopening the journal cuts it off
+     * so new records follow the last whole one.
+     *
+     * @throws IOException If the journal cannot be opened or the file cannot be written.
+     */
+    private static void tornRecordIsDropped() throws IOException {
+        File file = journalFile();
+        try {
+            writeRecords(file, 0, 5);
+            try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+                raw.seek(raw.length());
+                raw.write(new byte[QUpdateJournal.RECORD_SIZE / 2]);
+            }
+            checkReplay(file, 0, 5);
+
+            try (QUpdateJournal journal = new QUpdateJournal(file.getPath(), STATES, ACTIONS, 4, 0)) {
+                checkEquals(5L, journal.getRecords(), "Records after reopening");
+                for (int i = 5; i < 8; i++) {
+                    journal.append(i % STATES, i % ACTIONS, valueOf(i));
+                }
+            }
+            checkReplay(file, 0, 8);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * A journal of a table of another shape is not replayed, and opening it for the current shape starts it over.
+     *
+     * @throws IOException If the journal cannot be opened.
+     */
+    private static void otherShapesAreIgnored() throws IOException {
+        File file = journalFile();
+        try {
+            writeRecords(file, 0, 5);
+            checkEquals(0L, QUpdateJournal.replay(file.getPath(), STATES, ACTIONS + 1, (s, a, v) -> {
+            }), "Records replayed for another shape");
+            try (QUpdateJournal journal = new QUpdateJournal(file.getPath(), STATES + 1, ACTIONS, 4, 0)) {
+                checkEquals(0L, journal.getRecords(), "Records kept for another shape");
+            }
+            checkEquals(0L, QUpdateJournal.replay(file.getPath(), STATES, ACTIONS, (s, a, v) -> {
+            }), "Records replayed after the shape changed");
+            checkEquals(0L, QUpdateJournal.replay(file.getPath() + ".missing", STATES, ACTIONS, (s, a, v) -> {
+            }), "Records replayed from a missing journal");
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Resetting the journal, once the table is saved whole, leaves only the header.
+     *
+     * @throws IOException If the journal cannot be opened.
+     */
+    private static void resetEmptiesTheJournal() throws IOException {
+        File file = journalFile();
+        try {
+            try (QUpdateJournal journal = new QUpdateJournal(file.getPath(), STATES, ACTIONS, 4, 0)) {
+                for (int i = 0; i < 6; i++) {
+                    journal.append(i % STATES, i % ACTIONS, valueOf(i));
+                }
+                journal.reset();
+                checkEquals(0L, journal.getRecords(), "Records after a reset");
+            }
+            checkEquals((long) QUpdateJournal.HEADER_SIZE, file.length(), "File size after a reset");
+            checkReplay(file, 0, 0);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Appends a series of records to a journal, in order.
+     *
+     * @param file The journal file.
+     * @param from The position of the first record.
+     * @param to   The position after the last record.
+     * @throws IOException If the journal cannot be opened.
+     */
+    private static void writeRecords(File file, int from, int to) throws IOException {
+        try (QUpdateJournal journal = new QUpdateJournal(file.getPath(), STATES, ACTIONS, 64, 0)) {
+            for (int i = from; i < to; i++) {
+                journal.append(i % STATES, i % ACTIONS, valueOf(i));
+            }
+        }
+    }
+
+    /**
+     * Replays a journal from a position and checks that it holds the series of records up to another.
+     *
+     * @param file The journal file.
+     * @param from The number of records to skip.
+     * @param to   The position after the last record expected.
+     */
+    private static void checkReplay(File file, int from, int to) {
+        List<double[]> replayed = new ArrayList<>();
+        long count = QUpdateJournal.replay(file.getPath(), STATES, ACTIONS, from,
+                (state, action, value) -> replayed.add(new double[]{state, action, value}));
+        checkEquals((long) (to - from), count, "Records replayed from " + from);
+        checkEquals(to - from, replayed.size(), "Records visited from " + from);
+        for (int i = from; i < to; i++) {
+            double[] record = replayed.get(i - from);
+            checkEquals((double) (i % STATES), record[0], "State of record " + i);
+            checkEquals((double) (i % ACTIONS), record[1], "Action of record " + i);
+            checkEquals(valueOf(i), record[2], "Value of record " + i);
+        }
+    }
+
+    /**
+     * Computes the Q-value logged in a record, distinct for every position.
+     *
+     * @param position The position of the record.
+     * @return The Q-value.
+     */
+    private static double valueOf(int position) {
+        return position * 0.25 - 7;
+    }
+
+    /**
+     * Creates an empty temporary journal file.
+     *
+     * @return The file.
+     * @throws IOException If the file cannot be created.
+     */
+    private static File journalFile() throws IOException {
+        File file = File.createTempFile("steer", ".journal");
+        file.deleteOnExit();
+        return file;
+    }
+}
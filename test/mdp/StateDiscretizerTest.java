@@ -0,0 +1,139 @@
+package mdp;
+
+import torcs.ArrayBasedSensorModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static mdp.Checks.*;
+
+/**
+ * The StateDiscretizerTest class tests that the bins found with the lookup table and with the binary search are the
+ * number of edges lower than or equal to the value, as a linear scan finds them, and that states combine the bins of
+ * every feature.
+ */
+public class StateDiscretizerTest {
+
+    /**
+     * Runs the tests.
+     *
+     * @param args Unused.
+     * @throws Exception If a test fails.
+     */
+    public static void main(String[] args) throws Exception {
+        run("tableBinsMatchAScan", () -> checkBins(new double[]{-1, -0.5, 0, 0.25, 0.5, 1, 2}));
+        run("searchBinsMatchAScan", () -> checkBins(new double[]{0, 1e-6, 2e-6, 0.5, 1000}));
+        run("singleEdgeBinsMatchAScan", () -> checkBins(new double[]{3}));
+        run("featureWithoutEdgesHasOneBin", () -> checkBins(new double[0]));
+        run("statesCombineTheBins", StateDiscretizerTest::statesCombineTheBins);
+        run("defaultIsTheLongestEdge", StateDiscretizerTest::defaultIsTheLongestEdge);
+        run("unorderedEdgesAreRejected", StateDiscretizerTest::unorderedEdgesAreRejected);
+    }
+
+    /**
+     * Checks the bin of values at, next to, between and outside the edges of a speed feature, and of random values,
+     * against a linear scan of the edges.
+     *
+     * @param edges The edges, in increasing order.
+     */
+    private static void checkBins(double[] edges) {
+        StateDiscretizer discretizer = new StateDiscretizer(new String[]{"speed"}, new double[][]{edges});
+        checkEquals(edges.length + 1, discretizer.getStates(), "States");
+        ArrayBasedSensorModel sensors = new ArrayBasedSensorModel();
+        Random random = new Random(3);
+        double low = edges.length == 0 ? -1 : edges[0] - 1;
+        double high = edges.length == 0 ? 1 : edges[edges.length - 1] + 1;
+        double[] values = new double[edges.length * 3 + 1000];
+        int count = 0;
+        for (double edge : edges) {
+            values[count++] = edge;
+            values[count++] = Math.nextDown(edge);
+            values[count++] = Math.nextUp(edge);
+        }
+        while (count < values.length) {
+            values[count++] = low + random.nextDouble() * (high - low);
+        }
+        for (double value : values) {
+            sensors.set(ArrayBasedSensorModel.SPEED, value);
+            checkEquals(scan(edges, value), discretizer.encode(sensors), "Bin of " + value);
+        }
+        for (double value : new double[]{Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NaN}) {
+            sensors.set(ArrayBasedSensorModel.SPEED, value);
+            checkEquals(Double.isNaN(value) ? 0 : scan(edges, value), discretizer.encode(sensors), "Bin of " + value);
+        }
+    }
+
+    /**
+     * The state of several features is the bin of the first feature, most significant, followed by the others, and
+     * each bin is found back from the state.
+     */
+    private static void statesCombineTheBins() {
+        StateDiscretizer discretizer = new StateDiscretizer(new String[]{"trackPos", "angle"},
+                new double[][]{{-0.5, 0.5}, {-0.1, 0, 0.1}});
+        checkEquals(12, discretizer.getStates(), "States");
+        checkEquals(2, discretizer.getFeatures(), "Features");
+        ArrayBasedSensorModel sensors = new ArrayBasedSensorModel();
+        sensors.set(ArrayBasedSensorModel.TRACK_POSITION, 0.7);
+        sensors.set(ArrayBasedSensorModel.ANGLE, -0.05);
+        int state = discretizer.encode(sensors);
+        checkEquals(2 * 4 + 1, state, "State");
+        checkEquals(2, discretizer.binOf(state, 0), "Bin of the track position");
+        checkEquals(1, discretizer.binOf(state, 1), "Bin of the angle");
+        checkEquals("trackPos=2|angle=1", discretizer.describe(state), "Description");
+    }
+
+    /**
+     * The default steering discretizer has a state per track edge sensor: the one that reads the longest distance.
+     */
+    private static void defaultIsTheLongestEdge() {
+        StateDiscretizer discretizer = StateDiscretizer.steerDefault();
+        checkEquals(SteerControl.States.values().length, discretizer.getStates(), "States");
+        for (int sensor = 0; sensor < 19; sensor++) {
+            double[] fields = new double[ArrayBasedSensorModel.FIELDS];
+            fields[ArrayBasedSensorModel.TRACK_EDGES + sensor] = 100;
+            checkEquals(sensor, discretizer.encode(new ArrayBasedSensorModel(fields)),
+                    "State of the longest edge " + sensor);
+        }
+    }
+
+    /**
+     * Edges out of order are rejected when built, and a file with them falls back to the given discretizer.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    private static void unorderedEdgesAreRejected() throws IOException {
+        checkThrows(IllegalArgumentException.class,
+                () -> new StateDiscretizer(new String[]{"speed"}, new double[][]{{0, 2, 1}}), "Unordered edges");
+        checkThrows(IllegalArgumentException.class,
+                () -> new StateDiscretizer(new String[]{"speed"}, new double[][]{{0, 1, 1}}), "Repeated edges");
+
+        File file = File.createTempFile("discretizer", ".csv");
+        file.deleteOnExit();
+        try {
+            Files.writeString(file.toPath(), "# speed bins\nspeed,0,2,1\n");
+            StateDiscretizer fallback = StateDiscretizer.steerDefault();
+            check(StateDiscretizer.load(file.getPath(), fallback) == fallback, "A file of unordered edges is loaded");
+            Files.writeString(file.toPath(), "# speed bins\nspeed,0,50,100\n\ntrackPos,0\n");
+            checkEquals(8, StateDiscretizer.load(file.getPath(), fallback).getStates(), "States loaded from a file");
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Finds the bin of a value with a linear scan of the edges.
+     *
+     * @param edges The edges, in increasing order.
+     * @param value The value.
+     * @return The number of edges lower than or equal to the value.
+     */
+    private static int scan(double[] edges, double value) {
+        int bin = 0;
+        while (bin < edges.length && edges[bin] <= value) {
+            bin++;
+        }
+        return bin;
+    }
+}
@@ -0,0 +1,136 @@
+package mdp;
+
+import static mdp.Checks.*;
+
+/**
+ * The TransitionRingTest class tests the queue between the actor and the learner thread: records come out whole and in
+ * order across many laps of the ring, and a full ring drops and counts records instead of overwriting them.
+ */
+public class TransitionRingTest {
+
+    /**
+     * Runs the tests.
+     *
+     * @param args Unused.
+     * @throws Exception If a test fails.
+     */
+    public static void main(String[] args) throws Exception {
+        run("capacityIsRoundedUp", TransitionRingTest::capacityIsRoundedUp);
+        run("fullRingDropsRecords", TransitionRingTest::fullRingDropsRecords);
+        run("recordsKeepTheirOrderAcrossLaps", TransitionRingTest::recordsKeepTheirOrderAcrossLaps);
+        run("threadsExchangeEveryRecord", TransitionRingTest::threadsExchangeEveryRecord);
+    }
+
+    /**
+     * A ring holds at least the records asked for, in a power of two.
+     */
+    private static void capacityIsRoundedUp() {
+        checkEquals(4, capacityOf(new TransitionRing(4)), "Capacity of a ring of 4");
+        checkEquals(8, capacityOf(new TransitionRing(5)), "Capacity of a ring of 5");
+        checkEquals(4, capacityOf(new TransitionRing(1)), "Capacity of a ring of 1");
+    }
+
+    /**
+     * A full ring refuses records, counts them as dropped and keeps the ones it holds.
+     */
+    private static void fullRingDropsRecords() {
+        TransitionRing ring = new TransitionRing(4);
+        for (int i = 0; i < 4; i++) {
+            check(ring.offer(TransitionRing.UPDATE, i, i, i, i), "Record " + i + " is queued");
+        }
+        check(ring.isFull(), "The ring is full");
+        check(!ring.offer(TransitionRing.UPDATE, 9, 9, 9, 9), "A record is queued in a full ring");
+        checkEquals(1L, ring.getDropped(), "Dropped records");
+
+        checkEquals(0, ring.getState(ring.peek()), "The oldest record is kept");
+        ring.advance();
+        check(!ring.isFull(), "The ring is full after a record is consumed");
+        check(ring.offer(TransitionRing.LAST_UPDATE, 4, 4, 4, 4), "A record is refused after one is consumed");
+        checkEquals(1L, ring.getDropped(), "Dropped records after one is consumed");
+    }
+
+    /**
+     * Records are consumed in the order they were offered, with every field, while the positions wrap around the ring
+     * many times.
+     */
+    private static void recordsKeepTheirOrderAcrossLaps() {
+        TransitionRing ring = new TransitionRing(8);
+        int offered = 0;
+        int consumed = 0;
+        for (int lap = 0; lap < 100; lap++) {
+            // Uneven batches, so the head and the tail meet every slot
+            for (int i = 0; i < 1 + lap % 8; i++) {
+                if (ring.offer((byte) (offered % 3), offered, offered % 9, offered * 0.5, offered + 1))
+                    offered++;
+            }
+            for (int i = 0; i < 1 + lap % 5 && !ring.isEmpty(); i++) {
+                checkRecord(ring, consumed++);
+            }
+        }
+        while (!ring.isEmpty()) {
+            checkRecord(ring, consumed++);
+        }
+        checkEquals(offered, consumed, "Records consumed");
+        checkEquals(-1, ring.peek(), "Slot of an empty ring");
+    }
+
+    /**
+     * A producer and a consumer thread exchange a long series of records without losing or reordering any, when the
+     * producer waits while the ring is full. Both sides yield while they wait, so the test also runs on a single core.
+     *
+     * @throws InterruptedException If the test is interrupted.
+     */
+    private static void threadsExchangeEveryRecord() throws InterruptedException {
+        int records = 100_000;
+        TransitionRing ring = new TransitionRing(64);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < records; i++) {
+                while (ring.isFull()) {
+                    Thread.yield();
+                }
+                ring.offer((byte) (i % 3), i, i % 9, i * 0.5, i + 1);
+            }
+        });
+        producer.start();
+        for (int consumed = 0; consumed < records; ) {
+            if (ring.isEmpty()) {
+                Thread.yield();
+                continue;
+            }
+            checkRecord(ring, consumed++);
+        }
+        producer.join();
+        checkEquals(0L, ring.getDropped(), "Dropped records");
+    }
+
+    /**
+     * Consumes the oldest record and checks it is the one offered in a position.
+     *
+     * @param ring     The ring.
+     * @param position The position of the record in the order of offers.
+     */
+    private static void checkRecord(TransitionRing ring, int position) {
+        int slot = ring.peek();
+        check(slot >= 0, "Record " + position + " is missing");
+        checkEquals((byte) (position % 3), ring.getKind(slot), "Kind of record " + position);
+        checkEquals(position, ring.getState(slot), "State of record " + position);
+        checkEquals(position % 9, ring.getAction(slot), "Action of record " + position);
+        checkEquals(position * 0.5, ring.getReward(slot), "Reward of record " + position);
+        checkEquals(position + 1, ring.getNextState(slot), "Next state of record " + position);
+        ring.advance();
+    }
+
+    /**
+     * Fills an empty ring to find its capacity.
+     *
+     * @param ring The ring.
+     * @return The number of records it queued.
+     */
+    private static int capacityOf(TransitionRing ring) {
+        int capacity = 0;
+        while (ring.offer(TransitionRing.UPDATE, 0, 0, 0, 0)) {
+            capacity++;
+        }
+        return capacity;
+    }
+}
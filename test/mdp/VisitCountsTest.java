@@ -0,0 +1,151 @@
+package mdp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static mdp.Checks.*;
+
+/**
+ * The VisitCountsTest class tests that visit counts survive the .csv file and the binary form of the training
+ * snapshots, and that a file that cannot be read leaves zero counts.
+ */
+public class VisitCountsTest {
+
+    private static final int STATES = 5;
+    private static final int ACTIONS = 3;
+
+    /**
+     * Runs the tests.
+     *
+     * @param args Unused.
+     * @throws Exception If a test fails.
+     */
+    public static void main(String[] args) throws Exception {
+        run("savedCountsAreLoaded", VisitCountsTest::savedCountsAreLoaded);
+        run("missingFileKeepsTheCounts", VisitCountsTest::missingFileKeepsTheCounts);
+        run("corruptFilesLeaveZeroCounts", VisitCountsTest::corruptFilesLeaveZeroCounts);
+        run("binaryCountsAreRead", VisitCountsTest::binaryCountsAreRead);
+    }
+
+    /**
+     * Counts saved to a .csv file are loaded back, with the visited states.
+     *
+     * @throws IOException If the file cannot be created.
+     */
+    private static void savedCountsAreLoaded() throws IOException {
+        File file = countsFile();
+        try {
+            VisitCounts counts = sampleCounts();
+            counts.save(file.getPath(), new Object[]{"S0", "S1", "S2", "S3", "S4"}, new Object[]{"A", "B", "C"});
+            VisitCounts loaded = new VisitCounts(STATES, ACTIONS);
+            loaded.load(file.getPath());
+            checkSameCounts(counts, loaded);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Loading a file that does not exist keeps the current counts.
+     */
+    private static void missingFileKeepsTheCounts() {
+        VisitCounts counts = sampleCounts();
+        counts.load(new File(System.getProperty("java.io.tmpdir"), "missing_visits.csv").getPath());
+        checkSameCounts(sampleCounts(), counts);
+    }
+
+    /**
+     * Empty, truncated or corrupt files leave every count at zero instead of keeping part of the rows.
+     *
+     * @throws IOException If the files cannot be written.
+     */
+    private static void corruptFilesLeaveZeroCounts() throws IOException {
+        String header = " VISITS ,STATE,A,B,C\n";
+        String[] contents = {
+                "",
+                header + "S0,4,1,2,1\nS1,x,0,0,0\n",
+                header + "S0,4,1,2,1\nS1,2\n",
+        };
+        for (String content : contents) {
+            File file = countsFile();
+            try {
+                Files.writeString(file.toPath(), content);
+                VisitCounts counts = sampleCounts();
+                counts.load(file.getPath());
+                checkSameCounts(new VisitCounts(STATES, ACTIONS), counts);
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Counts written in binary, as in a training snapshot, are read back.
+     *
+     * @throws IOException If the streams fail.
+     */
+    private static void binaryCountsAreRead() throws IOException {
+        VisitCounts counts = sampleCounts();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            counts.writeTo(out);
+        }
+        checkEquals((STATES + STATES * ACTIONS) * Integer.BYTES, bytes.size(), "Size of the binary counts");
+
+        VisitCounts read = new VisitCounts(STATES, ACTIONS);
+        read.visitState(4);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read.readFrom(in);
+        }
+        checkSameCounts(counts, read);
+    }
+
+    /**
+     * Builds counts with a few visits, leaving a state unvisited.
+     *
+     * @return The counts.
+     */
+    private static VisitCounts sampleCounts() {
+        VisitCounts counts = new VisitCounts(STATES, ACTIONS);
+        int[][] visits = {{0, 1}, {0, 1}, {0, 2}, {1, 0}, {3, 2}, {3, 2}, {3, 2}, {2, 0}};
+        for (int[] visit : visits) {
+            counts.visitState(visit[0]);
+            counts.visitPair(visit[0], visit[1]);
+        }
+        return counts;
+    }
+
+    /**
+     * Checks that two sets of counts are the same.
+     *
+     * @param expected The expected counts.
+     * @param actual   The actual counts.
+     */
+    private static void checkSameCounts(VisitCounts expected, VisitCounts actual) {
+        checkEquals(expected.getCoverage(), actual.getCoverage(), "Coverage");
+        for (int state = 0; state < STATES; state++) {
+            checkEquals(expected.getStateCount(state), actual.getStateCount(state), "Count of state " + state);
+            for (int action = 0; action < ACTIONS; action++) {
+                checkEquals(expected.getPairCount(state, action), actual.getPairCount(state, action),
+                        "Count of action " + action + " in state " + state);
+            }
+        }
+    }
+
+    /**
+     * Creates an empty temporary .csv file.
+     *
+     * @return The file.
+     * @throws IOException If the file cannot be created.
+     */
+    private static File countsFile() throws IOException {
+        File file = File.createTempFile("visits", ".csv");
+        file.deleteOnExit();
+        return file;
+    }
+}